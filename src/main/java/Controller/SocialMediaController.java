@@ -1,17 +1,58 @@
 package Controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.http.InternalServerErrorResponse;
+import io.javalin.http.ServiceUnavailableResponse;
+import io.javalin.http.sse.SseClient;
 
+import org.eclipse.jetty.server.Request;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import Model.Account;
+import Model.ImportResult;
 import Model.Message;
 import Service.AccountService;
+import Service.DatabaseService;
+import Service.MessageChangeLog;
+import Service.MessageFeed;
 import Service.MessageService;
+import Util.Config;
+import Util.ConnectionUtil;
+import Util.RateLimitExceededException;
+import Util.RateLimiter;
+import Util.ServerConfig;
+import Util.ShutdownCoordinator;
+import Util.StartupTimer;
+import Util.UnitOfWork;
 
 // You will need to write your own endpoints and handlers for your controller. 
 // The endpoints you will need can be found in readme.md as well as the test cases. 
@@ -34,10 +75,45 @@ public class SocialMediaController {
 
     AccountService accountService;
     MessageService messageService;
+    DatabaseService databaseService;
+
+    // shared, ObjectMapper is thread safe once configured
+    private final ObjectMapper sharedMapper = new ObjectMapper();
+    // same data binding, CBOR encoding; used when the client asks for application/cbor
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private static final String CBOR = "application/cbor";
+    // one JSON document per line, used by the bulk import and export endpoints
+    private static final String NDJSON = "application/x-ndjson";
+    // records per JDBC batch (and per flush of outcomes) for the bulk imports
+    private final int bulkBatchSize = Math.max(1, Config.getInt("bulk.batch-size", 1000));
+    // most ids one GET /messages?ids= or POST /messages/lookup may ask for
+    private final int multiGetMaxIds = Config.getInt("messages.multi-get.max-ids", 1000);
+    // messages per warm-up list read, see exerciseReadEndpoints
+    private static final int WARMUP_LIST_IDS = 100;
+
+    // admission control, see applyRateLimits; set ratelimit.enabled=false to switch it off
+    private final boolean rateLimitingEnabled = Config.getBoolean("ratelimit.enabled", true);
+    private final RateLimiter registerLimiter = RateLimiter.fromConfig("register", 10, 20);
+    private final RateLimiter loginLimiter = RateLimiter.fromConfig("login", 20, 40);
+    private final RateLimiter loginAccountLimiter = RateLimiter.fromConfig("login-account", 5, 10);
+    private final RateLimiter postMessageLimiter = RateLimiter.fromConfig("messages", 50, 100);
+    private final RateLimiter postMessageAccountLimiter = RateLimiter.fromConfig("messages-account", 20, 40);
+    // bulk imports are charged to the register and messages limiters, one permit per this many records
+    private final int importRecordsPerPermit = Math.max(1, Config.getInt("ratelimit.import.records-per-permit", 100));
+
+    // flipped by markReady() once startup warm-up is done, GET /ready answers 503 until then
+    private volatile boolean ready = false;
+    private volatile StartupTimer startupTimer;
+
+    // requests currently being handled, so shutdown can wait for them; see admitRequest/completeRequest
+    private static final String IN_FLIGHT_ATTRIBUTE = "inFlight";
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean draining = false;
 
     public SocialMediaController() {
         this.accountService = new AccountService();
         this.messageService = new MessageService();
+        this.databaseService = new DatabaseService();
     }
 
     /**
@@ -46,35 +122,355 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        // thread pool, connector, keep-alive and h2c settings come from server.* config (see ServerConfig)
+        Javalin app = Javalin.create(ServerConfig::configure);
+        ServerConfig.installConnector(app);
+        // the feed's delivery threads and watchdog live as long as the server
+        app.events(event -> event.serverStopped(messageService.feed::shutdown));
+        app.before(this::admitRequest);
+        app.after(this::completeRequest);
+        if (rateLimitingEnabled) {
+            applyRateLimits(app);
+        }
+        app.get("/metrics", this::getMetricsHandler);
+        app.get("/ready", this::getReadyHandler);
+        app.get("/db/stats", this::getDatabaseStatsHandler);
+
         app.post("/register", this::createAccountHandler);
         app.post("/login", this::getAccountByUsernameAndPasswordHandler);
+        app.post("/accounts/import", this::importAccountsHandler);
+        app.get("/accounts/export", this::exportAccountsHandler);
 
         app.post("/messages", this::createMessageHandler);
         app.get("/messages", this::getAllMessagesHandler);
+        app.post("/messages/import", this::importMessagesHandler);
+        app.post("/messages/lookup", this::lookupMessagesHandler);
+        // registered before /messages/{message_id} so "changes", "export" and "stream" are not read as a message_id
+        app.get("/messages/changes", this::getMessageChangesHandler);
+        app.get("/messages/export", this::exportMessagesHandler);
+        app.sse("/messages/stream", this::messageStreamHandler);
         app.get("/messages/{message_id}", this::getMessageByIdHandler);
         app.delete("/messages/{message_id}", this::deleteMessageByIdHandler);
         app.patch("/messages/{message_id}", this::updateMessageByIdHandler);
 
         app.get("/accounts/{account_id}/messages", this::getAllMessagesByAccountIdHandler);
+        app.get("/accounts/{account_id}/stats", this::getAccountStatsHandler);
 
         return app;
     }
 
+    // ------------------------------------------------------------------------------------------
+    // LIFECYCLE
+
+    /**
+     * Warms the server up after app.start(port) and then marks it ready: preloads the newest messages and the
+     * known posted_by ids into the caches, then calls the hot read endpoints over HTTP so Jetty, Jackson and the
+     * handlers are JIT compiled before real traffic arrives. Only bounded reads are used: a multi-get of the newest
+     * messages stands in for GET /messages, which would read the whole table on every iteration. Configured with
+     * warmup.recent-messages (default 1000) and warmup.iterations (default 50, 0 skips the HTTP part).
+     * @param port the port the app was started on.
+     * @param timer records how long each warm-up phase took.
+     */
+    public void warmUp(int port, StartupTimer timer) {
+        int recentLimit = Config.getInt("warmup.recent-messages", 1000);
+        int iterations = Config.getInt("warmup.iterations", 50);
+
+        List<Message> recent = timer.time("warm caches", () -> messageService.warmUp(recentLimit));
+        System.out.println("Warm-up cached " + recent.size() + " messages and " + messageService.knownPostedByCount() + " posted_by ids");
+
+        if (iterations > 0) {
+            timer.time("warm handlers", () -> exerciseReadEndpoints(port, recent, iterations));
+        }
+        markReady(timer);
+    }
+
+    /** Calls the read endpoints repeatedly, errors are ignored since this only exists to trigger JIT compilation */
+    private void exerciseReadEndpoints(int port, List<Message> recent, int iterations) {
+        HttpClient client = HttpClient.newHttpClient();
+        String base = "http://localhost:" + port;
+        List<String> paths = new ArrayList<>();
+        // the list endpoints' serialisation path, for at most WARMUP_LIST_IDS messages
+        StringJoiner ids = new StringJoiner(",", "/messages?ids=", "");
+        for (int i = 0; i < Math.min(recent.size(), Math.min(WARMUP_LIST_IDS, multiGetMaxIds)); i++) {
+            ids.add(String.valueOf(recent.get(i).message_id));
+        }
+        paths.add(recent.isEmpty() ? "/messages?ids=1" : ids.toString());
+        for (int i = 0; i < Math.min(recent.size(), 10); i++) {
+            paths.add("/messages/" + recent.get(i).message_id);
+            paths.add("/accounts/" + recent.get(i).posted_by + "/messages");
+        }
+        if (recent.isEmpty()) {
+            paths.add("/messages/1");
+            paths.add("/accounts/1/messages");
+        }
+        for (int i = 0; i < iterations; i++) {
+            for (String path : paths) {
+                try {
+                    HttpRequest request = HttpRequest.newBuilder().uri(URI.create(base + path)).build();
+                    client.send(request, HttpResponse.BodyHandlers.discarding());
+                } catch (IOException e) {
+                    System.out.println("Warm-up request to " + path + " failed: " + e.getMessage());
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Flips GET /ready to 200. Call this directly when skipping warmUp. */
+    public void markReady(StartupTimer timer) {
+        this.startupTimer = timer;
+        this.ready = true;
+        if (timer != null) {
+            System.out.println("Ready to serve traffic " + timer.elapsedMillis() + " ms after startup began");
+        }
+    }
+
+    /**
+     * Builds the graceful shutdown sequence for this controller's app. Main runs it from a JVM shutdown hook:
+     * stop accepting (GET /ready and every new request answer 503), end live streams and parked long-polls,
+     * wait up to shutdown.drain-timeout-ms (default 10000) for in-flight requests to finish, stop Jetty, and
+     * finally checkpoint and close the H2 database. Each step is timed.
+     * @param app the app returned by startAPI().
+     * @return the sequence, call run() on it to shut down.
+     */
+    public ShutdownCoordinator shutdownSequence(Javalin app) {
+        long graceMillis = Config.getLong("shutdown.grace-ms", 0);
+        long drainTimeoutMillis = Config.getLong("shutdown.drain-timeout-ms", 10_000);
+        return new ShutdownCoordinator()
+                .register("stop accepting", () -> {
+                    ready = false;
+                    draining = true;
+                    // give load balancers polling GET /ready time to take this node out of rotation
+                    sleepQuietly(graceMillis);
+                })
+                .register("close live streams", () -> {
+                    messageService.feed.closeAll();
+                    messageService.changeLog.releaseWaiters();
+                })
+                .register("drain in-flight requests", () -> awaitDrained(drainTimeoutMillis))
+                .register("flush group commit", messageService::flushPendingCreates)
+                .register("stop background tasks", messageService::stopBackgroundTasks)
+                .register("stop server", app::stop)
+                .register("checkpoint and close database", ConnectionUtil::shutdown);
+    }
+
+    /** waits until no request is in flight or the timeout passes */
+    private void awaitDrained(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            sleepQuietly(10);
+        }
+        if (inFlight.get() > 0) {
+            System.out.println("Shutdown drain timed out with " + inFlight.get() + " requests still in flight");
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Before every request: refuse it while shutting down, otherwise count it as in flight. */
+    private void admitRequest(Context ctx) {
+        if (draining) {
+            ctx.header("Connection", "close");
+            throw new ServiceUnavailableResponse("Server is shutting down");
+        }
+        inFlight.incrementAndGet();
+        ctx.attribute(IN_FLIGHT_ATTRIBUTE, true);
+    }
+
+    /** After every request, including failed and asynchronous ones. */
+    private void completeRequest(Context ctx) {
+        if (ctx.attribute(IN_FLIGHT_ATTRIBUTE) != null) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /** @return how many requests are currently being handled. */
+    public int inFlightRequests() {
+        return inFlight.get();
+    }
+
+    /** @return how many GET /messages/changes long-polls are parked waiting for a change. */
+    public int waitingLongPolls() {
+        return messageService.changeLog.waiting();
+    }
+
+    /**
+     * Purpose: readiness probe for load balancers and rollouts.
+     * @param ctx No info in the request.
+     * @return ready : status 200 with the startup phase timings
+     * @return not ready yet : status 503
+     */
+    private void getReadyHandler(Context ctx) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ready", ready);
+        StartupTimer timer = startupTimer;
+        if (timer != null) {
+            body.put("startup_phases_ms", timer.phases());
+        }
+        ctx.status(ready ? 200 : 503);
+        ctx.json(body);
+    }
+
+    // ------------------------------------------------------------------------------------------
+    // ADMISSION CONTROL
+
+    /**
+     * Registers before-handlers that charge the client's token bucket on the write and login routes, so a single
+     * client flooding them gets 429 Too Many Requests instead of saturating the database for everyone.
+     * Each route is limited per IP address, and /login and POST /messages are additionally limited per account.
+     * Rates are configured per route with ratelimit.{name}.per-second and ratelimit.{name}.burst.
+     */
+    private void applyRateLimits(Javalin app) {
+        app.before("/register", ctx -> {
+            if (ctx.method() == HandlerType.POST) {
+                charge(registerLimiter, ctx.ip());
+            }
+        });
+        app.before("/login", ctx -> {
+            if (ctx.method() == HandlerType.POST) {
+                charge(loginLimiter, ctx.ip());
+                charge(loginAccountLimiter, bodyField(ctx, "username"));
+            }
+        });
+        app.before("/messages", ctx -> {
+            if (ctx.method() == HandlerType.POST) {
+                charge(postMessageLimiter, ctx.ip());
+                charge(postMessageAccountLimiter, bodyField(ctx, "posted_by"));
+            }
+        });
+        app.exception(RateLimitExceededException.class, (e, ctx) -> {
+            ctx.header("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            ctx.status(429);
+        });
+    }
+
+    /** @throws RateLimitExceededException if the key has no permit left, which stops the request with a 429 */
+    private static void charge(RateLimiter limiter, String key) {
+        if (key == null) {
+            return;
+        }
+        long waitNanos = limiter.tryAcquire(key);
+        if (waitNanos > 0) {
+            throw new RateLimitExceededException(limiter.getName(), retryAfterSeconds(waitNanos));
+        }
+    }
+
+    /** @return the wait rounded up to whole seconds, at least 1, for the Retry-After header */
+    private static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * Charges a bulk import for the records it is about to store, per IP on the limiter of the matching single
+     * route, one permit per ratelimit.import.records-per-permit (100) records counted over the whole request. A
+     * batch that costs more than the limiter's burst is charged the burst, see RateLimiter.tryAcquire.
+     * @param charged records and permits charged so far in this request, updated when the charge succeeds.
+     * @return 0 if the records may be stored, otherwise the seconds the client should wait.
+     */
+    private long chargeImport(Context ctx, RateLimiter limiter, long[] charged, int records) {
+        if (!rateLimitingEnabled || records == 0) {
+            return 0;
+        }
+        long permitsDue = (charged[0] + records + importRecordsPerPermit - 1) / importRecordsPerPermit - charged[1];
+        if (permitsDue > 0) {
+            long waitNanos = limiter.tryAcquire(ctx.ip(), (int) permitsDue);
+            if (waitNanos > 0) {
+                return retryAfterSeconds(waitNanos);
+            }
+        }
+        charged[0] += records;
+        charged[1] += Math.max(0, permitsDue);
+        return 0;
+    }
+
+    /** @return a top-level field of the JSON body as text, or null if the body is not JSON or has no such field */
+    private String bodyField(Context ctx, String field) {
+        try {
+            JsonNode value = requestMapper(ctx).readTree(ctx.bodyAsBytes()).get(field);
+            return value == null || value.isNull() ? null : value.asText();
+        } catch (IOException e) {
+            // the handler will reject the malformed body itself
+            return null;
+        }
+    }
+
+    /**
+     * Purpose: expose operational counters.
+     * @param ctx No info in the request.
+     * @return rate_limits : per-route allowed/throttled counts and how many clients were throttled
+     * @return account_stats : accounts with in-memory stats, and stats reads served from memory vs the database
+     * @return posted_by_index : whether the posted_by index is loaded, and how many accounts and ids it holds
+     * @return single_flight : reads by message_id that joined one already in flight instead of querying
+     * @return transactions : units of work committed, rolled back, and joined by a nested one
+     * @return group_commit : message insert batches and their sizes, when group commit is on
+     * @return string_interning : cached message texts that reused a pooled String, and the heap that saved, when
+     *         cache.intern.enabled is on
+     */
+    private void getMetricsHandler(Context ctx) {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        List<Map<String, Object>> rateLimits = new ArrayList<>();
+        for (RateLimiter limiter : List.of(registerLimiter, loginLimiter, loginAccountLimiter, postMessageLimiter, postMessageAccountLimiter)) {
+            rateLimits.add(limiter.snapshot());
+        }
+        metrics.put("rate_limits", rateLimits);
+        Map<String, Object> accountStats = new LinkedHashMap<>();
+        accountStats.put("tracked_accounts", messageService.stats.trackedAccounts());
+        accountStats.put("hits", messageService.stats.hits());
+        accountStats.put("loads", messageService.stats.loads());
+        metrics.put("account_stats", accountStats);
+        Map<String, Object> postedByIndex = new LinkedHashMap<>();
+        postedByIndex.put("built", messageService.postedByIndex.isBuilt());
+        postedByIndex.put("accounts", messageService.postedByIndex.accountCount());
+        postedByIndex.put("message_ids", messageService.postedByIndex.messageIdCount());
+        metrics.put("posted_by_index", postedByIndex);
+        List<Map<String, Object>> singleFlight = new ArrayList<>();
+        singleFlight.add(messageService.messageByIdFlight.snapshot());
+        metrics.put("single_flight", singleFlight);
+        metrics.put("transactions", UnitOfWork.snapshot());
+        if (messageService.groupCommit != null) {
+            metrics.put("group_commit", messageService.groupCommit.snapshot());
+        }
+        if (messageService.textInterner != null) {
+            metrics.put("string_interning", messageService.textInterner.snapshot());
+        }
+        ctx.json(metrics);
+    }
+
+    /**
+     * Purpose: storage engine statistics for tuning the db.* settings.
+     * @param ctx No info in the request.
+     * @return mode, url, cache_hit_ratio, cache and file sizes, file I/O counts, and H2's raw info values
+     */
+    private void getDatabaseStatsHandler(Context ctx) {
+        ctx.json(databaseService.getStats());
+    }
+
     // ------------------------------------------------------------------------------------------
     // ACCOUNT HANDLERS
     /**
-     * mapper is used to convert JSON into an object. The Jackson ObjectMapper will automatically convert the JSON of the POST request into an object.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * readBody is used to convert JSON into an object. The Jackson ObjectMapper will automatically convert the JSON of the POST request into an object.
+     * Clients may send and accept application/cbor instead of JSON, see readBody and respond.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
     // status 200 if successful, else 400
-    private void createAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        // mapper will read the JSON data passed from the user and convert it to an object 
-        Account account = mapper.readValue(ctx.body(), Account.class);
+    private void createAccountHandler(Context ctx) throws IOException {
+        // readBody will read the JSON (or CBOR) data passed from the user and convert it to an object 
+        Account account = readBody(ctx, Account.class);
         Account addedAccount = accountService.createAccount(account);
         if (addedAccount != null) {
-            ctx.json(mapper.writeValueAsString(addedAccount)); // default returns status 200
+            respond(ctx, addedAccount); // default returns status 200
         } else {
             ctx.status(400);
         }
@@ -85,19 +481,43 @@ public class SocialMediaController {
      * If successful : status 200
      * if unsuccessful : status 401 (Unauthorized)
      * @param ctx contain a JSON representation of an Account, not containing an account_id
-     * @throws JsonProcessingException
+     * @throws IOException
      */
-    private void getAccountByUsernameAndPasswordHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
+    private void getAccountByUsernameAndPasswordHandler(Context ctx) throws IOException {
+        Account account = readBody(ctx, Account.class);
         Account gotAccount = accountService.getAccountByUsernameAndPassword(account);
         if (gotAccount != null) {
-            ctx.json(mapper.writeValueAsString(gotAccount)); // returns status 200
+            respond(ctx, gotAccount); // returns status 200
         } else {
             ctx.status(401);
         }
     }
 
+    /**
+     * Purpose: register many accounts in one request, e.g. when onboarding a partner.
+     * The body is NDJSON, one {"username": ..., "password": ...} per line, and is read incrementally, so its size
+     * is not limited by memory. Records are checked like POST /register and stored in JDBC batches.
+     * @param ctx body of Content-Type application/x-ndjson.
+     * @return NDJSON, one ImportResult per input line in input order (created with the account_id, or rejected
+     *         with the reason), then a final line {"created": n, "rejected": m}. Status 200 even if records were rejected.
+     *         Charged to the /register rate limit by record count, see bulkImport.
+     */
+    private void importAccountsHandler(Context ctx) throws IOException {
+        bulkImport(ctx, Account.class, accountService::createAccounts, registerLimiter);
+    }
+
+    /**
+     * Purpose: export every account as NDJSON, one {"account_id": ..., "username": ...} per line in account_id
+     * order, streamed from the database. Passwords are never exported.
+     * @param ctx No info in the request.
+     */
+    private void exportAccountsHandler(Context ctx) throws IOException {
+        stream(ctx, ndjsonGenerator(ctx), generator -> {
+            accountService.writeAllAccounts(generator);
+            generator.writeRaw('\n');
+        });
+    }
+
     // ------------------------------------------------------------------------------------------
     // MESSAGE HANDLERS
 
@@ -106,33 +526,178 @@ public class SocialMediaController {
      * creating a new message is successful if message_text is under 255 characters
      * and posted_by is a real existing user.
      * @param ctx contain a JSON representation of a message, not containing message_id
-     * @throws JsonProcessingException
+     * @throws IOException
      * @return successful : the created Message object as JSON including its message_id.
      * @return unsuccess : status 400 
      */
-    private void createMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper  = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
-        System.out.println("-----------------------------------------------------------------------------------------------------------------");
-        System.out.println("message in handler " + message);
+    private void createMessageHandler(Context ctx) throws IOException {
+        Message message = readBody(ctx, Message.class);
         Message newMessage = messageService.createMessage(message);
-        System.out.println("message in handler after " + newMessage);
         if (newMessage != null) {
-            ctx.json(mapper.writeValueAsString(newMessage)); // returns status 200 by default
+            respond(ctx, newMessage); // returns status 200 by default
         } else {
             ctx.status(400); // the new message was not created
         }
     }
 
     /**
-     * Purpose: get all messages.
+     * Purpose: get all messages, or with ?ids=1,2,3 only those messages.
+     * @param ctx optional query parameter ids, comma separated message_ids.
+     * @return successful : a list containing Message objects; with ids, in the requested order without missing ids
+     * @return unsuccess : empty list; status 400 if ids is malformed or longer than messages.multi-get.max-ids,
+     *         status 500 if the messages could not be read
+     */
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        String ids = ctx.queryParam("ids");
+        if (ids != null) {
+            respondWithMessages(ctx, parseIds(ids));
+            return;
+        }
+        // rows are written to the response as they are read, no List<Message> is built
+        stream(ctx, responseGenerator(ctx), messageService::writeAllMessages);
+    }
+
+    /**
+     * Purpose: create many messages in one request, e.g. when migrating from another system.
+     * The body is NDJSON, one {"posted_by": ..., "message_text": ..., "time_posted_epoch": ...} per line, read
+     * incrementally and stored in JDBC batches. Text is checked like POST /messages; posted_by must be an account.
+     * @param ctx body of Content-Type application/x-ndjson.
+     * @return NDJSON, one ImportResult per input line in input order (created with the message_id, or rejected
+     *         with the reason), then a final line {"created": n, "rejected": m}. Status 200 even if records were rejected.
+     *         Charged to the POST /messages rate limit by record count, see bulkImport.
+     */
+    private void importMessagesHandler(Context ctx) throws IOException {
+        bulkImport(ctx, Message.class, messageService::createMessages, postMessageLimiter);
+    }
+
+    /**
+     * Purpose: the same as GET /messages?ids= for id lists too long for a URL.
+     * @param ctx body {"ids": [1, 2, 3]}.
+     * @return successful : a list of the messages that exist, in the requested order
+     * @return unsuccess : status 400 if the body has no ids array, or more than messages.multi-get.max-ids,
+     *         status 500 if the messages could not be read
+     */
+    private void lookupMessagesHandler(Context ctx) throws IOException {
+        int[] ids = null;
+        try {
+            JsonNode idsNode = requestMapper(ctx).readTree(ctx.bodyAsBytes()).get("ids");
+            if (idsNode != null && idsNode.isArray()) {
+                ids = new int[idsNode.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    if (!idsNode.get(i).canConvertToInt()) {
+                        ids = null;
+                        break;
+                    }
+                    ids[i] = idsNode.get(i).intValue();
+                }
+            }
+        } catch (IOException e) {
+            // rejected below
+        }
+        respondWithMessages(ctx, ids);
+    }
+
+    /** @return the comma separated ids, or null if any of them is not a number */
+    private static int[] parseIds(String ids) {
+        String[] parts = ids.split(",");
+        int[] parsed = new int[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                parsed[i] = Integer.parseInt(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return parsed;
+    }
+
+    private void respondWithMessages(Context ctx, int[] ids) throws JsonProcessingException {
+        if (ids == null || ids.length > multiGetMaxIds) {
+            ctx.status(400);
+            return;
+        }
+        List<Message> messages = messageService.getMessagesByIds(ids);
+        if (messages == null) {
+            // some ids could not be read, a shorter list would pass for ids that do not exist
+            throw new InternalServerErrorResponse("Messages could not be read");
+        }
+        respond(ctx, messages);
+    }
+
+    /**
+     * Purpose: export every message as NDJSON, one Message per line in message_id order, streamed from the database.
      * @param ctx No info in the request.
-     * @return successful : a list containing Message objects
-     * @return unsuccess : empty list 
      */
-    private void getAllMessagesHandler(Context ctx) {
-        List<Message> messages = messageService.getAllMessages();
-        ctx.json(messages); // returns 200 by default
+    private void exportMessagesHandler(Context ctx) throws IOException {
+        stream(ctx, ndjsonGenerator(ctx), generator -> {
+            messageService.exportAllMessages(generator);
+            generator.writeRaw('\n');
+        });
+    }
+
+    /**
+     * Purpose: let consumers follow create/update/delete of messages instead of re-polling GET /messages.
+     * Query parameters: since (last offset already seen, default 0), limit (default 100, max 1000),
+     * wait (long-poll timeout in ms, default 0 = return immediately, max 30000).
+     * @param ctx query parameters only, no body.
+     * @return successful : a page with the changes after `since`, `next_offset` to pass back as `since`, and
+     *         `truncated` = true if changes were dropped from the log and the consumer must re-read GET /messages
+     * @return unsuccess : status 400 if a query parameter is not a number
+     */
+    private void getMessageChangesHandler(Context ctx) {
+        long since;
+        int limit;
+        long waitMillis;
+        try {
+            since = Math.max(0, parseOrDefault(ctx.queryParam("since"), 0));
+            limit = (int) Math.min(Math.max(parseOrDefault(ctx.queryParam("limit"), 100), 1), 1000);
+            waitMillis = Math.min(Math.max(parseOrDefault(ctx.queryParam("wait"), 0), 0), 30000);
+        } catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        CompletableFuture<MessageChangeLog.Page> page = messageService.getChangesSince(since, limit, waitMillis);
+        ctx.future(() -> page.thenAccept(ctx::json));
+    }
+
+    /**
+     * Purpose: push newly created messages to the client as Server-Sent Events instead of having it re-poll.
+     * The request needs the header Accept: text/event-stream.
+     * Each event is named "message" and its data is the JSON of the created Message.
+     * Optional query parameter posted_by only streams messages from that account_id.
+     * A client that cannot keep up, or whose connection stops accepting writes for feed.write-timeout-ms, is
+     * disconnected and should catch up with GET /messages/changes.
+     * @param client the SSE connection, kept open until the client leaves or is disconnected.
+     */
+    private void messageStreamHandler(SseClient client) {
+        Integer postedBy = null;
+        String postedByParam = client.ctx.queryParam("posted_by");
+        if (postedByParam != null && !postedByParam.isBlank()) {
+            try {
+                postedBy = Integer.parseInt(postedByParam.trim());
+            } catch (NumberFormatException e) {
+                client.ctx.status(400);
+                client.close();
+                return;
+            }
+        }
+        client.keepAlive();
+        MessageFeed.Subscription subscription = messageService.feed.subscribe(postedBy,
+                event -> client.sendEvent("message", new ByteArrayInputStream(event)),
+                client::close,
+                () -> abortConnection(client));
+        client.onClose(subscription::close);
+        // the stream starts with a comment so clients see the connection is established
+        client.sendComment("connected");
+    }
+
+    /**
+     * Breaks an SSE connection whose write is blocked because the client stopped reading. Closing the Jetty
+     * channel fails the pending write, so the feed thread stuck in it returns instead of waiting for the client.
+     */
+    private static void abortConnection(SseClient client) {
+        abortConnection(client.ctx, new TimeoutException("feed write timed out"));
+        client.close();
     }
 
     /**
@@ -141,7 +706,7 @@ public class SocialMediaController {
      * @return successful : the Message object
      * @return unsuccess : empty response body
      */
-    private void getMessageByIdHandler(Context ctx) {
+    private void getMessageByIdHandler(Context ctx) throws JsonProcessingException {
         // Retrieve the message_id from the path parameter
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
 
@@ -150,7 +715,7 @@ public class SocialMediaController {
 
         if (message != null) {
             // Send the message as a JSON response
-            ctx.json(message); // Default status is 200
+            respond(ctx, message); // Default status is 200
         } else {
             // If the message does not exist
             ctx.status(200).result("");
@@ -163,12 +728,12 @@ public class SocialMediaController {
      * @return successful : message existed and was deleted from db, response contains the deleted message
      * @return unsuccess : message did not exist, empty response body, status 200
      */
-    private void deleteMessageByIdHandler(Context ctx) {
+    private void deleteMessageByIdHandler(Context ctx) throws JsonProcessingException {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
 
         Message deletedMessage = messageService.deleteMessageById(messageId);
         if (deletedMessage != null) {
-            ctx.json(deletedMessage);
+            respond(ctx, deletedMessage);
         } else {
             ctx.status(200).result("");
         }
@@ -180,15 +745,14 @@ public class SocialMediaController {
      * @return successful : response body of the updated Message object including message_id, message_text, posted_by, and time_posted_epoch
      * @return unsuccess : status 400
      */
-    private void updateMessageByIdHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void updateMessageByIdHandler(Context ctx) throws IOException {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Message message = mapper.readValue(ctx.body(), Message.class);
+        Message message = readBody(ctx, Message.class);
         message.message_id = messageId;
 
         Message updatedMessage = messageService.updateMessageById(message);
         if (updatedMessage != null) {
-            ctx.json(updatedMessage);
+            respond(ctx, updatedMessage);
         } else {
             ctx.status(400);
         }
@@ -200,9 +764,211 @@ public class SocialMediaController {
      * @return successful : list of Message objects
      * @return unsuccess : empty list, status 200
      */
-    private void getAllMessagesByAccountIdHandler(Context ctx) {
+    private void getAllMessagesByAccountIdHandler(Context ctx) throws IOException {
+        int accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        stream(ctx, responseGenerator(ctx), generator -> messageService.writeAllMessagesByAccountId(accountId, generator));
+    }
+
+    /**
+     * Purpose: message statistics of a single user without fetching their messages.
+     * @param ctx contains a URI parameter for account_id
+     * @return successful : message_count, first_post_epoch, last_post_epoch and total_characters
+     *         (zero counts and null times if the account has no messages), status 200
+     */
+    private void getAccountStatsHandler(Context ctx) throws JsonProcessingException {
         int accountId = Integer.parseInt(ctx.pathParam("account_id"));
-        List<Message> messages = messageService.getAllMessagesByAccountId(accountId);
-        ctx.json(messages);
+        respond(ctx, messageService.getAccountStats(accountId));
+    }
+
+    // ------------------------------------------------------------------------------------------
+    // HELPERS
+
+    /** @return true if the Accept header asks for CBOR instead of JSON */
+    private static boolean acceptsCbor(Context ctx) {
+        String accept = ctx.header("Accept");
+        return accept != null && accept.contains(CBOR);
+    }
+
+    /** @return the mapper matching the request's Content-Type, JSON unless it says application/cbor */
+    private ObjectMapper requestMapper(Context ctx) {
+        String contentType = ctx.contentType();
+        return contentType != null && contentType.startsWith(CBOR) ? cborMapper : sharedMapper;
+    }
+
+    /** Parses the request body as JSON or CBOR depending on its Content-Type. */
+    private <T> T readBody(Context ctx, Class<T> type) throws IOException {
+        return requestMapper(ctx).readValue(ctx.bodyAsBytes(), type);
+    }
+
+    /** Writes the object as CBOR if the client accepts it, otherwise as JSON. */
+    private void respond(Context ctx, Object body) throws JsonProcessingException {
+        if (acceptsCbor(ctx)) {
+            ctx.contentType(CBOR);
+            ctx.result(cborMapper.writeValueAsBytes(body));
+        } else {
+            ctx.json(body);
+        }
+    }
+
+    /** @return a generator on the response stream, CBOR if the client accepts it, otherwise JSON */
+    private JsonGenerator responseGenerator(Context ctx) throws IOException {
+        if (acceptsCbor(ctx)) {
+            ctx.contentType(CBOR);
+            return cborMapper.getFactory().createGenerator(ctx.outputStream());
+        }
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        return sharedMapper.getFactory().createGenerator(ctx.outputStream());
+    }
+
+    /** Writes a streamed response body through a generator. */
+    private interface BodyWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /**
+     * Writes a streamed body and closes the generator. If writing fails part way the body is not finished: the
+     * connection is aborted once bytes have gone out, otherwise the error response replaces them, so a client never
+     * takes a shortened list for the whole one.
+     */
+    private static void stream(Context ctx, JsonGenerator generator, BodyWriter body) throws IOException {
+        try {
+            body.write(generator);
+        } catch (IOException | RuntimeException e) {
+            if (ctx.res().isCommitted()) {
+                abortConnection(ctx, e);
+            } else {
+                ctx.res().resetBuffer();
+            }
+            throw e;
+        }
+        generator.close();
+    }
+
+    /** Closes the request's Jetty channel, which fails any write in progress on it and resets the connection. */
+    private static void abortConnection(Context ctx, Throwable failure) {
+        Request request = Request.getBaseRequest(ctx.req());
+        if (request != null) {
+            request.getHttpChannel().abort(failure);
+        }
+    }
+
+    /** @return a JSON generator on the response stream that writes each root value on its own line */
+    private JsonGenerator ndjsonGenerator(Context ctx) throws IOException {
+        ctx.contentType(NDJSON);
+        JsonGenerator generator = sharedMapper.getFactory().createGenerator(ctx.outputStream());
+        generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+        return generator;
+    }
+
+    /**
+     * Reads an NDJSON request body line by line, hands the records to the importer bulkBatchSize at a time and
+     * writes one outcome per line back as NDJSON as each batch finishes, so memory use does not grow with the body.
+     * A line that is not valid JSON for the type is rejected without stopping the import.
+     *
+     * Each batch is charged to the limiter before it is stored, see chargeImport. If the first batch is over the
+     * limit the request gets a 429 like the single route; a later one ends the import: its lines are rejected, the
+     * rest of the body is not read, and the final line also has "retry_after_seconds".
+     */
+    private <T> void bulkImport(Context ctx, Class<T> type, Function<List<T>, List<ImportResult>> importer,
+            RateLimiter limiter) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(ctx.bodyInputStream(), StandardCharsets.UTF_8));
+        JsonGenerator generator = ndjsonGenerator(ctx);
+        long[] counts = new long[2]; // created, rejected
+        long[] charged = new long[2]; // records, permits
+        long retryAfterSeconds = 0;
+        try {
+            List<T> batch = new ArrayList<>();
+            // one entry per line in the batch: null while the record waits for the importer, or its rejection
+            List<ImportResult> outcomes = new ArrayList<>();
+            List<Long> lineNumbers = new ArrayList<>();
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                lineNumbers.add(lineNumber);
+                try {
+                    batch.add(sharedMapper.readValue(line, type));
+                    outcomes.add(null);
+                } catch (JsonProcessingException e) {
+                    outcomes.add(ImportResult.rejected("not a valid " + type.getSimpleName()));
+                }
+                if (outcomes.size() >= bulkBatchSize) {
+                    retryAfterSeconds = chargeBatch(ctx, limiter, charged, batch, outcomes, counts, lineNumber);
+                    writeBatch(generator, importer, batch, outcomes, lineNumbers, counts);
+                    if (retryAfterSeconds > 0) {
+                        break;
+                    }
+                }
+            }
+            if (retryAfterSeconds == 0) {
+                retryAfterSeconds = chargeBatch(ctx, limiter, charged, batch, outcomes, counts, lineNumber);
+                writeBatch(generator, importer, batch, outcomes, lineNumbers, counts);
+            }
+            generator.writeStartObject();
+            generator.writeNumberField("created", counts[0]);
+            generator.writeNumberField("rejected", counts[1]);
+            if (retryAfterSeconds > 0) {
+                generator.writeNumberField("retry_after_seconds", retryAfterSeconds);
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } finally {
+            generator.close();
+        }
+        System.out.println("bulk import of " + type.getSimpleName() + ": " + counts[0] + " created, " + counts[1] + " rejected");
+    }
+
+    /**
+     * Charges the batch about to be imported. If the client is over its limit the batch's records are turned into
+     * rejections, unless nothing has been answered yet, then the whole request is refused with a 429.
+     * @return 0 if the batch may be imported, otherwise the seconds the client should wait.
+     * @throws RateLimitExceededException if the first batch is over the limit.
+     */
+    private <T> long chargeBatch(Context ctx, RateLimiter limiter, long[] charged, List<T> batch,
+            List<ImportResult> outcomes, long[] counts, long lineNumber) {
+        long retryAfterSeconds = chargeImport(ctx, limiter, charged, batch.size());
+        if (retryAfterSeconds == 0) {
+            return 0;
+        }
+        if (counts[0] + counts[1] == 0) {
+            throw new RateLimitExceededException(limiter.getName(), retryAfterSeconds);
+        }
+        System.out.println("bulk import rate limited at line " + lineNumber);
+        for (int i = 0; i < outcomes.size(); i++) {
+            if (outcomes.get(i) == null) {
+                outcomes.set(i, ImportResult.rejected("rate limit exceeded, retry after " + retryAfterSeconds + " s"));
+            }
+        }
+        batch.clear();
+        return retryAfterSeconds;
+    }
+
+    /** Imports one batch, writes the outcome of every line in it in line order, and clears the batch. */
+    private <T> void writeBatch(JsonGenerator generator, Function<List<T>, List<ImportResult>> importer, List<T> batch,
+            List<ImportResult> outcomes, List<Long> lineNumbers, long[] counts) throws IOException {
+        List<ImportResult> imported = batch.isEmpty() ? List.of() : importer.apply(batch);
+        int next = 0;
+        for (int i = 0; i < outcomes.size(); i++) {
+            ImportResult result = outcomes.get(i) != null ? outcomes.get(i) : imported.get(next++);
+            result.line = lineNumbers.get(i);
+            counts[ImportResult.CREATED.equals(result.status) ? 0 : 1]++;
+            generator.writeObject(result);
+        }
+        // let the client see progress on long imports
+        generator.flush();
+        batch.clear();
+        outcomes.clear();
+        lineNumbers.clear();
+    }
+
+    /** @return the query parameter as a long, or the default value if it was not sent */
+    private static long parseOrDefault(String value, long defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return Long.parseLong(value.trim());
     }
 }
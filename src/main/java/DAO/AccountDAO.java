@@ -1,18 +1,27 @@
 package DAO;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import Model.Account;
-import Util.ConnectionUtil;
+import Util.UnitOfWork;
 
 /**
  * A DAO is a class that mediates the transformation of data between the format of objects in Java to rows in a
  * database. 
  */
-public class AccountDAO {
+public class AccountDAO implements AccountRepository {
 // Please refrain from using a 'try-with-resources' block when connecting to your database. 
 // The ConnectionUtil provided uses a singleton, and using a try-with-resources will cause issues in the tests.
 
@@ -32,7 +41,7 @@ public class AccountDAO {
      * @return if successful, the object with created account_id 
      * @return if unsuccessful, null */
     public Account createAccount(Account newAccount) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         PreparedStatement preparedStatement = null;
         ResultSet generatedKeys = null;
         try {
@@ -74,7 +83,7 @@ public class AccountDAO {
      * @return if unsuccessful, false
      */
     public boolean getAccountByUsername(String username) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         PreparedStatement preparedStatement = null;
         ResultSet usernameExists = null;
         try {
@@ -109,7 +118,7 @@ public class AccountDAO {
      * @return if unsuccessful, returns null.
      */
     public Account getAccountByUsernameAndPassword(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         PreparedStatement preparedStatement = null;
         ResultSet rs = null;
         try {
@@ -139,4 +148,196 @@ public class AccountDAO {
         // return null if no matching account is found 
         return null;
     }
+
+    // ---------------------------------------------------------------------------------------------------- 
+    // BULK 
+
+    /**
+     * Checks many usernames with one query instead of one getAccountByUsername call each.
+     * @param usernames the usernames to look up.
+     * @return the ones that already exist in the account table.
+     */
+    public Set<String> getExistingUsernames(Collection<String> usernames) {
+        Set<String> existing = new HashSet<>();
+        if (usernames.isEmpty()) {
+            return existing;
+        }
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        try {
+            String sql = "SELECT username FROM account WHERE username IN (" + placeholders(usernames.size()) + ")";
+            preparedStatement = connection.prepareStatement(sql);
+            int index = 1;
+            for (String username : usernames) {
+                preparedStatement.setString(index++, username);
+            }
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                existing.add(rs.getString(1));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error checking existing usernames: " + e.getMessage());
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Checks many account ids with one query. Used by the message bulk import, where the poster of the first
+     * imported message has no message yet for postedByExistingUser to find.
+     * @param accountIds account ids to look up.
+     * @return the ones that exist in the account table.
+     */
+    public Set<Integer> getExistingAccountIds(Collection<Integer> accountIds) {
+        Set<Integer> existing = new HashSet<>();
+        if (accountIds.isEmpty()) {
+            return existing;
+        }
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        try {
+            String sql = "SELECT account_id FROM account WHERE account_id IN (" + placeholders(accountIds.size()) + ")";
+            preparedStatement = connection.prepareStatement(sql);
+            int index = 1;
+            for (int accountId : accountIds) {
+                preparedStatement.setInt(index++, accountId);
+            }
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                existing.add(rs.getInt(1));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error checking existing accounts: " + e.getMessage());
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Inserts many accounts with one JDBC batch in one transaction. If the batch fails (e.g. a username was taken
+     * in the meantime) it is rolled back and the accounts are inserted one at a time, so only the bad rows fail.
+     * @param newAccounts Account objects with username and password, already validated.
+     * @return a list of the same size: the account with its account_id, or null where the insert failed.
+     */
+    public List<Account> createAccounts(List<Account> newAccounts) {
+        List<Account> created = new ArrayList<>();
+        if (newAccounts.isEmpty()) {
+            return created;
+        }
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet generatedKeys = null;
+        boolean batchFailed = false;
+        // inside a unit of work only the batch is undone on failure, not the rest of the outer transaction
+        boolean ownTransaction = !UnitOfWork.isActive();
+        Savepoint savepoint = null;
+        try {
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            } else {
+                savepoint = connection.setSavepoint();
+            }
+            String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
+            preparedStatement = connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
+            for (Account account : newAccounts) {
+                preparedStatement.setString(1, account.username);
+                preparedStatement.setString(2, account.password);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+            // keys come back in the order the rows were added
+            generatedKeys = preparedStatement.getGeneratedKeys();
+            for (Account account : newAccounts) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("missing generated key for " + account.username);
+                }
+                account.account_id = generatedKeys.getInt(1);
+                created.add(account);
+            }
+            if (ownTransaction) connection.commit();
+        } catch (SQLException e) {
+            System.out.println("Error creating accounts in a batch, retrying one at a time: " + e.getMessage());
+            batchFailed = true;
+            try {
+                if (ownTransaction) {
+                    connection.rollback();
+                } else if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+            } catch (SQLException rollbackError) {
+                System.out.println("Error rolling back: " + rollbackError.getMessage());
+            }
+        } finally {
+            try {
+                if (generatedKeys != null) generatedKeys.close();
+                if (preparedStatement != null) preparedStatement.close();
+                if (ownTransaction) connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        if (batchFailed) {
+            created.clear();
+            for (Account account : newAccounts) {
+                created.add(createAccount(account));
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Writes every account as one JSON object per root value straight from the ResultSet, for NDJSON export.
+     * Only account_id and username: the password is not even read.
+     * @param generator where the objects are written, normally with a newline root value separator.
+     * @throws IOException if writing fails, e.g. the client went away, or the query fails.
+     */
+    public void writeAllAccounts(JsonGenerator generator) throws IOException {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        try {
+            String sql = "SELECT account_id, username FROM account ORDER BY account_id";
+            preparedStatement = connection.prepareStatement(sql);
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                generator.writeStartObject();
+                generator.writeNumberField("account_id", rs.getInt(1));
+                generator.writeStringField("username", rs.getString(2));
+                generator.writeEndObject();
+            }
+        } catch (SQLException e) {
+            System.out.println("Error exporting accounts: " + e.getMessage());
+            throw new IOException("exporting accounts failed", e);
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+    }
+
+    /** @return "?, ?, ?" with count placeholders, for IN lists */
+    static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.toString();
+    }
 }
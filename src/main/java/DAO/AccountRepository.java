@@ -0,0 +1,46 @@
+package DAO;
+
+import Model.Account;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage of accounts, as used by AccountService and by MessageService's bulk import. AccountDAO keeps them in the
+ * H2 account table; InMemoryAccountRepository keeps them in memory for storage.engine=memory.
+ *
+ * Implementations return null / false / empty collections on failure instead of throwing, like the original DAO.
+ */
+public interface AccountRepository {
+
+    /**
+     * @param newAccount username and password, already validated.
+     * @return the account with its new account_id, or null if it could not be stored (e.g. the username is taken).
+     */
+    Account createAccount(Account newAccount);
+
+    /** @return true if an account with this username exists. */
+    boolean getAccountByUsername(String username);
+
+    /** @return the account with its account_id if the username and password match one, otherwise null. */
+    Account getAccountByUsernameAndPassword(Account account);
+
+    /** @return the usernames out of these that already exist. */
+    Set<String> getExistingUsernames(Collection<String> usernames);
+
+    /** @return the account ids out of these that exist. */
+    Set<Integer> getExistingAccountIds(Collection<Integer> accountIds);
+
+    /**
+     * @param newAccounts accounts already validated.
+     * @return a list of the same size: each account with its account_id, or null where it could not be stored.
+     */
+    List<Account> createAccounts(List<Account> newAccounts);
+
+    /** Writes every account as one root-level JSON object of account_id and username, in account_id order, never the password. */
+    void writeAllAccounts(JsonGenerator generator) throws IOException;
+}
@@ -0,0 +1,44 @@
+package DAO;
+
+import Util.UnitOfWork;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads H2's own view of the database: settings and the MVStore counters H2 reports as info.* settings.
+ */
+public class DatabaseDAO {
+
+    /**
+     * @return every row of INFORMATION_SCHEMA.SETTINGS by name, in H2's order; empty if they could not be read.
+     */
+    public Map<String, String> getSettings() {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        Map<String, String> settings = new LinkedHashMap<>();
+        try {
+            String sql = "SELECT SETTING_NAME, SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS";
+            preparedStatement = connection.prepareStatement(sql);
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                settings.put(rs.getString(1), rs.getString(2));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error reading database settings: " + e.getMessage());
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return settings;
+    }
+}
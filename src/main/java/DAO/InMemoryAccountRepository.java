@@ -0,0 +1,113 @@
+package DAO;
+
+import Model.Account;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accounts kept in memory only (storage.engine=memory), for ephemeral nodes and for benchmarking the service layer
+ * without H2. Nothing survives a restart, and a new node starts with no accounts.
+ *
+ * The username map is the unique constraint: an account is only added under its id once putIfAbsent claimed its
+ * username, so two concurrent registrations of the same name cannot both succeed. Stored accounts are copies, so
+ * callers can keep changing the objects they passed in or got back.
+ */
+public class InMemoryAccountRepository implements AccountRepository {
+    private static final InMemoryAccountRepository SHARED = new InMemoryAccountRepository();
+
+    private final Map<String, Account> byUsername = new ConcurrentHashMap<>();
+    // sorted, so the export is in account_id order like AccountDAO's
+    private final Map<Integer, Account> byId = new ConcurrentSkipListMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+
+    /**
+     * @return the instance the services use for storage.engine=memory, one per JVM like an H2 mem database, so
+     *         AccountService and MessageService see the same accounts.
+     */
+    public static InMemoryAccountRepository shared() {
+        return SHARED;
+    }
+
+    public Account createAccount(Account newAccount) {
+        int id = lastId.incrementAndGet();
+        Account stored = new Account(id, newAccount.username, newAccount.password);
+        if (byUsername.putIfAbsent(newAccount.username, stored) != null) {
+            return null;
+        }
+        byId.put(id, stored);
+        newAccount.account_id = id;
+        return newAccount;
+    }
+
+    public boolean getAccountByUsername(String username) {
+        return username != null && byUsername.containsKey(username);
+    }
+
+    public Account getAccountByUsernameAndPassword(Account account) {
+        Account stored = account.username == null ? null : byUsername.get(account.username);
+        if (stored == null || !stored.password.equals(account.password)) {
+            return null;
+        }
+        return new Account(stored.account_id, stored.username, stored.password);
+    }
+
+    public Set<String> getExistingUsernames(Collection<String> usernames) {
+        Set<String> existing = new HashSet<>();
+        for (String username : usernames) {
+            if (getAccountByUsername(username)) {
+                existing.add(username);
+            }
+        }
+        return existing;
+    }
+
+    public Set<Integer> getExistingAccountIds(Collection<Integer> accountIds) {
+        Set<Integer> existing = new HashSet<>();
+        for (Integer accountId : accountIds) {
+            if (accountId != null && byId.containsKey(accountId)) {
+                existing.add(accountId);
+            }
+        }
+        return existing;
+    }
+
+    public List<Account> createAccounts(List<Account> newAccounts) {
+        List<Account> created = new ArrayList<>();
+        for (Account account : newAccounts) {
+            created.add(createAccount(account));
+        }
+        return created;
+    }
+
+    public void writeAllAccounts(JsonGenerator generator) throws IOException {
+        for (Account account : byId.values()) {
+            generator.writeStartObject();
+            generator.writeNumberField("account_id", account.account_id);
+            generator.writeStringField("username", account.username);
+            generator.writeEndObject();
+        }
+    }
+
+    /** @return how many accounts are stored. */
+    public int size() {
+        return byId.size();
+    }
+
+    /** Drops every account and restarts the ids at 1, for tests. */
+    public void clear() {
+        byUsername.clear();
+        byId.clear();
+        lastId.set(0);
+    }
+}
@@ -0,0 +1,313 @@
+package DAO;
+
+import Model.AccountStats;
+import Model.Message;
+import Model.MessageRecord;
+import Util.ConcurrentIntMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Messages kept in memory only (storage.engine=memory), without locks: a ConcurrentIntMap from message_id to an
+ * immutable MessageRecord, ids from an AtomicInteger, and per posted_by a ConcurrentSkipListSet of its records
+ * ordered by time_posted_epoch, then message_id. Nothing survives a restart, and a new node starts with no messages.
+ *
+ * The id map is the single source of truth. A create adds the record to its poster's index first and then
+ * publishes it in the map, and a delete removes it from the map first and then from the index, so a record that is
+ * in the index but not (or no longer) in the map is skipped by readers. An update swaps the record in the map with
+ * one CAS and leaves the index alone, since the text is not part of the order. That makes every single-message
+ * operation linearizable at its CAS on the map; lists are weakly consistent, like the java.util.concurrent
+ * iterators, and never show a message deleted before they started or miss one created before they started.
+ *
+ * Callers get new Message objects, which they may change as they can with the rows MessageDAO materialises.
+ *
+ * postedByExistingUser also accepts an account from the paired AccountRepository that has no message yet: the H2
+ * database is seeded with a message per test account, an in-memory node has nothing for the check to find.
+ */
+public class InMemoryMessageRepository implements MessageRepository {
+    private static final InMemoryMessageRepository SHARED = new InMemoryMessageRepository(InMemoryAccountRepository.shared());
+    private static final Comparator<MessageRecord> BY_TIME_POSTED = Comparator
+            .comparingLong(MessageRecord::getTime_posted_epoch)
+            .thenComparingInt(MessageRecord::getMessage_id);
+
+    private final AccountRepository accounts;
+    private final ConcurrentIntMap<MessageRecord> messages = new ConcurrentIntMap<>();
+    private final Map<Integer, NavigableSet<MessageRecord>> byPostedBy = new ConcurrentHashMap<>();
+    private final AtomicInteger lastId = new AtomicInteger();
+
+    /** @param accounts where postedByExistingUser looks up posters without messages, may be null. */
+    public InMemoryMessageRepository(AccountRepository accounts) {
+        this.accounts = accounts;
+    }
+
+    /** @return the instance MessageService uses for storage.engine=memory, paired with InMemoryAccountRepository.shared(). */
+    public static InMemoryMessageRepository shared() {
+        return SHARED;
+    }
+
+    private NavigableSet<MessageRecord> postsOf(int postedBy) {
+        NavigableSet<MessageRecord> posts = byPostedBy.get(postedBy);
+        if (posts == null) {
+            NavigableSet<MessageRecord> created = new ConcurrentSkipListSet<>(BY_TIME_POSTED);
+            posts = byPostedBy.putIfAbsent(postedBy, created);
+            if (posts == null) {
+                posts = created;
+            }
+        }
+        return posts;
+    }
+
+    /** @return the current version of an indexed record, or null if it is not published or already deleted. */
+    private MessageRecord live(MessageRecord indexed) {
+        return messages.get(indexed.getMessage_id());
+    }
+
+    /** @return the poster's live messages, oldest time_posted_epoch first. */
+    private List<Message> livePosts(int postedBy) {
+        List<Message> posts = new ArrayList<>();
+        NavigableSet<MessageRecord> indexed = byPostedBy.get(postedBy);
+        if (indexed == null) {
+            return posts;
+        }
+        for (MessageRecord record : indexed) {
+            MessageRecord current = live(record);
+            if (current != null) {
+                posts.add(current.toMessage());
+            }
+        }
+        return posts;
+    }
+
+    public Message createMessage(Message newMessage) {
+        int id = lastId.incrementAndGet();
+        newMessage.message_id = id;
+        MessageRecord record = MessageRecord.of(newMessage);
+        // indexed before it is published, so no reader finds it in the map but not in the index
+        postsOf(record.getPosted_by()).add(record);
+        messages.putIfAbsent(id, record);
+        return newMessage;
+    }
+
+    public List<Message> createMessages(List<Message> newMessages) {
+        List<Message> created = new ArrayList<>();
+        for (Message message : newMessages) {
+            created.add(createMessage(message));
+        }
+        return created;
+    }
+
+    public boolean postedByExistingUser(int postedBy) {
+        return postedByExistingMessage(postedBy)
+                || accounts != null && !accounts.getExistingAccountIds(Collections.singletonList(postedBy)).isEmpty();
+    }
+
+    public List<Message> getAllMessages() {
+        List<Message> all = new ArrayList<>(messages.size());
+        // forEach walks the ids in ascending order
+        messages.forEach((record, id) -> all.add(record.toMessage()));
+        return all;
+    }
+
+    public void writeAllMessages(JsonGenerator generator) throws IOException {
+        MessageRepositorySupport.writeArray(getAllMessages(), generator);
+    }
+
+    public Message getMessageById(int id) {
+        if (id < 0) {
+            return null;
+        }
+        MessageRecord record = messages.get(id);
+        return record == null ? null : record.toMessage();
+    }
+
+    public Message deleteMessageById(int id) {
+        if (id < 0) {
+            return null;
+        }
+        while (true) {
+            MessageRecord current = messages.get(id);
+            if (current == null) {
+                return null;
+            }
+            if (messages.remove(id, current)) {
+                // equal by time posted and id, which an update does not change
+                byPostedBy.get(current.getPosted_by()).remove(current);
+                return current.toMessage();
+            }
+        }
+    }
+
+    public Message updateMessageById(Message newMessage) {
+        if (newMessage.message_id < 0) {
+            return null;
+        }
+        while (true) {
+            MessageRecord current = messages.get(newMessage.message_id);
+            if (current == null) {
+                return null;
+            }
+            MessageRecord updated = current.withMessageText(newMessage.message_text);
+            if (messages.replace(current.getMessage_id(), current, updated)) {
+                return newMessage;
+            }
+        }
+    }
+
+    /**
+     * Merges the newest end of every poster's index instead of sorting all messages, so it reads about
+     * limit + posters records.
+     */
+    public List<Message> getRecentMessages(int limit) {
+        List<Message> recent = new ArrayList<>();
+        if (limit <= 0) {
+            return recent;
+        }
+        final class Cursor {
+            final Iterator<MessageRecord> newestFirst;
+            MessageRecord head;
+
+            Cursor(Iterator<MessageRecord> newestFirst) {
+                this.newestFirst = newestFirst;
+            }
+
+            boolean advance() {
+                head = newestFirst.hasNext() ? newestFirst.next() : null;
+                return head != null;
+            }
+        }
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>((a, b) -> BY_TIME_POSTED.compare(b.head, a.head));
+        for (NavigableSet<MessageRecord> indexed : byPostedBy.values()) {
+            Cursor cursor = new Cursor(indexed.descendingIterator());
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        while (recent.size() < limit && !cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            MessageRecord current = live(cursor.head);
+            if (current != null) {
+                recent.add(current.toMessage());
+            }
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+        return recent;
+    }
+
+    public List<Integer> getAllPostedByIds() {
+        List<Integer> postedByIds = new ArrayList<>();
+        for (int postedBy : byPostedBy.keySet()) {
+            if (postedByExistingMessage(postedBy)) {
+                postedByIds.add(postedBy);
+            }
+        }
+        return postedByIds;
+    }
+
+    private boolean postedByExistingMessage(int postedBy) {
+        NavigableSet<MessageRecord> indexed = byPostedBy.get(postedBy);
+        if (indexed != null) {
+            for (MessageRecord record : indexed) {
+                if (live(record) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** @return the account's messages, oldest time_posted_epoch first. */
+    public List<Message> getAllMessagesByAccountId(int postedBy) {
+        return livePosts(postedBy);
+    }
+
+    public void writeAllMessagesByAccountId(int postedBy, JsonGenerator generator) throws IOException {
+        MessageRepositorySupport.writeArray(livePosts(postedBy), generator);
+    }
+
+    public Map<Integer, int[]> getMessageIdsByPostedBy() {
+        Map<Integer, int[]> idsByPostedBy = new HashMap<>();
+        for (int postedBy : byPostedBy.keySet()) {
+            List<Message> posts = livePosts(postedBy);
+            if (posts.isEmpty()) {
+                continue;
+            }
+            int[] ids = new int[posts.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = posts.get(i).message_id;
+            }
+            // the index is in time order, the contract is ascending ids
+            Arrays.sort(ids);
+            idsByPostedBy.put(postedBy, ids);
+        }
+        return idsByPostedBy;
+    }
+
+    public List<Message> getMessagesByIds(int[] ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        List<Message> found = new ArrayList<>();
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                continue;
+            }
+            Message message = getMessageById(sorted[i]);
+            if (message != null) {
+                found.add(message);
+            }
+        }
+        return found;
+    }
+
+    public void writeMessagesByIds(int[] ids, JsonGenerator generator) throws IOException {
+        for (Message message : getMessagesByIds(ids)) {
+            MessageRepositorySupport.writeMessage(message, generator);
+        }
+    }
+
+    public void exportAllMessages(JsonGenerator generator) throws IOException {
+        for (Message message : getAllMessages()) {
+            MessageRepositorySupport.writeMessage(message, generator);
+        }
+    }
+
+    public AccountStats getAccountStats(int postedBy) {
+        return MessageRepositorySupport.stats(postedBy, livePosts(postedBy));
+    }
+
+    public List<AccountStats> getAllAccountStats() {
+        List<AccountStats> stats = new ArrayList<>();
+        for (int postedBy : getAllPostedByIds()) {
+            stats.add(getAccountStats(postedBy));
+        }
+        return stats;
+    }
+
+    /** @return how many messages are stored. */
+    public int size() {
+        return messages.size();
+    }
+
+    /** Drops every message and restarts the ids at 1, for tests; not safe while other threads write. */
+    public void clear() {
+        messages.clear();
+        byPostedBy.clear();
+        lastId.set(0);
+    }
+}
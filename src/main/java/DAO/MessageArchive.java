@@ -0,0 +1,381 @@
+package DAO;
+
+import Model.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold storage for old messages: compressed, append-only segment files on local disk, one per time bucket of
+ * time_posted_epoch (archive.bucket-seconds, 30 days by default).
+ *
+ * Each append writes one block to the end of its bucket's segment:
+ *
+ *  int magic, int count, int minId, int maxId, int rawLength, int compressedLength, long sequence, long crc32,
+ *  deflated records, each: int message_id, int posted_by, long time_posted_epoch, int textLength, UTF-8 text
+ *
+ * Segments are memory-mapped for reads and remapped after each append. Blocks are never rewritten: deleting an
+ * archived message appends (id, sequence of the newest block) to the tombstones file, which hides every copy in
+ * blocks up to that sequence but not a later re-archived copy. A message archived twice (e.g. after a crash between
+ * the append and the delete from the hot table) is read from its newest block. On open a torn block or tombstone at
+ * the end of a file, detected by its length or checksum, is cut off.
+ *
+ * Instances are shared per directory, see forDirectory, so there is only ever one writer per file.
+ */
+public class MessageArchive {
+    private static final int MAGIC = 0x4D534742; // "MSGB"
+    private static final int HEADER_BYTES = 6 * 4 + 2 * 8;
+    private static final int TOMBSTONE_BYTES = 4 + 8;
+    private static final int CACHED_BLOCKS = 16;
+    private static final Map<String, MessageArchive> OPEN = new ConcurrentHashMap<>();
+
+    /** Where a block lives; blocks are kept in append order. */
+    private static final class Block {
+        final Segment segment;
+        final long offset;
+        final int minId;
+        final int maxId;
+        final long sequence;
+
+        Block(Segment segment, long offset, int minId, int maxId, long sequence) {
+            this.segment = segment;
+            this.offset = offset;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Segment {
+        final RandomAccessFile file;
+        volatile MappedByteBuffer mapped;
+
+        Segment(RandomAccessFile file) {
+            this.file = file;
+        }
+
+        void remap() throws IOException {
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+    }
+
+    private final File directory;
+    private final long bucketSeconds;
+    private final Map<Long, Segment> segments = new TreeMap<>();
+    private final List<Block> blocks = new CopyOnWriteArrayList<>();
+    // message_id -> sequence of the newest block when it was deleted
+    private final Map<Integer, Long> tombstones = new ConcurrentHashMap<>();
+    private long lastSequence = 0;
+    private final Map<Integer, AtomicInteger> postersByCount = new ConcurrentHashMap<>();
+    private final RandomAccessFile tombstoneFile;
+    // recently decoded blocks, access ordered
+    private final LinkedHashMap<Block, List<Message>> decoded = new LinkedHashMap<>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Block, List<Message>> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    /**
+     * @param directory where the segment and tombstone files are kept.
+     * @param bucketSeconds width of the time bucket stored in one segment file.
+     * @return the archive for this directory, opened on first use.
+     */
+    public static MessageArchive forDirectory(String directory, long bucketSeconds) {
+        String key = new File(directory).getAbsolutePath();
+        return OPEN.computeIfAbsent(key, path -> {
+            try {
+                return open(new File(path), bucketSeconds);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not open message archive in " + path, e);
+            }
+        });
+    }
+
+    /**
+     * Opens an archive that is not shared through forDirectory, e.g. to inspect or recover a copy of one.
+     * The caller must make sure nothing else writes to the same directory.
+     */
+    public static MessageArchive open(File directory, long bucketSeconds) throws IOException {
+        return new MessageArchive(directory, bucketSeconds);
+    }
+
+    private MessageArchive(File directory, long bucketSeconds) throws IOException {
+        this.directory = directory;
+        this.bucketSeconds = bucketSeconds;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create " + directory);
+        }
+        tombstoneFile = new RandomAccessFile(new File(directory, "tombstones"), "rw");
+        // a torn last tombstone is dropped
+        tombstoneFile.setLength(tombstoneFile.length() - tombstoneFile.length() % TOMBSTONE_BYTES);
+        tombstoneFile.seek(0);
+        for (long i = 0; i < tombstoneFile.length() / TOMBSTONE_BYTES; i++) {
+            tombstones.merge(tombstoneFile.readInt(), tombstoneFile.readLong(), Math::max);
+        }
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".dat"));
+        List<Long> buckets = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                buckets.add(Long.parseLong(name.substring("segment-".length(), name.length() - ".dat".length())));
+            }
+        }
+        buckets.sort(null);
+        List<Block> loaded = new ArrayList<>();
+        for (long bucket : buckets) {
+            loadSegment(bucket, loaded);
+        }
+        // blocks from different segments interleave in time; keep them in append order
+        loaded.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        blocks.addAll(loaded);
+        for (Block block : loaded) {
+            lastSequence = Math.max(lastSequence, block.sequence);
+            for (Message message : read(block)) {
+                if (!isDeleted(message.message_id, block)) {
+                    postersByCount.computeIfAbsent(message.posted_by, p -> new AtomicInteger()).incrementAndGet();
+                }
+            }
+        }
+        System.out.println("Opened message archive " + directory + ": " + segments.size() + " segments, "
+                + blocks.size() + " blocks, " + tombstones.size() + " tombstones");
+    }
+
+    /** Indexes the blocks of one segment, cutting off a torn block at its end. */
+    private void loadSegment(long bucket, List<Block> loaded) throws IOException {
+        Segment segment = openSegment(bucket);
+        segment.remap();
+        ByteBuffer buffer = segment.mapped.duplicate();
+        long offset = 0;
+        while (offset + HEADER_BYTES <= buffer.limit()) {
+            buffer.position((int) offset);
+            int magic = buffer.getInt();
+            int count = buffer.getInt();
+            int minId = buffer.getInt();
+            int maxId = buffer.getInt();
+            int rawLength = buffer.getInt();
+            int compressedLength = buffer.getInt();
+            long sequence = buffer.getLong();
+            long crc = buffer.getLong();
+            if (magic != MAGIC || compressedLength < 0 || offset + HEADER_BYTES + compressedLength > buffer.limit()) {
+                break;
+            }
+            byte[] compressed = new byte[compressedLength];
+            buffer.get(compressed);
+            CRC32 check = new CRC32();
+            check.update(compressed);
+            if (check.getValue() != crc) {
+                break;
+            }
+            loaded.add(new Block(segment, offset, minId, maxId, sequence));
+            offset += HEADER_BYTES + compressedLength;
+        }
+        if (offset < segment.file.length()) {
+            System.out.println("Truncating torn block at " + offset + " in archive segment " + bucket);
+            segment.file.setLength(offset);
+            segment.remap();
+        }
+    }
+
+    private Segment openSegment(long bucket) throws IOException {
+        Segment segment = segments.get(bucket);
+        if (segment == null) {
+            segment = new Segment(new RandomAccessFile(new File(directory, "segment-" + bucket + ".dat"), "rw"));
+            segments.put(bucket, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Appends the messages, one block per time bucket, and forces them to disk before returning, so the caller
+     * can then delete them from the hot table.
+     * @param messages messages to archive.
+     */
+    public synchronized void append(List<Message> messages) throws IOException {
+        Map<Long, List<Message>> byBucket = new TreeMap<>();
+        for (Message message : messages) {
+            long bucket = Math.floorDiv(message.time_posted_epoch, bucketSeconds) * bucketSeconds;
+            byBucket.computeIfAbsent(bucket, b -> new ArrayList<>()).add(message);
+        }
+        for (Map.Entry<Long, List<Message>> entry : byBucket.entrySet()) {
+            appendBlock(openSegment(entry.getKey()), entry.getValue());
+        }
+    }
+
+    private void appendBlock(Segment segment, List<Message> messages) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+        for (Message message : messages) {
+            byte[] text = message.message_text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(message.message_id);
+            out.writeInt(message.posted_by);
+            out.writeLong(message.time_posted_epoch);
+            out.writeInt(text.length);
+            out.write(text);
+            minId = Math.min(minId, message.message_id);
+            maxId = Math.max(maxId, message.message_id);
+        }
+        byte[] rawBytes = raw.toByteArray();
+        Deflater deflater = new Deflater();
+        deflater.setInput(rawBytes);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        byte[] compressedBytes = compressed.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(compressedBytes);
+
+        ByteBuffer block = ByteBuffer.allocate(HEADER_BYTES + compressedBytes.length);
+        long sequence = ++lastSequence;
+        block.putInt(MAGIC).putInt(messages.size()).putInt(minId).putInt(maxId)
+                .putInt(rawBytes.length).putInt(compressedBytes.length).putLong(sequence).putLong(crc.getValue())
+                .put(compressedBytes);
+        block.flip();
+        long offset = segment.file.length();
+        FileChannel channel = segment.file.getChannel();
+        channel.position(offset);
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+        channel.force(false);
+        segment.remap();
+        blocks.add(new Block(segment, offset, minId, maxId, sequence));
+        for (Message message : messages) {
+            postersByCount.computeIfAbsent(message.posted_by, p -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * @param id message_id.
+     * @return the archived message, or null if it is not archived or was deleted.
+     */
+    public Message get(int id) {
+        // newest block first, it holds the latest copy of a message archived twice
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            Block block = blocks.get(i);
+            if (id < block.minId || id > block.maxId) {
+                continue;
+            }
+            for (Message message : read(block)) {
+                if (message.message_id == id) {
+                    if (isDeleted(id, block)) {
+                        return null;
+                    }
+                    return new Message(message.message_id, message.posted_by, message.message_text, message.time_posted_epoch);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks an archived message as deleted by appending a tombstone.
+     * @return true if the message was archived and is now deleted.
+     */
+    public synchronized boolean delete(int id) throws IOException {
+        Message message = get(id);
+        if (message == null) {
+            return false;
+        }
+        tombstoneFile.seek(tombstoneFile.length());
+        tombstoneFile.writeInt(id);
+        tombstoneFile.writeLong(lastSequence);
+        tombstoneFile.getChannel().force(false);
+        tombstones.put(id, lastSequence);
+        AtomicInteger count = postersByCount.get(message.posted_by);
+        if (count != null && count.decrementAndGet() <= 0) {
+            postersByCount.remove(message.posted_by);
+        }
+        return true;
+    }
+
+    /** @return true if the copy of the message in this block was deleted after the block was written. */
+    private boolean isDeleted(int id, Block block) {
+        Long deletedAsOf = tombstones.get(id);
+        return deletedAsOf != null && deletedAsOf >= block.sequence;
+    }
+
+    /** @return true if the account has at least one archived, not deleted message. */
+    public boolean hasMessagesFrom(int postedBy) {
+        return postersByCount.containsKey(postedBy);
+    }
+
+    /** @return the number of blocks across all segments. */
+    public int blockCount() {
+        return blocks.size();
+    }
+
+    private List<Message> read(Block block) {
+        synchronized (decoded) {
+            List<Message> messages = decoded.get(block);
+            if (messages != null) {
+                return messages;
+            }
+        }
+        ByteBuffer buffer = block.segment.mapped.duplicate();
+        buffer.position((int) block.offset + 4);
+        int count = buffer.getInt();
+        buffer.getInt();
+        buffer.getInt();
+        int rawLength = buffer.getInt();
+        int compressedLength = buffer.getInt();
+        buffer.getLong();
+        buffer.getLong();
+        byte[] compressed = new byte[compressedLength];
+        buffer.get(compressed);
+        List<Message> messages = decode(compressed, rawLength, count);
+        synchronized (decoded) {
+            decoded.put(block, messages);
+        }
+        return messages;
+    }
+
+    private static List<Message> decode(byte[] compressed, int rawLength, int count) {
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            inflater.inflate(raw);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt archive block", e);
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer records = ByteBuffer.wrap(raw);
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = records.getInt();
+            int postedBy = records.getInt();
+            long epoch = records.getLong();
+            byte[] text = new byte[records.getInt()];
+            records.get(text);
+            messages.add(new Message(id, postedBy, new String(text, StandardCharsets.UTF_8), epoch));
+        }
+        return messages;
+    }
+}
@@ -1,21 +1,53 @@
 package DAO;
 
+import Model.AccountStats;
 import Model.Message;
-import Util.ConnectionUtil;
+import Util.UnitOfWork;
+import com.fasterxml.jackson.core.JsonGenerator;
 import java.sql.Connection;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 /**
  * A DAO is a class that mediates the transformation of data between the format of objects in Java to rows in a
  * database. 
  */
-public class MessageDAO {
+public class MessageDAO implements MessageRepository {
+    // ids per IN query in getMessagesByIds
+    private static final int ID_BATCH_SIZE = 500;
+    // cold tier for old messages, consulted when an id is not in the message table; null when archiving is off
+    private MessageArchive archive;
+
+    // told about every archived message an update moves back into the table; null if nobody listens
+    private Consumer<Message> restoreListener;
+
+    public void setArchive(MessageArchive archive) {
+        this.archive = archive;
+    }
+
+    /** @param restoreListener called with each archived message updateMessageById restores into the table. */
+    public void setRestoreListener(Consumer<Message> restoreListener) {
+        this.restoreListener = restoreListener;
+    }
+
+    public MessageArchive getArchive() {
+        return archive;
+    }
+
 // Please refrain from using a 'try-with-resources' block when connecting to your database. 
 // The ConnectionUtil provided uses a singleton, and using a try-with-resources will cause issues in the tests.
     
@@ -36,7 +68,7 @@ public class MessageDAO {
      * @return if unsuccessful, null.
      * */
     public Message createMessage(Message newMessage) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         PreparedStatement preparedStatement = null;
         ResultSet generatedKeys = null;
         try {
@@ -76,7 +108,7 @@ public class MessageDAO {
      * @return if unsuccessful, return false.
      */
     public boolean postedByExistingUser(int postedBy) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         PreparedStatement preparedStatement = null;
         ResultSet userExists = null;
         try {
@@ -86,8 +118,8 @@ public class MessageDAO {
             preparedStatement.setInt(1, postedBy);
 
             userExists = preparedStatement.executeQuery();
-            // this returns true if data exists
-            return userExists.next();
+            // this returns true if data exists, in the table or in the archive
+            return userExists.next() || (archive != null && archive.hasMessagesFrom(postedBy));
         } catch (SQLException e) {
             System.out.println("Error checking posted by existing user: " + e.getMessage());
         } finally {
@@ -107,7 +139,7 @@ public class MessageDAO {
      * @return list of all messages or an empty list if there are no messages.
     */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         List<Message> messages = new ArrayList<>();
         PreparedStatement preparedStatement = null;
         ResultSet rs = null;
@@ -149,7 +181,7 @@ public class MessageDAO {
      * @return if unsuccessful, return null.
      */
     public Message getMessageById(int id) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         PreparedStatement preparedStatement = null;
         ResultSet rs = null;
         Message message = null;
@@ -177,6 +209,10 @@ public class MessageDAO {
                 System.out.println("Error closing resources: " + e.getMessage());
             }
         }
+        // not in the table, it may have been archived
+        if (message == null && archive != null) {
+            message = archive.get(id);
+        }
         // will return null if no message is found
         return message;
     }
@@ -188,7 +224,7 @@ public class MessageDAO {
      * @return if unsuccessful, null.
      */
     public Message deleteMessageById(int id) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         Message message = getMessageById(id);
         if (message == null) {
             return null;
@@ -199,7 +235,13 @@ public class MessageDAO {
             preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, id);
             int messageDeleted = preparedStatement.executeUpdate();
-            if (messageDeleted == 1) {
+            // also tombstone any archived copy, so it does not resurface; for an archived message that is the delete.
+            // Only once the delete has committed, a rolled back delete must leave the archived copy readable.
+            boolean archived = archive != null && archive.get(id) != null;
+            if (archived) {
+                UnitOfWork.afterCommit(() -> tombstoneArchived(id));
+            }
+            if (messageDeleted == 1 || archived) {
                 return message;
             }
         } catch (SQLException e) {
@@ -222,7 +264,7 @@ public class MessageDAO {
      * @return if unsuccessful, null.
      */
     public Message updateMessageById(Message newMessage) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         PreparedStatement preparedStatement = null;
         try {
             String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
@@ -233,6 +275,14 @@ public class MessageDAO {
             if (messageUpdated == 1) {
                 return newMessage;
             }
+            // an archived message is moved back into the table with its new text
+            Message archived = archive != null ? archive.get(newMessage.message_id) : null;
+            if (archived != null) {
+                archived.message_text = newMessage.message_text;
+                if (restoreArchivedMessage(archived)) {
+                    return newMessage;
+                }
+            }
         } catch (SQLException e) {
             System.out.println("Error updating message: " + e.getMessage());
         } finally {
@@ -247,6 +297,602 @@ public class MessageDAO {
         return null;
     }
 
+    /**
+     * Get the most recently posted messages, used to warm the message cache at startup.
+     * @param limit the maximum number of messages to return.
+     * @return up to limit messages, newest time_posted_epoch first, or an empty list.
+     */
+    public List<Message> getRecentMessages(int limit) {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        List<Message> messages = new ArrayList<>();
+        try {
+            String sql = "SELECT * FROM message ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ?";
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, limit);
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                Message message = new Message(
+                    rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")
+                );
+                messages.add(message);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting recent messages: " + e.getMessage());
+        } finally {
+            // close resources in reverse
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Get every distinct posted_by in the message table, i.e. every account postedByExistingUser would accept.
+     * @return the account ids that have posted at least one message, or an empty list.
+     */
+    public List<Integer> getAllPostedByIds() {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        List<Integer> postedByIds = new ArrayList<>();
+        try {
+            String sql = "SELECT DISTINCT posted_by FROM message";
+            preparedStatement = connection.prepareStatement(sql);
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                postedByIds.add(rs.getInt(1));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting posted_by ids: " + e.getMessage());
+        } finally {
+            // close resources in reverse
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return postedByIds;
+    }
+
+    // ---------------------------------------------------------------------------------------------------- 
+    // STREAMING 
+
+    /**
+     * Writes every message as a JSON array straight from the ResultSet, without building Message objects or a List.
+     * Produces the same JSON as serialising getAllMessages().
+     * @param generator where the array is written, e.g. bound to the HTTP response stream.
+     * @throws IOException if writing fails, e.g. the client went away, or the query fails; the array is left
+     *         unfinished then, so the caller can abort the response instead of sending a shorter list.
+     */
+    public void writeAllMessages(JsonGenerator generator) throws IOException {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        try {
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message";
+            preparedStatement = connection.prepareStatement(sql);
+            writeMessages(preparedStatement, generator);
+        } catch (SQLException e) {
+            System.out.println("Error streaming all messages: " + e.getMessage());
+            throw new IOException("streaming all messages failed", e);
+        } finally {
+            try {
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes every message posted by a user as a JSON array straight from the ResultSet.
+     * Produces the same JSON as serialising getAllMessagesByAccountId(postedBy).
+     * @param postedBy foreign key to account.account_id
+     * @param generator where the array is written.
+     * @throws IOException if writing fails or the query fails, see writeAllMessages.
+     */
+    public void writeAllMessagesByAccountId(int postedBy, JsonGenerator generator) throws IOException {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        try {
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE posted_by = ?";
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, postedBy);
+            writeMessages(preparedStatement, generator);
+        } catch (SQLException e) {
+            System.out.println("Error streaming messages by account: " + e.getMessage());
+            throw new IOException("streaming messages by account failed", e);
+        } finally {
+            try {
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs the query and writes each row as a JSON object, reading columns by index in SELECT order.
+     * If the query fails part way the array is left open: a closed one would pass for the complete list.
+     */
+    private void writeMessages(PreparedStatement preparedStatement, JsonGenerator generator) throws SQLException, IOException {
+        ResultSet rs = null;
+        generator.writeStartArray();
+        try {
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                writeMessageRow(rs, generator);
+            }
+            generator.writeEndArray();
+        } finally {
+            if (rs != null) rs.close();
+        }
+    }
+
+    /**
+     * Writes one message row, columns in the order message_id, posted_by, message_text, time_posted_epoch.
+     */
+    private void writeMessageRow(ResultSet rs, JsonGenerator generator) throws SQLException, IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("message_id", rs.getInt(1));
+        generator.writeNumberField("posted_by", rs.getInt(2));
+        generator.writeStringField("message_text", rs.getString(3));
+        generator.writeNumberField("time_posted_epoch", rs.getLong(4));
+        generator.writeEndObject();
+    }
+
+    // ---------------------------------------------------------------------------------------------------- 
+    // BULK 
+
+    /**
+     * Inserts many messages with one JDBC batch in one transaction. If the batch fails it is rolled back and the
+     * messages are inserted one at a time, so only the bad rows fail.
+     * @param newMessages Message objects with posted_by, message_text and time_posted_epoch, already validated.
+     * @return a list of the same size: the message with its message_id, or null where the insert failed.
+     */
+    public List<Message> createMessages(List<Message> newMessages) {
+        List<Message> created = new ArrayList<>();
+        if (newMessages.isEmpty()) {
+            return created;
+        }
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet generatedKeys = null;
+        boolean batchFailed = false;
+        // inside a unit of work only the batch is undone on failure, not the rest of the outer transaction
+        boolean ownTransaction = !UnitOfWork.isActive();
+        Savepoint savepoint = null;
+        try {
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            } else {
+                savepoint = connection.setSavepoint();
+            }
+            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+            preparedStatement = connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
+            for (Message message : newMessages) {
+                preparedStatement.setInt(1, message.posted_by);
+                preparedStatement.setString(2, message.message_text);
+                preparedStatement.setLong(3, message.time_posted_epoch);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+            // keys come back in the order the rows were added
+            generatedKeys = preparedStatement.getGeneratedKeys();
+            for (Message message : newMessages) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("missing generated key for " + message);
+                }
+                message.message_id = generatedKeys.getInt(1);
+                created.add(message);
+            }
+            if (ownTransaction) connection.commit();
+        } catch (SQLException e) {
+            System.out.println("Error creating messages in a batch, retrying one at a time: " + e.getMessage());
+            batchFailed = true;
+            try {
+                if (ownTransaction) {
+                    connection.rollback();
+                } else if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+            } catch (SQLException rollbackError) {
+                System.out.println("Error rolling back: " + rollbackError.getMessage());
+            }
+        } finally {
+            try {
+                if (generatedKeys != null) generatedKeys.close();
+                if (preparedStatement != null) preparedStatement.close();
+                if (ownTransaction) connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        if (batchFailed) {
+            created.clear();
+            for (Message message : newMessages) {
+                created.add(createMessage(message));
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Writes every message as one JSON object per root value straight from the ResultSet, for NDJSON export.
+     * @param generator where the objects are written, normally with a newline root value separator.
+     * @throws IOException if writing fails, e.g. the client went away.
+     */
+    public void exportAllMessages(JsonGenerator generator) throws IOException {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        try {
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message ORDER BY message_id";
+            preparedStatement = connection.prepareStatement(sql);
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                writeMessageRow(rs, generator);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error exporting messages: " + e.getMessage());
+            throw new IOException("exporting messages failed", e);
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------- 
+    // ARCHIVE 
+
+    /**
+     * Moves up to limit messages posted before the cutoff from the message table into the archive. They are
+     * written to the archive and forced to disk before they are deleted from the table, and a row whose text
+     * changed in between is left in the table, so a crash or a concurrent update never loses a message.
+     * @param cutoffEpoch messages with time_posted_epoch before this are archived.
+     * @param limit max number of messages to move in this call.
+     * @return how many messages were moved; 0 when there is nothing left to archive or archiving is off.
+     */
+    public int archiveMessagesBefore(long cutoffEpoch, int limit) {
+        if (archive == null) {
+            return 0;
+        }
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        List<Message> messages = new ArrayList<>();
+        int moved = 0;
+        try {
+            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message "
+                    + "WHERE time_posted_epoch < ? ORDER BY message_id LIMIT ?";
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setLong(1, cutoffEpoch);
+            preparedStatement.setInt(2, limit);
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+            }
+            rs.close();
+            rs = null;
+            preparedStatement.close();
+            if (messages.isEmpty()) {
+                return 0;
+            }
+            archive.append(messages);
+
+            preparedStatement = connection.prepareStatement("DELETE FROM message WHERE message_id = ? AND message_text = ?");
+            for (Message message : messages) {
+                preparedStatement.setInt(1, message.message_id);
+                preparedStatement.setString(2, message.message_text);
+                preparedStatement.addBatch();
+            }
+            for (int deleted : preparedStatement.executeBatch()) {
+                moved += deleted > 0 ? 1 : 0;
+            }
+        } catch (SQLException | IOException e) {
+            System.out.println("Error archiving messages: " + e.getMessage());
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Inserts an archived message back into the table under its original message_id. The archived copy is
+     * tombstoned, and the restore reported, once the insert has committed, so a rolled back restore loses nothing.
+     * @return true if the message is back in the table.
+     */
+    private boolean restoreArchivedMessage(Message message) {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        try {
+            String sql = "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)";
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, message.message_id);
+            preparedStatement.setInt(2, message.posted_by);
+            preparedStatement.setString(3, message.message_text);
+            preparedStatement.setLong(4, message.time_posted_epoch);
+            preparedStatement.executeUpdate();
+            UnitOfWork.afterCommit(() -> {
+                tombstoneArchived(message.message_id);
+                if (restoreListener != null) {
+                    restoreListener.accept(message);
+                }
+            });
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Error restoring archived message: " + e.getMessage());
+        } finally {
+            try {
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /** Hides the archived copy of a message that was deleted or restored, see UnitOfWork.afterCommit. */
+    private void tombstoneArchived(int id) {
+        try {
+            archive.delete(id);
+        } catch (IOException e) {
+            System.out.println("Error tombstoning archived message " + id + ": " + e.getMessage());
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------------- 
+    // STATS 
+
+    /**
+     * Computes one account's message statistics with a single aggregate query.
+     * @param postedBy foreign key to account.account_id
+     * @return the statistics, all zero / null if the account has no messages; null if the query failed.
+     */
+    public AccountStats getAccountStats(int postedBy) {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        try {
+            String sql = "SELECT COUNT(*), MIN(time_posted_epoch), MAX(time_posted_epoch), COALESCE(SUM(CHAR_LENGTH(message_text)), 0) "
+                    + "FROM message WHERE posted_by = ?";
+            preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, postedBy);
+            rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                return readAccountStats(postedBy, rs, 1);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting account stats: " + e.getMessage());
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the message statistics of every account that has messages, in one grouped query.
+     * @return one entry per posted_by, or an empty list if the query failed.
+     */
+    public List<AccountStats> getAllAccountStats() {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        List<AccountStats> stats = new ArrayList<>();
+        try {
+            String sql = "SELECT posted_by, COUNT(*), MIN(time_posted_epoch), MAX(time_posted_epoch), COALESCE(SUM(CHAR_LENGTH(message_text)), 0) "
+                    + "FROM message GROUP BY posted_by";
+            preparedStatement = connection.prepareStatement(sql);
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                stats.add(readAccountStats(rs.getInt(1), rs, 2));
+            }
+        } catch (SQLException e) {
+            System.out.println("Error getting all account stats: " + e.getMessage());
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        return stats;
+    }
+
+    /** Reads count, min, max and sum starting at the given column. */
+    private AccountStats readAccountStats(int postedBy, ResultSet rs, int column) throws SQLException {
+        long count = rs.getLong(column);
+        long first = rs.getLong(column + 1);
+        Long firstPost = rs.wasNull() ? null : first;
+        long last = rs.getLong(column + 2);
+        Long lastPost = rs.wasNull() ? null : last;
+        return new AccountStats(postedBy, count, firstPost, lastPost, rs.getLong(column + 3));
+    }
+
+    // ---------------------------------------------------------------------------------------------------- 
+    // INDEX 
+
+    /**
+     * Reads every (posted_by, message_id) pair in one ordered scan, for building the in-memory posted_by index.
+     * @return message_ids per posted_by, each array sorted ascending; null if the query failed.
+     */
+    public Map<Integer, int[]> getMessageIdsByPostedBy() {
+        Connection connection = UnitOfWork.connection();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        Map<Integer, int[]> idsByPostedBy = new HashMap<>();
+        try {
+            String sql = "SELECT posted_by, message_id FROM message ORDER BY posted_by, message_id";
+            preparedStatement = connection.prepareStatement(sql);
+            rs = preparedStatement.executeQuery();
+            int currentPostedBy = 0;
+            int[] ids = null;
+            int size = 0;
+            while (rs.next()) {
+                int postedBy = rs.getInt(1);
+                if (ids == null || postedBy != currentPostedBy) {
+                    if (ids != null) idsByPostedBy.put(currentPostedBy, Arrays.copyOf(ids, size));
+                    currentPostedBy = postedBy;
+                    ids = new int[8];
+                    size = 0;
+                }
+                if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+                ids[size++] = rs.getInt(2);
+            }
+            if (ids != null) idsByPostedBy.put(currentPostedBy, Arrays.copyOf(ids, size));
+            return idsByPostedBy;
+        } catch (SQLException e) {
+            System.out.println("Error reading message ids by account: " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fetches many messages by id with one IN query per ID_BATCH_SIZE ids. Ids not in the table are looked up in
+     * the archive, like getMessageById.
+     * @param ids message_ids, any order.
+     * @return the messages that exist, in message_id order; null if a query failed, rather than a list that is
+     *         silently missing a batch.
+     */
+    public List<Message> getMessagesByIds(int[] ids) {
+        List<Message> messages = new ArrayList<>();
+        Connection connection = UnitOfWork.connection();
+        for (int from = 0; from < ids.length; from += ID_BATCH_SIZE) {
+            int count = Math.min(ID_BATCH_SIZE, ids.length - from);
+            PreparedStatement preparedStatement = null;
+            ResultSet rs = null;
+            try {
+                String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id IN ("
+                        + AccountDAO.placeholders(count) + ") ORDER BY message_id";
+                preparedStatement = connection.prepareStatement(sql);
+                for (int i = 0; i < count; i++) {
+                    preparedStatement.setInt(i + 1, ids[from + i]);
+                }
+                rs = preparedStatement.executeQuery();
+                while (rs.next()) {
+                    messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+                }
+            } catch (SQLException e) {
+                System.out.println("Error getting messages by id: " + e.getMessage());
+                return null;
+            } finally {
+                try {
+                    if (rs != null) rs.close();
+                    if (preparedStatement != null) preparedStatement.close();
+                } catch (SQLException e) {
+                    System.out.println("Error closing resources: " + e.getMessage());
+                }
+            }
+        }
+        if (archive != null && messages.size() < ids.length) {
+            Set<Integer> inTable = new HashSet<>();
+            for (Message message : messages) {
+                inTable.add(message.message_id);
+            }
+            for (int id : ids) {
+                Message archived = inTable.contains(id) ? null : archive.get(id);
+                if (archived != null) {
+                    messages.add(archived);
+                    inTable.add(id);
+                }
+            }
+        }
+        // batches are each ordered, the caller's ids may not have been
+        messages.sort((a, b) -> Integer.compare(a.message_id, b.message_id));
+        return messages;
+    }
+
+    /**
+     * Writes the messages with these ids as JSON objects straight from the ResultSet, one IN query per ID_BATCH_SIZE
+     * ids, in message_id order. Ids not in the table are looked up in the archive and written in their place, like
+     * getMessagesByIds, so only archived messages are built as objects.
+     * @param ids message_ids, any order, repeats allowed.
+     * @param generator where the objects are written; the caller writes the enclosing array.
+     * @throws IOException if writing fails or a query fails, see writeAllMessages.
+     */
+    public void writeMessagesByIds(int[] ids, JsonGenerator generator) throws IOException {
+        int[] sorted = IntStream.of(ids).sorted().distinct().toArray();
+        Connection connection = UnitOfWork.connection();
+        for (int from = 0; from < sorted.length; from += ID_BATCH_SIZE) {
+            int to = Math.min(sorted.length, from + ID_BATCH_SIZE);
+            PreparedStatement preparedStatement = null;
+            ResultSet rs = null;
+            try {
+                String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id IN ("
+                        + AccountDAO.placeholders(to - from) + ") ORDER BY message_id";
+                preparedStatement = connection.prepareStatement(sql);
+                for (int i = from; i < to; i++) {
+                    preparedStatement.setInt(i - from + 1, sorted[i]);
+                }
+                rs = preparedStatement.executeQuery();
+                int next = from;
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    // the ids before this row are not in the table
+                    next = writeArchivedBefore(sorted, next, to, id, generator) + 1;
+                    writeMessageRow(rs, generator);
+                }
+                writeArchivedBefore(sorted, next, to, Long.MAX_VALUE, generator);
+            } catch (SQLException e) {
+                System.out.println("Error streaming messages by id: " + e.getMessage());
+                throw new IOException("streaming messages by id failed", e);
+            } finally {
+                try {
+                    if (rs != null) rs.close();
+                    if (preparedStatement != null) preparedStatement.close();
+                } catch (SQLException e) {
+                    System.out.println("Error closing resources: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the archived copies of sorted[from, to) below the limit, if there is an archive.
+     * @return the index of the first id at or above the limit.
+     */
+    private int writeArchivedBefore(int[] sorted, int from, int to, long limit, JsonGenerator generator) throws IOException {
+        for (; from < to && sorted[from] < limit; from++) {
+            Message archived = archive != null ? archive.get(sorted[from]) : null;
+            if (archived != null) {
+                MessageRepositorySupport.writeMessage(archived, generator);
+            }
+        }
+        return from;
+    }
+
     // ---------------------------------------------------------------------------------------------------- 
     // ACCOUNT 
 
@@ -256,7 +902,7 @@ public class MessageDAO {
      * @return a list containing all messages posted by a particular user, or an empty list if no messages exist for that user
      */
     public List<Message> getAllMessagesByAccountId(int postedBy) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = UnitOfWork.connection();
         PreparedStatement preparedStatement = null;
         ResultSet rs = null;
         List<Message> messages = new ArrayList<>();
@@ -0,0 +1,84 @@
+package DAO;
+
+import Model.AccountStats;
+import Model.Message;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage of messages, as used by MessageService. MessageDAO keeps them in the H2 message table; MmapMessageLog
+ * keeps them in an append-only memory-mapped file; InMemoryMessageRepository keeps them in memory only. The engine
+ * is chosen at startup with storage.engine (h2, mmap or memory).
+ *
+ * Implementations return null / false / empty lists on failure instead of throwing, like the original DAO.
+ */
+public interface MessageRepository {
+
+    /**
+     * @param newMessage posted_by, message_text and time_posted_epoch, already validated.
+     * @return the message with its new message_id, or null if it could not be stored.
+     */
+    Message createMessage(Message newMessage);
+
+    /**
+     * @param newMessages messages already validated.
+     * @return a list of the same size: each message with its message_id, or null where it could not be stored.
+     */
+    List<Message> createMessages(List<Message> newMessages);
+
+    /** @return true if the account has at least one stored message. */
+    boolean postedByExistingUser(int postedBy);
+
+    List<Message> getAllMessages();
+
+    /** Writes the same JSON array as serialising getAllMessages(), without building the list. */
+    void writeAllMessages(JsonGenerator generator) throws IOException;
+
+    /** @return the message, or null if there is none with this id. */
+    Message getMessageById(int id);
+
+    /** @return the message as it was before it was deleted, or null if there was none. */
+    Message deleteMessageById(int id);
+
+    /**
+     * @param newMessage message_id and the new message_text.
+     * @return newMessage if the message existed and was updated, otherwise null.
+     */
+    Message updateMessageById(Message newMessage);
+
+    /** @return up to limit messages, newest time_posted_epoch first. */
+    List<Message> getRecentMessages(int limit);
+
+    /** @return every posted_by that has at least one message. */
+    List<Integer> getAllPostedByIds();
+
+    List<Message> getAllMessagesByAccountId(int postedBy);
+
+    /** Writes the same JSON array as serialising getAllMessagesByAccountId(postedBy), without building the list. */
+    void writeAllMessagesByAccountId(int postedBy, JsonGenerator generator) throws IOException;
+
+    /** @return message_ids per posted_by, each array sorted ascending; null if they could not be read. */
+    Map<Integer, int[]> getMessageIdsByPostedBy();
+
+    /** @return the messages with these ids that exist, in message_id order; null if they could not be read. */
+    List<Message> getMessagesByIds(int[] ids);
+
+    /**
+     * Writes the same JSON objects as serialising getMessagesByIds(ids), one after another, without building the
+     * list; the caller writes the enclosing array.
+     */
+    void writeMessagesByIds(int[] ids, JsonGenerator generator) throws IOException;
+
+    /** Writes every message as one root-level JSON object, in message_id order, for NDJSON export. */
+    void exportAllMessages(JsonGenerator generator) throws IOException;
+
+    /** @return the account's message statistics, zeros if it has no messages, null if they could not be read. */
+    AccountStats getAccountStats(int postedBy);
+
+    /** @return statistics for every account that has messages. */
+    List<AccountStats> getAllAccountStats();
+}
@@ -0,0 +1,47 @@
+package DAO;
+
+import Model.AccountStats;
+import Model.Message;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+
+/** What the engines that do not run SQL (MmapMessageLog, InMemoryMessageRepository) compute the same way. */
+final class MessageRepositorySupport {
+
+    private MessageRepositorySupport() {
+    }
+
+    /** @return the statistics GET /accounts/{account_id}/stats reports for these messages. */
+    static AccountStats stats(int postedBy, List<Message> messages) {
+        Long first = null;
+        Long last = null;
+        long characters = 0;
+        for (Message message : messages) {
+            first = first == null ? message.time_posted_epoch : Math.min(first, message.time_posted_epoch);
+            last = last == null ? message.time_posted_epoch : Math.max(last, message.time_posted_epoch);
+            characters += message.message_text.length();
+        }
+        return new AccountStats(postedBy, messages.size(), first, last, characters);
+    }
+
+    static void writeArray(List<Message> messages, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        for (Message message : messages) {
+            writeMessage(message, generator);
+        }
+        generator.writeEndArray();
+    }
+
+    /** Same fields, in the same order, as MessageDAO writes them. */
+    static void writeMessage(Message message, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("message_id", message.message_id);
+        generator.writeNumberField("posted_by", message.posted_by);
+        generator.writeStringField("message_text", message.message_text);
+        generator.writeNumberField("time_posted_epoch", message.time_posted_epoch);
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,596 @@
+package DAO;
+
+import Model.AccountStats;
+import Model.Message;
+import Util.OffHeapIntLongMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Message storage engine that keeps every message in one append-only, memory-mapped file instead of the H2 message
+ * table (storage.engine=mmap). Accounts stay in H2.
+ *
+ * Record layout, little work to decode and no JDBC on the read path:
+ *
+ *  int length, byte type (PUT or TOMBSTONE), int message_id, int posted_by, long time_posted_epoch, int crc32,
+ *  UTF-8 message_text (length - HEADER_BYTES bytes)
+ *
+ * A create appends a PUT. An update appends a new PUT for the same id, which supersedes the old record; a delete
+ * appends a TOMBSTONE. Nothing is overwritten, so the superseded records are garbage until compact() rewrites the
+ * file with only the live ones. The length field of a record is written last, so a crash mid-append leaves a zero
+ * length that recovery treats as the end of the log; a record that fails its checksum is also treated as the end.
+ *
+ * In memory there is an off-heap message_id to offset index and, per posted_by, the offsets of its records (checked
+ * against the index when read, so superseded ones are skipped). Both are rebuilt by scanning the log on open.
+ * Offsets are ints, so one log holds up to 2 GB.
+ */
+public class MmapMessageLog implements MessageRepository {
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final int HEADER_BYTES = 4 + 1 + 4 + 4 + 8 + 4;
+    private static final long NO_OFFSET = -1;
+    private static final Map<String, MmapMessageLog> OPEN = new ConcurrentHashMap<>();
+
+    /** Offsets of one poster's records, possibly superseded, plus how many of its messages are live. */
+    private static final class PosterRecords {
+        long[] offsets = new long[4];
+        int size;
+        int live;
+
+        void add(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+    }
+
+    private final File file;
+    private final boolean syncWrites;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private RandomAccessFile raf;
+    private MappedByteBuffer map;
+    private int end;
+    private int liveBytes;
+    private int maxId;
+    private OffHeapIntLongMap index;
+    private Map<Integer, PosterRecords> posters;
+
+    /**
+     * @param path the log file, created if missing.
+     * @return the log for this file, opened on first use; one instance per file so there is a single writer.
+     */
+    public static MmapMessageLog forFile(String path, boolean syncWrites) {
+        String key = new File(path).getAbsolutePath();
+        return OPEN.computeIfAbsent(key, absolutePath -> {
+            try {
+                return open(new File(absolutePath), syncWrites);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not open message log " + absolutePath, e);
+            }
+        });
+    }
+
+    /**
+     * Opens a log that is not shared through forFile, e.g. to check what a restart would recover.
+     * The caller must make sure nothing else writes to the same file.
+     * @param syncWrites force every write to disk before returning, instead of leaving it to the OS.
+     */
+    public static MmapMessageLog open(File file, boolean syncWrites) throws IOException {
+        return new MmapMessageLog(file, syncWrites);
+    }
+
+    private MmapMessageLog(File file, boolean syncWrites) throws IOException {
+        this.file = file;
+        this.syncWrites = syncWrites;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("could not create " + parent);
+        }
+        // a compaction that did not finish left its copy behind; the original is still complete
+        Files.deleteIfExists(compactionFile().toPath());
+        mapFile();
+        recover();
+    }
+
+    private File compactionFile() {
+        return new File(file.getPath() + ".compact");
+    }
+
+    private void mapFile() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        if (raf.length() == 0) {
+            raf.setLength(1 << 20);
+        }
+        map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+    }
+
+    /** Rebuilds the index and poster lists by scanning the log, and cuts off a torn record at the end. */
+    private void recover() {
+        index = new OffHeapIntLongMap(1024);
+        posters = new HashMap<>();
+        liveBytes = 0;
+        maxId = 0;
+        int position = 0;
+        boolean torn = false;
+        while (position + HEADER_BYTES <= map.capacity()) {
+            int length = map.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < HEADER_BYTES || position + length > map.capacity() || crc(position, length) != map.getInt(position + 21)) {
+                torn = true;
+                break;
+            }
+            apply(position, length);
+            position += length;
+        }
+        end = position;
+        if (torn) {
+            System.out.println("Truncating torn record at " + end + " in message log " + file);
+            for (int i = end; i < map.capacity(); i++) {
+                map.put(i, (byte) 0);
+            }
+        }
+        System.out.println("Opened message log " + file + ": " + index.size() + " messages, " + end + " bytes");
+    }
+
+    /** Updates the index and poster lists for the record at this offset. */
+    private void apply(int position, int length) {
+        byte type = map.get(position + 4);
+        int id = map.getInt(position + 5);
+        int postedBy = map.getInt(position + 9);
+        maxId = Math.max(maxId, id);
+        long previous = index.get(id, NO_OFFSET);
+        if (previous != NO_OFFSET) {
+            liveBytes -= map.getInt((int) previous);
+        }
+        if (type == PUT) {
+            PosterRecords records = posters.computeIfAbsent(postedBy, p -> new PosterRecords());
+            index.put(id, position);
+            liveBytes += length;
+            records.add(position);
+            if (previous == NO_OFFSET) {
+                records.live++;
+            }
+        } else if (previous != NO_OFFSET) {
+            index.remove(id);
+            posters.get(postedBy).live--;
+        }
+    }
+
+    /**
+     * @return a TOMBSTONE record for an id that has no live record, laid out and checksummed like append writes one.
+     *         Compaction keeps one for the highest id ever used, so recovery does not hand out a deleted id again.
+     */
+    private static ByteBuffer highWaterMark(int id) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES);
+        record.putInt(0, HEADER_BYTES);
+        record.put(4, TOMBSTONE);
+        record.putInt(5, id);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, 21 - 4);
+        record.putInt(21, (int) crc.getValue());
+        return record;
+    }
+
+    private int crc(int position, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer record = map.duplicate();
+        record.limit(position + 21).position(position + 4);
+        crc.update(record);
+        record.limit(position + length).position(position + HEADER_BYTES);
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    /** Appends one record and applies it; caller holds the write lock. */
+    private int append(byte type, int id, int postedBy, long epoch, String text) {
+        byte[] textBytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_BYTES + textBytes.length;
+        ensureCapacity(length);
+        int position = end;
+        map.put(position + 4, type);
+        map.putInt(position + 5, id);
+        map.putInt(position + 9, postedBy);
+        map.putLong(position + 13, epoch);
+        ByteBuffer body = map.duplicate();
+        body.position(position + HEADER_BYTES);
+        body.put(textBytes);
+        map.putInt(position + 21, crc(position, length));
+        map.putInt(position, length);
+        if (syncWrites) {
+            map.force();
+        }
+        apply(position, length);
+        end = position + length;
+        return position;
+    }
+
+    private void ensureCapacity(int length) {
+        // keep room for the zero length that marks the end
+        long needed = (long) end + length + 4;
+        if (needed <= map.capacity()) {
+            return;
+        }
+        long capacity = map.capacity();
+        while (capacity < needed) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("message log " + file + " is full");
+        }
+        try {
+            map.force();
+            raf.setLength(capacity);
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not grow message log " + file, e);
+        }
+    }
+
+    private Message read(long offset) {
+        int position = (int) offset;
+        int length = map.getInt(position);
+        byte[] text = new byte[length - HEADER_BYTES];
+        ByteBuffer body = map.duplicate();
+        body.position(position + HEADER_BYTES);
+        body.get(text);
+        return new Message(map.getInt(position + 5), map.getInt(position + 9),
+                new String(text, StandardCharsets.UTF_8), map.getLong(position + 13));
+    }
+
+    /** @return the live message with this id, or null; caller holds a lock. */
+    private Message readLive(int id) {
+        long offset = index.get(id, NO_OFFSET);
+        return offset == NO_OFFSET ? null : read(offset);
+    }
+
+    /** @return the poster's live messages in message_id order; caller holds a lock. */
+    private List<Message> readPoster(int postedBy) {
+        List<Message> messages = new ArrayList<>();
+        PosterRecords records = posters.get(postedBy);
+        if (records == null) {
+            return messages;
+        }
+        for (int i = 0; i < records.size; i++) {
+            long offset = records.offsets[i];
+            int id = map.getInt((int) offset + 5);
+            // skip records that were superseded by an update or a delete
+            if (index.get(id, NO_OFFSET) == offset) {
+                messages.add(read(offset));
+            }
+        }
+        messages.sort((a, b) -> Integer.compare(a.message_id, b.message_id));
+        return messages;
+    }
+
+    /** @return every live message in message_id order; caller holds a lock. */
+    private List<Message> readAll() {
+        List<Message> messages = new ArrayList<>(index.size());
+        for (int id = 1; id <= maxId; id++) {
+            Message message = readLive(id);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+    // MessageRepository
+
+    public Message createMessage(Message newMessage) {
+        lock.writeLock().lock();
+        try {
+            newMessage.message_id = maxId + 1;
+            append(PUT, newMessage.message_id, newMessage.posted_by, newMessage.time_posted_epoch, newMessage.message_text);
+            return newMessage;
+        } catch (RuntimeException e) {
+            System.out.println("Error creating new message: " + e.getMessage());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Message> createMessages(List<Message> newMessages) {
+        List<Message> created = new ArrayList<>();
+        for (Message message : newMessages) {
+            created.add(createMessage(message));
+        }
+        return created;
+    }
+
+    public boolean postedByExistingUser(int postedBy) {
+        lock.readLock().lock();
+        try {
+            PosterRecords records = posters.get(postedBy);
+            return records != null && records.live > 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Message> getAllMessages() {
+        lock.readLock().lock();
+        try {
+            return readAll();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void writeAllMessages(JsonGenerator generator) throws IOException {
+        MessageRepositorySupport.writeArray(getAllMessages(), generator);
+    }
+
+    public Message getMessageById(int id) {
+        lock.readLock().lock();
+        try {
+            return readLive(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Message deleteMessageById(int id) {
+        lock.writeLock().lock();
+        try {
+            Message message = readLive(id);
+            if (message != null) {
+                append(TOMBSTONE, id, message.posted_by, message.time_posted_epoch, null);
+            }
+            return message;
+        } catch (RuntimeException e) {
+            System.out.println("Error deleting message: " + e.getMessage());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Message updateMessageById(Message newMessage) {
+        lock.writeLock().lock();
+        try {
+            Message message = readLive(newMessage.message_id);
+            if (message == null) {
+                return null;
+            }
+            append(PUT, message.message_id, message.posted_by, message.time_posted_epoch, newMessage.message_text);
+            return newMessage;
+        } catch (RuntimeException e) {
+            System.out.println("Error updating message: " + e.getMessage());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Message> getRecentMessages(int limit) {
+        List<Message> messages = getAllMessages();
+        messages.sort((a, b) -> a.time_posted_epoch != b.time_posted_epoch
+                ? Long.compare(b.time_posted_epoch, a.time_posted_epoch)
+                : Integer.compare(b.message_id, a.message_id));
+        return new ArrayList<>(messages.subList(0, Math.min(limit, messages.size())));
+    }
+
+    public List<Integer> getAllPostedByIds() {
+        lock.readLock().lock();
+        try {
+            List<Integer> postedByIds = new ArrayList<>();
+            for (Map.Entry<Integer, PosterRecords> entry : posters.entrySet()) {
+                if (entry.getValue().live > 0) {
+                    postedByIds.add(entry.getKey());
+                }
+            }
+            return postedByIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Message> getAllMessagesByAccountId(int postedBy) {
+        lock.readLock().lock();
+        try {
+            return readPoster(postedBy);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void writeAllMessagesByAccountId(int postedBy, JsonGenerator generator) throws IOException {
+        MessageRepositorySupport.writeArray(getAllMessagesByAccountId(postedBy), generator);
+    }
+
+    public Map<Integer, int[]> getMessageIdsByPostedBy() {
+        lock.readLock().lock();
+        try {
+            Map<Integer, int[]> idsByPostedBy = new HashMap<>();
+            for (int postedBy : posters.keySet()) {
+                List<Message> messages = readPoster(postedBy);
+                if (messages.isEmpty()) {
+                    continue;
+                }
+                int[] ids = new int[messages.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = messages.get(i).message_id;
+                }
+                idsByPostedBy.put(postedBy, ids);
+            }
+            return idsByPostedBy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Message> getMessagesByIds(int[] ids) {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>();
+            for (int id : ids) {
+                Message message = readLive(id);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            messages.sort((a, b) -> Integer.compare(a.message_id, b.message_id));
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void writeMessagesByIds(int[] ids, JsonGenerator generator) throws IOException {
+        for (Message message : getMessagesByIds(ids)) {
+            MessageRepositorySupport.writeMessage(message, generator);
+        }
+    }
+
+    public void exportAllMessages(JsonGenerator generator) throws IOException {
+        for (Message message : getAllMessages()) {
+            MessageRepositorySupport.writeMessage(message, generator);
+        }
+    }
+
+    public AccountStats getAccountStats(int postedBy) {
+        return MessageRepositorySupport.stats(postedBy, getAllMessagesByAccountId(postedBy));
+    }
+
+    public List<AccountStats> getAllAccountStats() {
+        List<AccountStats> stats = new ArrayList<>();
+        for (int postedBy : getAllPostedByIds()) {
+            stats.add(getAccountStats(postedBy));
+        }
+        return stats;
+    }
+
+    // ----------------------------------------------------------------------------------------------------
+    // MAINTENANCE
+
+    /** @return true if the log holds no live messages. */
+    public boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return index.size() == 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends messages under their existing message_id, e.g. to seed a new log from the H2 message table.
+     */
+    public void importMessages(List<Message> messages) {
+        lock.writeLock().lock();
+        try {
+            for (Message message : messages) {
+                append(PUT, message.message_id, message.posted_by, message.time_posted_epoch, message.message_text);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return the fraction of the written log taken by superseded records and tombstones. */
+    public double garbageRatio() {
+        lock.readLock().lock();
+        try {
+            return end == 0 ? 0 : 1.0 - (double) liveBytes / end;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @return bytes written to the log, live and garbage. */
+    public int sizeBytes() {
+        lock.readLock().lock();
+        try {
+            return end;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Compacts if at least the given fraction of the log is garbage. */
+    public void compactIfWorthIt(double minGarbageRatio) {
+        if (garbageRatio() >= minGarbageRatio) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the live records, in offset order, into a new file that atomically replaces the
+     * old one. If the highest id was deleted its tombstone is kept, as the last record, so ids stay unique. Writers wait while it runs. If the process dies part way the old file is untouched and the partial
+     * copy is deleted on the next open.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            int before = end;
+            long[] offsets = new long[index.size()];
+            int[] count = new int[1];
+            index.forEach((id, offset) -> offsets[count[0]++] = offset);
+            Arrays.sort(offsets);
+
+            File copy = compactionFile();
+            try (RandomAccessFile out = new RandomAccessFile(copy, "rw")) {
+                FileChannel channel = out.getChannel();
+                for (long offset : offsets) {
+                    ByteBuffer record = map.duplicate();
+                    record.limit((int) offset + map.getInt((int) offset)).position((int) offset);
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                }
+                if (maxId > 0 && index.get(maxId, NO_OFFSET) == NO_OFFSET) {
+                    ByteBuffer record = highWaterMark(maxId);
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                }
+                // leave room to append and a zero length after the last record
+                out.setLength(Math.max(1 << 20, Integer.highestOneBit(liveBytes + HEADER_BYTES) * 2L));
+                channel.force(true);
+            }
+            map.force();
+            raf.close();
+            Files.move(copy.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            mapFile();
+            recover();
+            System.out.println("Compacted message log " + file + " from " + before + " to " + end + " bytes");
+        } catch (IOException e) {
+            System.out.println("Error compacting message log: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Forces everything written so far to disk. */
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            map.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
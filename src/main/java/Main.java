@@ -1,4 +1,9 @@
 import Controller.SocialMediaController;
+import Util.Config;
+import Util.SchemaMigrator;
+import Util.ServerConfig;
+import Util.ShutdownCoordinator;
+import Util.StartupTimer;
 import io.javalin.Javalin;
 
 /**
@@ -7,8 +12,22 @@ import io.javalin.Javalin;
  */
 public class Main {
     public static void main(String[] args) {
-        SocialMediaController controller = new SocialMediaController();
-        Javalin app = controller.startAPI();
-        app.start(8080);
+        StartupTimer timer = new StartupTimer();
+        // applies only the schema migrations this database has not seen, each timed as its own phase
+        if (Config.getBoolean("db.migrate.enabled", true)) {
+            SchemaMigrator.migrate(timer);
+        }
+        SocialMediaController controller = timer.time("create controller", SocialMediaController::new);
+        Javalin app = timer.time("create routes", controller::startAPI);
+        timer.time("start server", () -> app.start(ServerConfig.port()));
+        // on SIGTERM/Ctrl-C: stop accepting, drain in-flight requests, then close the database cleanly
+        ShutdownCoordinator shutdown = controller.shutdownSequence(app);
+        Runtime.getRuntime().addShutdownHook(new Thread(shutdown::run, "graceful-shutdown"));
+        // GET /ready answers 503 until the caches and JIT are warm
+        if (Config.getBoolean("warmup.enabled", true)) {
+            controller.warmUp(app.port(), timer);
+        } else {
+            controller.markReady(timer);
+        }
     }
 }
@@ -0,0 +1,111 @@
+package Model;
+
+import java.util.Objects;
+
+/**
+ * This is a class that models the message statistics of one account, as returned by GET /accounts/{account_id}/stats.
+ */
+public class AccountStats {
+    /**
+     * The account these statistics are for.
+     */
+    public int account_id;
+    /**
+     * How many messages the account has posted and not deleted.
+     */
+    public long message_count;
+    /**
+     * Smallest time_posted_epoch of those messages, null if there are none.
+     */
+    public Long first_post_epoch;
+    /**
+     * Largest time_posted_epoch of those messages, null if there are none.
+     */
+    public Long last_post_epoch;
+    /**
+     * Sum of the lengths of their message_text.
+     */
+    public long total_characters;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public AccountStats() {
+    }
+
+    public AccountStats(int account_id, long message_count, Long first_post_epoch, Long last_post_epoch, long total_characters) {
+        this.account_id = account_id;
+        this.message_count = message_count;
+        this.first_post_epoch = first_post_epoch;
+        this.last_post_epoch = last_post_epoch;
+        this.total_characters = total_characters;
+    }
+
+    public int getAccount_id() {
+        return account_id;
+    }
+
+    public void setAccount_id(int account_id) {
+        this.account_id = account_id;
+    }
+
+    public long getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(long message_count) {
+        this.message_count = message_count;
+    }
+
+    public Long getFirst_post_epoch() {
+        return first_post_epoch;
+    }
+
+    public void setFirst_post_epoch(Long first_post_epoch) {
+        this.first_post_epoch = first_post_epoch;
+    }
+
+    public Long getLast_post_epoch() {
+        return last_post_epoch;
+    }
+
+    public void setLast_post_epoch(Long last_post_epoch) {
+        this.last_post_epoch = last_post_epoch;
+    }
+
+    public long getTotal_characters() {
+        return total_characters;
+    }
+
+    public void setTotal_characters(long total_characters) {
+        this.total_characters = total_characters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AccountStats that = (AccountStats) o;
+        return account_id == that.account_id
+                && message_count == that.message_count
+                && total_characters == that.total_characters
+                && Objects.equals(first_post_epoch, that.first_post_epoch)
+                && Objects.equals(last_post_epoch, that.last_post_epoch);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(account_id, message_count, first_post_epoch, last_post_epoch, total_characters);
+    }
+
+    @Override
+    public String toString() {
+        return "AccountStats{" +
+                "account_id=" + account_id +
+                ", message_count=" + message_count +
+                ", first_post_epoch=" + first_post_epoch +
+                ", last_post_epoch=" + last_post_epoch +
+                ", total_characters=" + total_characters +
+                '}';
+    }
+}
@@ -0,0 +1,92 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one record of a bulk import (POST /accounts/import or
+ * POST /messages/import). One is written back per input line, in input order.
+ */
+public class ImportResult {
+    /** the record was stored */
+    public static final String CREATED = "created";
+    /** the record was not stored, see error */
+    public static final String REJECTED = "rejected";
+
+    /**
+     * 1-based line number of the record in the request body.
+     */
+    public long line;
+    /**
+     * CREATED or REJECTED.
+     */
+    public String status;
+    /**
+     * The generated account_id or message_id if the record was created, otherwise null.
+     */
+    public Integer id;
+    /**
+     * Why the record was rejected, otherwise null.
+     */
+    public String error;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public ImportResult() {
+    }
+
+    public ImportResult(long line, String status, Integer id, String error) {
+        this.line = line;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    public static ImportResult created(int id) {
+        return new ImportResult(0, CREATED, id, null);
+    }
+
+    public static ImportResult rejected(String error) {
+        return new ImportResult(0, REJECTED, null, error);
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "line=" + line +
+                ", status='" + status + '\'' +
+                ", id=" + id +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,70 @@
+package Model;
+
+/**
+ * This is a class that models a single entry of the message change log: one create, update or delete of a Message.
+ * Consumers read these in offset order to follow the message table without re-reading all of it.
+ */
+public class MessageChange {
+    /** the kinds of mutation that are published to the change log */
+    public static final String CREATE = "CREATE";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+
+    /**
+     * Position of this change in the log. Offsets start at 1 and only ever increase.
+     */
+    public long offset;
+    /**
+     * One of CREATE, UPDATE or DELETE.
+     */
+    public String type;
+    /**
+     * The message after the change (for DELETE, the message as it was before it was removed).
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public MessageChange() {
+    }
+
+    public MessageChange(long offset, String type, Message message) {
+        this.offset = offset;
+        this.type = type;
+        this.message = message;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChange{" +
+                "offset=" + offset +
+                ", type='" + type + '\'' +
+                ", message=" + message +
+                '}';
+    }
+}
@@ -0,0 +1,121 @@
+package Model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * An immutable message, for the caches and indexes that share one instance between threads. Message stays the
+ * mutable type the API binds and the DAOs fill in; convert at the boundary with of() and toMessage(). Serialises to
+ * the same JSON as Message.
+ *
+ * With compact text the message_text is kept as its UTF-8 bytes instead of a String, which saves the String object
+ * (about 24 bytes) per message, and half the text for non-Latin-1 text that the JVM would otherwise store as UTF-16.
+ * The price is decoding the text on every getMessage_text().
+ */
+@JsonPropertyOrder({"message_id", "posted_by", "message_text", "time_posted_epoch"})
+public final class MessageRecord {
+    private final int message_id;
+    private final int posted_by;
+    // a String, or the UTF-8 bytes of one with compact text
+    private final Object message_text;
+    private final long time_posted_epoch;
+
+    @JsonCreator
+    public MessageRecord(@JsonProperty("message_id") int message_id, @JsonProperty("posted_by") int posted_by,
+            @JsonProperty("message_text") String message_text, @JsonProperty("time_posted_epoch") long time_posted_epoch) {
+        this(message_id, posted_by, (Object) message_text, time_posted_epoch);
+    }
+
+    private MessageRecord(int message_id, int posted_by, Object message_text, long time_posted_epoch) {
+        this.message_id = message_id;
+        this.posted_by = posted_by;
+        this.message_text = message_text;
+        this.time_posted_epoch = time_posted_epoch;
+    }
+
+    /** @return a record with the message's current values; later changes to the message do not affect it. */
+    public static MessageRecord of(Message message) {
+        return of(message, false);
+    }
+
+    /**
+     * @param compactText keep the text as UTF-8 bytes, see the class comment.
+     * @return a record with the message's current values; later changes to the message do not affect it.
+     */
+    public static MessageRecord of(Message message, boolean compactText) {
+        return new MessageRecord(message.message_id, message.posted_by, text(message.message_text, compactText), message.time_posted_epoch);
+    }
+
+    private static Object text(String text, boolean compact) {
+        return compact && text != null ? text.getBytes(StandardCharsets.UTF_8) : text;
+    }
+
+    /** @return a new Message with these values, for callers that may change it. */
+    public Message toMessage() {
+        return new Message(message_id, posted_by, getMessage_text(), time_posted_epoch);
+    }
+
+    /** @return a record of the same message with another text, stored the same way as this one's. */
+    public MessageRecord withMessageText(String messageText) {
+        return new MessageRecord(message_id, posted_by, text(messageText, isCompact()), time_posted_epoch);
+    }
+
+    public int getMessage_id() {
+        return message_id;
+    }
+
+    public int getPosted_by() {
+        return posted_by;
+    }
+
+    public String getMessage_text() {
+        return message_text instanceof byte[] ? new String((byte[]) message_text, StandardCharsets.UTF_8) : (String) message_text;
+    }
+
+    public long getTime_posted_epoch() {
+        return time_posted_epoch;
+    }
+
+    /** @return true if the text is kept as UTF-8 bytes. */
+    @JsonIgnore
+    public boolean isCompact() {
+        return message_text instanceof byte[];
+    }
+
+    /** Records are equal when their values are, however the text is stored. */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MessageRecord that = (MessageRecord) o;
+        if (message_id != that.message_id || posted_by != that.posted_by || time_posted_epoch != that.time_posted_epoch) {
+            return false;
+        }
+        if (message_text instanceof byte[] && that.message_text instanceof byte[]) {
+            return Arrays.equals((byte[]) message_text, (byte[]) that.message_text);
+        }
+        String text = getMessage_text();
+        return text == null ? that.message_text == null : text.equals(that.getMessage_text());
+    }
+
+    @Override
+    public int hashCode() {
+        String text = getMessage_text();
+        return 31 * (31 * (31 * message_id + posted_by) + (text == null ? 0 : text.hashCode())) + Long.hashCode(time_posted_epoch);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageRecord{" +
+                "message_id=" + message_id +
+                ", posted_by=" + posted_by +
+                ", message_text='" + getMessage_text() + '\'' +
+                ", time_posted_epoch=" + time_posted_epoch +
+                '}';
+    }
+}
@@ -1,7 +1,20 @@
 package Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import DAO.AccountDAO;
+import DAO.AccountRepository;
+import DAO.InMemoryAccountRepository;
 import Model.Account;
+import Model.ImportResult;
+import Util.Config;
+import Util.UnitOfWork;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * The purpose of a Service class is to contain "business logic" that sits between the web layer (controller) and
@@ -14,17 +27,27 @@ import Model.Account;
  * readable and maintainable in the long run!
  */
 public class AccountService {
-    public AccountDAO accountDAO;
+    public AccountRepository accountDAO;
 
+    /** Accounts live in H2, or only in memory with storage.engine=memory. */
     public AccountService() {
-        accountDAO = new AccountDAO();
+        if (Config.getString("storage.engine", "h2").equalsIgnoreCase("memory")) {
+            accountDAO = InMemoryAccountRepository.shared();
+        } else {
+            accountDAO = new AccountDAO();
+        }
     }
 
     /** used for mock behavior test cases */
-    public AccountService(AccountDAO accountDAO) {
+    public AccountService(AccountRepository accountDAO) {
         this.accountDAO = accountDAO;
     }
 
+    /** Runs DAO calls as one UnitOfWork when the accounts are in H2; the in-memory repository has no transactions. */
+    private <T, E extends Exception> T inUnitOfWork(UnitOfWork.Work<T, E> work) throws E {
+        return accountDAO instanceof AccountDAO ? UnitOfWork.inTransaction(work) : work.run();
+    }
+
 
     // --------------------------------------------------------------------------------------------------
     // SERVICES
@@ -40,15 +63,18 @@ public class AccountService {
         {
             return null;
         }
-        // check if username exists 
-        boolean usernameExists = getAccountByUsername(newAccount.username);
-        if (usernameExists)
-        {
-            return null;
-        }
-        // if here, we can now create a new account -> send to DAO 
-        Account account = accountDAO.createAccount(newAccount);
-        return account;
+        // the check and the insert share one connection and one commit
+        return inUnitOfWork(() -> {
+            // check if username exists 
+            boolean usernameExists = getAccountByUsername(newAccount.username);
+            if (usernameExists)
+            {
+                return null;
+            }
+            // if here, we can now create a new account -> send to DAO 
+            Account account = accountDAO.createAccount(newAccount);
+            return account;
+        });
     }
 
     /** Checks if username exists. 
@@ -56,7 +82,7 @@ public class AccountService {
      * @return true if exists, else false.
     */
     public boolean getAccountByUsername(String username) {
-        return accountDAO.getAccountByUsername(username);
+        return inUnitOfWork(() -> accountDAO.getAccountByUsername(username));
     }
 
     /** Login. Checks if username and password match existing row in db. 
@@ -65,8 +91,70 @@ public class AccountService {
      * @return if unsuccessful, null.
     */
     public Account getAccountByUsernameAndPassword(Account account) {
-        Account gotAccount = accountDAO.getAccountByUsernameAndPassword(account);
+        Account gotAccount = inUnitOfWork(() -> accountDAO.getAccountByUsernameAndPassword(account));
         // if null, it means the attempt from the DAO SQL query couldn't find an account with a matching username and password
         return gotAccount;
     }
+
+    // --------------------------------------------------------------------------------------------------
+    // BULK
+
+    /**
+     * Same checks as createAccount, for a batch of accounts: one query for the taken usernames and one JDBC batch
+     * for the inserts instead of two round trips per account, in one unit of work.
+     * @param newAccounts accounts in input order, entries may be null.
+     * @return one ImportResult per account, in the same order, with line left for the caller to fill in.
+     */
+    public List<ImportResult> createAccounts(List<Account> newAccounts) {
+        return inUnitOfWork(() -> createAccountsInTransaction(newAccounts));
+    }
+
+    private List<ImportResult> createAccountsInTransaction(List<Account> newAccounts) {
+        Set<String> usernames = new HashSet<>();
+        for (Account account : newAccounts) {
+            if (account != null && account.username != null) {
+                usernames.add(account.username);
+            }
+        }
+        Set<String> taken = accountDAO.getExistingUsernames(usernames);
+
+        List<ImportResult> results = new ArrayList<>();
+        List<Account> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Account account : newAccounts) {
+            if (account == null || account.username == null || account.username.isEmpty()) {
+                results.add(ImportResult.rejected("username is blank"));
+            } else if (account.password == null || account.password.length() < 4) {
+                results.add(ImportResult.rejected("password is shorter than 4 characters"));
+            } else if (taken.contains(account.username)) {
+                results.add(ImportResult.rejected("username already exists"));
+            } else if (!seen.add(account.username)) {
+                results.add(ImportResult.rejected("username appears earlier in the import"));
+            } else {
+                results.add(null);
+                valid.add(account);
+                validIndexes.add(results.size() - 1);
+            }
+        }
+        List<Account> created = accountDAO.createAccounts(valid);
+        for (int i = 0; i < validIndexes.size(); i++) {
+            Account account = created.get(i);
+            results.set(validIndexes.get(i), account != null
+                    ? ImportResult.created(account.account_id)
+                    : ImportResult.rejected("could not be stored"));
+        }
+        return results;
+    }
+
+    /** No verification. Streams every account, one JSON object per root value.
+     * @param generator the JSON destination.
+     * @throws IOException if the destination can not be written to.
+     */
+    public void writeAllAccounts(JsonGenerator generator) throws IOException {
+        inUnitOfWork(() -> {
+            accountDAO.writeAllAccounts(generator);
+            return null;
+        });
+    }
 }
@@ -0,0 +1,189 @@
+package Service;
+
+import Model.AccountStats;
+import Model.Message;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Per-account message statistics kept in memory so GET /accounts/{account_id}/stats does not count rows.
+ *
+ * An account's counters are loaded from the database the first time they are asked for, then MessageService keeps
+ * them current on every create, update and delete. Count and characters are LongAdders so concurrent posts do not
+ * contend. First/last post time can only grow by min/max; deleting the message at either end marks the counters
+ * stale and the next read reloads them.
+ *
+ * A change that lands while an account is being loaded may be counted twice or not at all, so every change bumps a
+ * version stripe for its account and a load that saw its stripe move marks its result stale. reconcile() reloads
+ * every tracked account from the database to correct anything else that drifted.
+ */
+public class AccountStatsTracker {
+    public static final int DEFAULT_MAX_ACCOUNTS = 100_000;
+    private static final int STRIPES = 64;
+
+    private static final class Counters {
+        final LongAdder count = new LongAdder();
+        final LongAdder characters = new LongAdder();
+        final AtomicLong firstPost = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong lastPost = new AtomicLong(Long.MIN_VALUE);
+        volatile boolean stale;
+
+        Counters(AccountStats loaded) {
+            count.add(loaded.message_count);
+            characters.add(loaded.total_characters);
+            if (loaded.first_post_epoch != null) firstPost.set(loaded.first_post_epoch);
+            if (loaded.last_post_epoch != null) lastPost.set(loaded.last_post_epoch);
+        }
+
+        AccountStats snapshot(int accountId) {
+            long count = this.count.sum();
+            long first = firstPost.get();
+            long last = lastPost.get();
+            return new AccountStats(accountId, count,
+                    count > 0 && first != Long.MAX_VALUE ? first : null,
+                    count > 0 && last != Long.MIN_VALUE ? last : null,
+                    characters.sum());
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, Counters> accounts = new ConcurrentHashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final IntFunction<AccountStats> loader;
+    private final Supplier<List<AccountStats>> loadAll;
+    private final int maxAccounts;
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param loader computes one account's statistics from the database, null if it failed.
+     * @param loadAll computes every account's statistics from the database, for reconcile().
+     * @param maxAccounts how many accounts to keep counters for; beyond that reads go to the database.
+     */
+    public AccountStatsTracker(IntFunction<AccountStats> loader, Supplier<List<AccountStats>> loadAll, int maxAccounts) {
+        this.loader = loader;
+        this.loadAll = loadAll;
+        this.maxAccounts = maxAccounts;
+    }
+
+    /** @return the account's statistics, from memory unless they were never loaded or went stale. */
+    public AccountStats get(int accountId) {
+        Counters counters = accounts.get(accountId);
+        if (counters != null && !counters.stale) {
+            hits.increment();
+            return counters.snapshot(accountId);
+        }
+        long version = versions.get(stripe(accountId));
+        AccountStats loaded = loader.apply(accountId);
+        loads.increment();
+        if (loaded == null) {
+            return new AccountStats(accountId, 0, null, null, 0);
+        }
+        if (accounts.size() < maxAccounts || accounts.containsKey(accountId)) {
+            Counters fresh = new Counters(loaded);
+            accounts.put(accountId, fresh);
+            if (versions.get(stripe(accountId)) != version) {
+                fresh.stale = true;
+            }
+        }
+        return loaded;
+    }
+
+    public void created(Message message) {
+        versions.incrementAndGet(stripe(message.posted_by));
+        Counters counters = accounts.get(message.posted_by);
+        if (counters != null) {
+            counters.count.increment();
+            counters.characters.add(message.message_text.length());
+            counters.firstPost.accumulateAndGet(message.time_posted_epoch, Math::min);
+            counters.lastPost.accumulateAndGet(message.time_posted_epoch, Math::max);
+        }
+    }
+
+    public void deleted(Message message) {
+        versions.incrementAndGet(stripe(message.posted_by));
+        Counters counters = accounts.get(message.posted_by);
+        if (counters != null) {
+            counters.count.decrement();
+            counters.characters.add(-message.message_text.length());
+            // min/max cannot be undone; if this was the first or last post, reload on the next read
+            if (message.time_posted_epoch <= counters.firstPost.get() || message.time_posted_epoch >= counters.lastPost.get()) {
+                counters.stale = true;
+            }
+        }
+    }
+
+    /**
+     * @param before the message as it was, null if unknown.
+     * @param after the message as it is now.
+     */
+    public void updated(Message before, Message after) {
+        versions.incrementAndGet(stripe(after.posted_by));
+        Counters counters = accounts.get(after.posted_by);
+        if (counters != null) {
+            if (before != null) {
+                counters.characters.add(after.message_text.length() - before.message_text.length());
+            } else {
+                counters.stale = true;
+            }
+        }
+    }
+
+    /**
+     * Reloads every tracked account from the database with one grouped query.
+     * @return how many tracked accounts had drifted from the database.
+     */
+    public int reconcile() {
+        long[] before = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            before[i] = versions.get(i);
+        }
+        Map<Integer, AccountStats> current = new HashMap<>();
+        for (AccountStats stats : loadAll.get()) {
+            current.put(stats.account_id, stats);
+        }
+        int drifted = 0;
+        Iterator<Map.Entry<Integer, Counters>> tracked = accounts.entrySet().iterator();
+        while (tracked.hasNext()) {
+            Map.Entry<Integer, Counters> entry = tracked.next();
+            int accountId = entry.getKey();
+            AccountStats stats = current.getOrDefault(accountId, new AccountStats(accountId, 0, null, null, 0));
+            if (!entry.getValue().stale && !entry.getValue().snapshot(accountId).equals(stats)) {
+                drifted++;
+            }
+            Counters fresh = new Counters(stats);
+            entry.setValue(fresh);
+            if (versions.get(stripe(accountId)) != before[stripe(accountId)]) {
+                fresh.stale = true;
+            }
+        }
+        return drifted;
+    }
+
+    private static int stripe(int accountId) {
+        return accountId & (STRIPES - 1);
+    }
+
+    /** @return how many accounts have counters in memory. */
+    public int trackedAccounts() {
+        return accounts.size();
+    }
+
+    /** @return reads answered from memory. */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /** @return reads that had to go to the database. */
+    public long loads() {
+        return loads.sum();
+    }
+}
@@ -0,0 +1,73 @@
+package Service;
+
+import DAO.DatabaseDAO;
+import Util.ConnectionUtil;
+import Util.DatabaseConfig;
+import Util.UnitOfWork;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Storage engine statistics for GET /db/stats, to size db.cache-size-kb and friends against the working set.
+ */
+public class DatabaseService {
+    public DatabaseDAO databaseDAO;
+
+    public DatabaseService() {
+        databaseDAO = new DatabaseDAO();
+    }
+
+    /** used for mock behavior test cases */
+    public DatabaseService(DatabaseDAO databaseDAO) {
+        this.databaseDAO = databaseDAO;
+    }
+
+    /**
+     * No verification. The MVStore counters only exist for a file database, in mem mode they are left out.
+     * @return mode, url, cache hit ratio and sizes, file size and I/O counts, plus every info.* value H2 reports
+     *         and the tuning settings currently in effect.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, String> settings = UnitOfWork.inTransaction(() -> databaseDAO.getSettings());
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", DatabaseConfig.isInMemory() ? "mem" : "file");
+        stats.put("url", ConnectionUtil.getUrl());
+        putNumber(stats, "cache_hit_ratio", settings.get("info.CACHE_HIT_RATIO"));
+        putNumber(stats, "cache_size_kb", settings.get("info.CACHE_SIZE"));
+        putNumber(stats, "cache_max_size_mb", settings.get("info.CACHE_MAX_SIZE"));
+        putNumber(stats, "file_size_bytes", settings.get("info.FILE_SIZE"));
+        putNumber(stats, "file_reads", settings.get("info.FILE_READ"));
+        putNumber(stats, "file_read_bytes", settings.get("info.FILE_READ_BYTES"));
+        putNumber(stats, "file_writes", settings.get("info.FILE_WRITE"));
+        putNumber(stats, "file_write_bytes", settings.get("info.FILE_WRITE_BYTES"));
+        putNumber(stats, "fill_rate", settings.get("info.FILL_RATE"));
+
+        Map<String, Object> info = new LinkedHashMap<>();
+        Map<String, Object> tuning = new LinkedHashMap<>();
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            if (setting.getKey().startsWith("info.")) {
+                info.put(setting.getKey().substring("info.".length()), setting.getValue());
+            }
+        }
+        for (String name : new String[] {"RETENTION_TIME", "AUTO_COMPACT_FILL_RATE", "MAX_COMPACT_TIME", "COMPRESS", "MV_STORE"}) {
+            if (settings.containsKey(name)) {
+                tuning.put(name, settings.get(name));
+            }
+        }
+        stats.put("info", info);
+        stats.put("settings", tuning);
+        return stats;
+    }
+
+    private static void putNumber(Map<String, Object> stats, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        try {
+            stats.put(name, value.contains(".") ? (Object) Double.parseDouble(value) : (Object) Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            stats.put(name, value);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package Service;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Group commit for message inserts: concurrent createMessage calls hand their message to one committer thread,
+ * which inserts everything that queued up as one batch in one transaction and then wakes each caller with its
+ * message_id. Under load the database flushes its log once per batch instead of once per message; callers still
+ * block until their own message is committed, so the HTTP response contract does not change.
+ *
+ * A batch is whatever queued while the previous batch was committing, up to maxBatch. With maxDelayMicros above
+ * zero the committer also waits up to that long for a batch to fill, trading that much latency for larger batches;
+ * at zero a lone request is committed immediately.
+ *
+ * If insertBatch throws, anything including an Error, every caller in that batch gets the failure and the
+ * committer goes on with the next batch; a committer thread that dies anyway is started again while messages are
+ * queued. A caller waits at most waitMillis: if its message was still queued by then it takes it back and inserts
+ * it on its own thread, if it was already in a batch it gets an IllegalStateException, as it can not tell whether
+ * that batch will commit. The snapshot counts both, as direct_inserts and ambiguous_timeouts.
+ */
+public class GroupCommitter {
+    private static final class Pending {
+        final Message message;
+        final CompletableFuture<Message> created = new CompletableFuture<>();
+
+        Pending(Message message) {
+            this.message = message;
+        }
+    }
+
+    private final Function<List<Message>, List<Message>> insertBatch;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final long waitMillis;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private Thread committer;
+    private boolean closed = false;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder directInserts = new LongAdder();
+    private final LongAdder ambiguousTimeouts = new LongAdder();
+    private volatile int largestBatch = 0;
+
+    /**
+     * @param insertBatch stores a batch in one transaction, returning a list of the same size with the created
+     *                    message or null per entry, like MessageRepository.createMessages.
+     * @param maxBatch most messages per transaction.
+     * @param maxDelayMicros how long a batch may wait to fill, 0 to never wait.
+     * @param waitMillis how long a caller waits for its batch before giving up on the committer.
+     */
+    public GroupCommitter(Function<List<Message>, List<Message>> insertBatch, int maxBatch, long maxDelayMicros, long waitMillis) {
+        this.insertBatch = insertBatch;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, maxDelayMicros));
+        this.waitMillis = Math.max(1, waitMillis);
+    }
+
+    /**
+     * Queues the message for the next batch and waits until that batch is committed, or waitMillis.
+     * @return the message with its message_id, or null if it could not be stored.
+     * @throws IllegalStateException if the committer was closed, the batch failed, or the batch the message was in
+     *         did not finish within waitMillis.
+     */
+    public Message create(Message message) {
+        Pending pending = new Pending(message);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("group commit is closed");
+            }
+            startCommitter();
+            queue.add(pending);
+        }
+        try {
+            return pending.created.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (queue.remove(pending)) {
+                // the committer never took it, it is stuck or gone
+                System.out.println("Group commit did not take a message within " + waitMillis + " ms, inserting it directly");
+                directInserts.increment();
+                return insertBatch.apply(Collections.singletonList(message)).get(0);
+            }
+            // the batch may still commit, so a client that retries can create the message twice
+            ambiguousTimeouts.increment();
+            throw new IllegalStateException("group commit did not finish within " + waitMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queue.remove(pending);
+            throw new IllegalStateException("interrupted waiting for group commit");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("group commit failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /** Starts the committer thread unless it is running; caller holds the lock. */
+    private void startCommitter() {
+        if (committer != null && committer.isAlive()) {
+            return;
+        }
+        committer = new Thread(this::run, "message-group-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        try {
+            while (true) {
+                Pending first;
+                try {
+                    first = queue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    first = null;
+                }
+                if (first == null) {
+                    synchronized (this) {
+                        if (closed && queue.isEmpty()) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - batch.size());
+                fill(batch);
+                commit(batch);
+                batch.clear();
+            }
+        } catch (Throwable e) {
+            System.out.println("Group commit thread failed, restarting it: " + e);
+            fail(batch, e);
+            synchronized (this) {
+                // callers queued behind the dead thread are not left waiting for it
+                if (committer == Thread.currentThread()) {
+                    committer = null;
+                    restarts.increment();
+                    if (!closed || !queue.isEmpty()) {
+                        startCommitter();
+                    }
+                }
+            }
+        }
+    }
+
+    /** waits up to maxDelayNanos for more messages while the batch is not full */
+    private void fill(List<Pending> batch) {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        long remaining = maxDelayNanos;
+        while (batch.size() < maxBatch && remaining > 0) {
+            Pending next;
+            try {
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatch - batch.size());
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<Message> toInsert = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            toInsert.add(pending.message);
+        }
+        try {
+            List<Message> created = insertBatch.apply(toInsert);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).created.complete(created.get(i));
+            }
+        } catch (Throwable e) {
+            System.out.println("Error committing a batch of " + batch.size() + " messages: " + e);
+            fail(batch, e);
+        }
+        batches.increment();
+        messages.add(batch.size());
+        if (batch.size() > largestBatch) {
+            largestBatch = batch.size();
+        }
+    }
+
+    private static void fail(List<Pending> batch, Throwable e) {
+        for (Pending pending : batch) {
+            pending.created.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Commits whatever is still queued and stops the committer thread. Later create calls fail. Callers still queued
+     * when the timeout runs out are not stranded, see create.
+     * @param timeoutMillis how long to wait for the last batch.
+     */
+    public void close(long timeoutMillis) {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = committer;
+        }
+        if (thread != null) {
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** @return counters for the metrics endpoint. */
+    public Map<String, Object> snapshot() {
+        long batches = this.batches.sum();
+        long messages = this.messages.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("batches", batches);
+        snapshot.put("messages", messages);
+        snapshot.put("average_batch", batches == 0 ? 0.0 : (double) messages / batches);
+        snapshot.put("largest_batch", largestBatch);
+        snapshot.put("queued", queue.size());
+        snapshot.put("restarts", restarts.sum());
+        snapshot.put("direct_inserts", directInserts.sum());
+        snapshot.put("ambiguous_timeouts", ambiguousTimeouts.sum());
+        return snapshot;
+    }
+}
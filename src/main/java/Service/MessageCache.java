@@ -0,0 +1,143 @@
+package Service;
+
+import Model.Message;
+import Model.MessageRecord;
+import Util.StringInterner;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded read-through cache of messages by message_id, filled on reads and creates and by the startup warm-up.
+ * MessageService keeps it coherent by updating or removing the entry whenever it changes a message.
+ *
+ * Entries are immutable MessageRecords, shared between threads as they are; every get hands out a new Message, so a
+ * caller changing what it got back (the controller sets message_id on update) can not change the cache. With
+ * cache.messages.compact-text the texts are kept as UTF-8 bytes, see MessageRecord. Otherwise, with an interner,
+ * equal texts read or written separately share one String in the cache.
+ *
+ * A read that loads from the database can finish after a delete of the same message has removed the entry, and
+ * would put the deleted row back. Readers therefore take a stamp() before they query and cache with
+ * putIfAbsent(message, stamp): every remove records a sequence number in the stripe of its message_id before it
+ * removes the entry, and a stamped put that finds a removal newer than its stamp in its stripe takes its entry out
+ * again. Ids sharing a stripe only cost a skipped cache fill, never a stale one.
+ */
+public class MessageCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    private static final int REMOVAL_STRIPES = 1024;
+
+    private final ConcurrentHashMap<Integer, MessageRecord> messages = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final boolean compactText;
+    private final StringInterner interner;
+    // removals so far, and per stripe of message_ids the sequence number of its latest removal
+    private final AtomicLong removals = new AtomicLong();
+    private final AtomicLongArray removedAt = new AtomicLongArray(REMOVAL_STRIPES);
+
+    public MessageCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public MessageCache(int maxEntries) {
+        this(maxEntries, false);
+    }
+
+    /** @param compactText keep the cached texts as UTF-8 bytes. */
+    public MessageCache(int maxEntries, boolean compactText) {
+        this(maxEntries, compactText, null);
+    }
+
+    /**
+     * @param compactText keep the cached texts as UTF-8 bytes; the interner is not used then.
+     * @param interner pool the cached texts go through, null for none.
+     */
+    public MessageCache(int maxEntries, boolean compactText, StringInterner interner) {
+        this.maxEntries = maxEntries;
+        this.compactText = compactText;
+        this.interner = interner;
+    }
+
+    private MessageRecord record(Message message) {
+        if (compactText || interner == null) {
+            return MessageRecord.of(message, compactText);
+        }
+        return new MessageRecord(message.message_id, message.posted_by, interner.intern(message.message_text), message.time_posted_epoch);
+    }
+
+    /** @return a new Message with the cached values, or null if it is not cached. */
+    public Message get(int messageId) {
+        MessageRecord record = messages.get(messageId);
+        return record == null ? null : record.toMessage();
+    }
+
+    /** Caches a copy of the message after it was written, replacing any older entry. */
+    public void put(Message message) {
+        if (message == null || !makeRoom(message.message_id)) {
+            return;
+        }
+        messages.put(message.message_id, record(message));
+    }
+
+    /**
+     * Caches a copy of a message that was just read from the database, unless an entry already exists. A read that
+     * raced with an update must not replace the fresher value the update put here.
+     */
+    public void putIfAbsent(Message message) {
+        if (message == null || !makeRoom(message.message_id)) {
+            return;
+        }
+        messages.putIfAbsent(message.message_id, record(message));
+    }
+
+    /**
+     * Caches a copy of a message read from the database unless an entry already exists, and only if the message was
+     * not removed since the stamp was taken.
+     * @param stamp what stamp() returned before the database was queried.
+     */
+    public void putIfAbsent(Message message, long stamp) {
+        if (message == null || !makeRoom(message.message_id)) {
+            return;
+        }
+        MessageRecord record = record(message);
+        if (messages.putIfAbsent(message.message_id, record) == null && removedAt.get(stripe(message.message_id)) > stamp) {
+            // a remove ran after the read started, what was read may already be deleted
+            messages.remove(message.message_id, record);
+        }
+    }
+
+    /** @return the stamp to pass to putIfAbsent(message, stamp) for a read about to query the database. */
+    public long stamp() {
+        return removals.get();
+    }
+
+    public void remove(int messageId) {
+        // recorded before the entry goes, so a stamped put either is removed here or sees the record
+        removedAt.accumulateAndGet(stripe(messageId), removals.incrementAndGet(), Math::max);
+        messages.remove(messageId);
+    }
+
+    private static int stripe(int messageId) {
+        return messageId & (REMOVAL_STRIPES - 1);
+    }
+
+    /** evicts an arbitrary entry if the cache is full, @return false if caching is disabled */
+    private boolean makeRoom(int messageId) {
+        if (maxEntries <= 0) {
+            return false;
+        }
+        if (messages.size() >= maxEntries && !messages.containsKey(messageId)) {
+            Iterator<Integer> victims = messages.keySet().iterator();
+            if (victims.hasNext()) {
+                victims.next();
+                victims.remove();
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return messages.size();
+    }
+}
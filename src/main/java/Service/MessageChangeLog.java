@@ -0,0 +1,154 @@
+package Service;
+
+import Model.Message;
+import Model.MessageChange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only, in-process log of message mutations (change data capture).
+ *
+ * Every successful create, update and delete in MessageService is appended here with the next offset. Only the
+ * newest `capacity` changes are retained in a ring buffer, so memory stays bounded no matter how long the server
+ * runs. A consumer remembers the last offset it has seen and asks for everything after it; if it falls so far
+ * behind that its offset has already been overwritten, the page it gets back is marked as truncated and it should
+ * re-read GET /messages before following the log again.
+ */
+public class MessageChangeLog {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final MessageChange[] ring;
+    // offset that will be given to the next appended change, offsets start at 1
+    private long nextOffset = 1;
+    // long-poll readers parked until the next append
+    private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+    public MessageChangeLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MessageChangeLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.ring = new MessageChange[capacity];
+    }
+
+    /** A slice of the log returned to a consumer. */
+    public static class Page {
+        /** changes with an offset greater than the requested one, oldest first */
+        public List<MessageChange> changes;
+        /** pass this back as `since` to continue reading after this page */
+        public long next_offset;
+        /** smallest offset still retained in the log */
+        public long oldest_offset;
+        /** true if changes after the requested offset were already dropped from the ring */
+        public boolean truncated;
+
+        Page(List<MessageChange> changes, long nextOffset, long oldestOffset, boolean truncated) {
+            this.changes = changes;
+            this.next_offset = nextOffset;
+            this.oldest_offset = oldestOffset;
+            this.truncated = truncated;
+        }
+    }
+
+    /**
+     * Appends a change. The message is copied so later mutation of the caller's object does not leak into the log.
+     * @param type one of MessageChange.CREATE, UPDATE or DELETE.
+     * @param message the message the change applies to.
+     * @return the offset assigned to the change.
+     */
+    public long append(String type, Message message) {
+        Message copy = new Message(message.message_id, message.posted_by, message.message_text, message.time_posted_epoch);
+        List<CompletableFuture<Void>> toWake;
+        long offset;
+        synchronized (this) {
+            offset = nextOffset++;
+            ring[(int) (offset % ring.length)] = new MessageChange(offset, type, copy);
+            toWake = waiters;
+            waiters = new ArrayList<>();
+        }
+        // complete outside the lock, completion may run the reader's continuation on this thread
+        for (CompletableFuture<Void> waiter : toWake) {
+            waiter.complete(null);
+        }
+        return offset;
+    }
+
+    /**
+     * @param since the last offset the consumer has already seen (0 to start from the beginning).
+     * @param limit the maximum number of changes to return.
+     * @return the retained changes after `since`, possibly empty.
+     */
+    public synchronized Page readSince(long since, int limit) {
+        long oldest = oldestOffset();
+        if (since >= nextOffset) {
+            // the consumer is ahead of us (e.g. the server restarted), it has to resynchronise
+            return new Page(new ArrayList<>(), nextOffset - 1, oldest, true);
+        }
+        long from = Math.max(since + 1, oldest);
+        long to = Math.min(nextOffset, from + Math.max(limit, 0));
+        List<MessageChange> changes = new ArrayList<>((int) Math.max(to - from, 0));
+        for (long offset = from; offset < to; offset++) {
+            changes.add(ring[(int) (offset % ring.length)]);
+        }
+        long next = changes.isEmpty() ? Math.max(since, from - 1) : to - 1;
+        return new Page(changes, next, oldest, since + 1 < oldest);
+    }
+
+    /**
+     * Long-poll variant of readSince: if nothing newer than `since` exists yet, the returned future completes as
+     * soon as something is appended or when the timeout expires, whichever comes first. No thread is held while
+     * waiting.
+     */
+    public CompletableFuture<Page> awaitSince(long since, int limit, long timeoutMillis) {
+        CompletableFuture<Void> waiter;
+        synchronized (this) {
+            if (since + 1 != nextOffset || timeoutMillis <= 0) {
+                return CompletableFuture.completedFuture(readSince(since, limit));
+            }
+            waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+        }
+        return waiter
+                .completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS)
+                .thenApply(ignored -> {
+                    removeWaiter(waiter);
+                    return readSince(since, limit);
+                });
+    }
+
+    private synchronized void removeWaiter(CompletableFuture<Void> waiter) {
+        waiters.remove(waiter);
+    }
+
+    /** Answers every parked long-poll now (with whatever is available, usually nothing), used on shutdown. */
+    public void releaseWaiters() {
+        List<CompletableFuture<Void>> toWake;
+        synchronized (this) {
+            toWake = waiters;
+            waiters = new ArrayList<>();
+        }
+        for (CompletableFuture<Void> waiter : toWake) {
+            waiter.complete(null);
+        }
+    }
+
+    /** @return how many long-polls are parked waiting for a change. */
+    public synchronized int waiting() {
+        return waiters.size();
+    }
+
+    /** @return the offset of the most recently appended change, 0 if nothing was appended yet. */
+    public synchronized long latestOffset() {
+        return nextOffset - 1;
+    }
+
+    private long oldestOffset() {
+        return Math.max(1, nextOffset - ring.length);
+    }
+}
@@ -0,0 +1,278 @@
+package Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.Config;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fans newly created messages out to live subscribers (GET /messages/stream) so clients do not have to re-poll.
+ *
+ * Each message is serialised to JSON once and the same bytes are handed to every subscriber. Every subscriber has
+ * its own bounded buffer that is drained on a small shared thread pool, so a slow client never blocks the request
+ * that created the message or the other subscribers. A subscriber whose buffer is full is disconnected; it can
+ * reconnect and catch up with GET /messages/changes.
+ *
+ * Writes to a client's socket block, so a client that stops reading would hold a delivery thread, and with every
+ * thread held the other subscribers' buffers would fill up too. A watchdog therefore aborts any write that has not
+ * finished after feed.write-timeout-ms (default 2000): the subscription's abort action breaks the connection,
+ * which makes the blocked write fail and frees the thread, so a stalled socket only costs its own subscription.
+ */
+public class MessageFeed {
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Subscription> subscribers = new CopyOnWriteArrayList<>();
+    private final int bufferSize;
+    private final ExecutorService deliveryPool;
+    private final AtomicLong slowConsumerDisconnects = new AtomicLong();
+    private final AtomicLong stalledWrites = new AtomicLong();
+    private final long writeTimeoutNanos;
+    // started with the first subscription, see watchStalledWrites; guarded by this
+    private ScheduledExecutorService watchdog;
+    private boolean shutdown = false;
+
+    public MessageFeed() {
+        this(DEFAULT_BUFFER_SIZE, Math.max(2, Runtime.getRuntime().availableProcessors()),
+                Config.getLong("feed.write-timeout-ms", 2000));
+    }
+
+    public MessageFeed(int bufferSize, int deliveryThreads) {
+        this(bufferSize, deliveryThreads, Config.getLong("feed.write-timeout-ms", 2000));
+    }
+
+    /** @param writeTimeoutMillis how long one write to a subscriber may block before its connection is aborted. */
+    public MessageFeed(int bufferSize, int deliveryThreads, long writeTimeoutMillis) {
+        this.bufferSize = bufferSize;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, writeTimeoutMillis));
+        this.deliveryPool = Executors.newFixedThreadPool(deliveryThreads, runnable -> {
+            Thread thread = new Thread(runnable, "message-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** One connected client. */
+    public class Subscription {
+        private final Integer postedBy;
+        private final Consumer<byte[]> sink;
+        private final Runnable disconnect;
+        private final Runnable abort;
+        private final ArrayBlockingQueue<byte[]> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // System.nanoTime() when the write in progress started, 0 while not writing
+        private volatile long writeStartedNanos;
+
+        private Subscription(Integer postedBy, Consumer<byte[]> sink, Runnable disconnect, Runnable abort) {
+            this.postedBy = postedBy;
+            this.sink = sink;
+            this.disconnect = disconnect;
+            this.abort = abort;
+        }
+
+        private boolean wants(Message message) {
+            return postedBy == null || postedBy == message.posted_by;
+        }
+
+        private void offer(byte[] event) {
+            if (closed.get()) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                slowConsumerDisconnects.incrementAndGet();
+                close();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            // only one delivery task per subscriber at a time keeps events in order
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    deliveryPool.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // the feed was shut down
+                    close();
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                byte[] event;
+                while (!closed.get() && (event = buffer.poll()) != null) {
+                    writeStartedNanos = System.nanoTime();
+                    sink.accept(event);
+                    writeStartedNanos = 0;
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Error delivering to feed subscriber: " + e.getMessage());
+                close();
+            } finally {
+                writeStartedNanos = 0;
+                draining.set(false);
+            }
+            // an event may have been offered after the loop ended but before draining was reset
+            if (!closed.get() && !buffer.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        /** @return true if a write has been blocked for longer than the write timeout. */
+        private boolean isStalled(long now) {
+            long started = writeStartedNanos;
+            return started != 0 && now - started > writeTimeoutNanos;
+        }
+
+        /** Ends a subscription whose write is stuck, breaking its connection so the write fails and returns. */
+        private void abortStalledWrite() {
+            if (closed.compareAndSet(false, true)) {
+                stalledWrites.incrementAndGet();
+                subscribers.remove(this);
+                buffer.clear();
+                abort.run();
+            }
+        }
+
+        /** Stops delivery and drops anything still buffered. Safe to call more than once. */
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscribers.remove(this);
+                buffer.clear();
+                disconnect.run();
+            }
+        }
+    }
+
+    /**
+     * @param postedBy only deliver messages from this account_id, or null for every message.
+     * @param sink receives the JSON of each message, called from a feed delivery thread.
+     * @param disconnect called once when the subscription ends, e.g. to close the client's connection.
+     * @return the subscription, close it when the client goes away.
+     */
+    public Subscription subscribe(Integer postedBy, Consumer<byte[]> sink, Runnable disconnect) {
+        return subscribe(postedBy, sink, disconnect, disconnect);
+    }
+
+    /**
+     * @param abort called instead of disconnect when a write blocks past the write timeout; it must make the
+     *        blocked sink call return, e.g. by closing the client's socket, or the delivery thread stays held.
+     */
+    public Subscription subscribe(Integer postedBy, Consumer<byte[]> sink, Runnable disconnect, Runnable abort) {
+        Subscription subscription = new Subscription(postedBy, sink, disconnect, abort);
+        subscribers.add(subscription);
+        watchStalledWrites();
+        return subscription;
+    }
+
+    /** Starts the watchdog that aborts stalled writes, checking a few times per write timeout. */
+    private synchronized void watchStalledWrites() {
+        if (watchdog != null || shutdown) {
+            return;
+        }
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-feed-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(10), writeTimeoutNanos / 4);
+        watchdog.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            for (Subscription subscription : subscribers) {
+                if (subscription.isStalled(now)) {
+                    System.out.println("Aborting feed subscriber whose write is blocked");
+                    subscription.abortStalledWrite();
+                }
+            }
+        }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** Delivers a newly created message to every interested subscriber. */
+    public void publish(Message message) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        byte[] event = null;
+        for (Subscription subscription : subscribers) {
+            if (!subscription.wants(message)) {
+                continue;
+            }
+            if (event == null) {
+                try {
+                    event = mapper.writeValueAsBytes(message);
+                } catch (JsonProcessingException e) {
+                    System.out.println("Error serialising message for feed: " + e.getMessage());
+                    return;
+                }
+            }
+            subscription.offer(event);
+        }
+    }
+
+    /** Disconnects every subscriber, used when the server shuts down. */
+    public void closeAll() {
+        for (Subscription subscription : subscribers) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * Disconnects every subscriber and stops the delivery threads and the watchdog, used when the server stops.
+     * Waits up to a second for the threads to finish.
+     */
+    public void shutdown() {
+        closeAll();
+        ScheduledExecutorService watchdog;
+        synchronized (this) {
+            shutdown = true;
+            watchdog = this.watchdog;
+        }
+        deliveryPool.shutdownNow();
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+        try {
+            deliveryPool.awaitTermination(1, TimeUnit.SECONDS);
+            if (watchdog != null) {
+                watchdog.awaitTermination(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** @return true once shutdown() ran and the feed's threads have finished. */
+    public synchronized boolean isTerminated() {
+        return shutdown && deliveryPool.isTerminated() && (watchdog == null || watchdog.isTerminated());
+    }
+
+    /** @return the number of connected subscribers. */
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /** @return how many subscribers were disconnected because they could not keep up. */
+    public long slowConsumerDisconnects() {
+        return slowConsumerDisconnects.get();
+    }
+
+    /** @return how many subscribers were aborted because a write to them blocked past the write timeout. */
+    public long stalledWrites() {
+        return stalledWrites.get();
+    }
+}
@@ -1,9 +1,37 @@
 package Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import DAO.AccountDAO;
+import DAO.AccountRepository;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import DAO.MessageArchive;
 import DAO.MessageDAO;
+import DAO.MessageRepository;
+import DAO.MmapMessageLog;
+import Model.AccountStats;
+import Model.ImportResult;
 import Model.Message;
+import Model.MessageChange;
+import Util.Config;
+import Util.SingleFlight;
+import Util.StringInterner;
+import Util.UnitOfWork;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The purpose of a Service class is to contain "business logic" that sits between the web layer (controller) and
@@ -16,17 +44,88 @@ import java.util.List;
  * readable and maintainable in the long run!
  */
 public class MessageService {
-    public MessageDAO messageDAO;
+    public MessageRepository messageDAO;
+    public AccountRepository accountDAO = new AccountDAO();
+    /** every successful create, update and delete is published here for GET /messages/changes */
+    public final MessageChangeLog changeLog = new MessageChangeLog();
+    /** newly created messages are pushed to GET /messages/stream subscribers through here */
+    public final MessageFeed feed = new MessageFeed();
+    /** shares one String between equal cached message texts, null unless cache.intern.enabled is set */
+    public final StringInterner textInterner = StringInterner.fromConfig();
+    /** messages by message_id, filled by reads, creates and warmUp */
+    public final MessageCache cache = new MessageCache(Config.getInt("cache.messages.max-entries", MessageCache.DEFAULT_MAX_ENTRIES),
+            Config.getBoolean("cache.messages.compact-text", false), textInterner);
+    /** posted_by values known to have a message, a positive-only shortcut for postedByExistingUser */
+    private final Set<Integer> knownPostedBy = ConcurrentHashMap.newKeySet();
+    /** per-account counters behind GET /accounts/{account_id}/stats, kept current by create/update/delete */
+    public final AccountStatsTracker stats = new AccountStatsTracker(
+            accountId -> inUnitOfWork(() -> messageDAO.getAccountStats(accountId)),
+            () -> inUnitOfWork(() -> messageDAO.getAllAccountStats()),
+            Config.getInt("stats.max-accounts", AccountStatsTracker.DEFAULT_MAX_ACCOUNTS));
+    /** message_ids per posted_by, behind getAllMessagesByAccountId, kept current by create/delete */
+    public final PostedByIndex postedByIndex = new PostedByIndex();
+    /** concurrent reads of the same message share one database call */
+    public final SingleFlight<Integer, Message> messageByIdFlight = new SingleFlight<>("message_by_id");
+    /** batches concurrent single creates into one transaction, null if messages.group-commit.enabled is off */
+    public GroupCommitter groupCommit;
+    // runs the stats reconciler and the archiver, created when the first of them is started
+    private ScheduledExecutorService background;
+    private boolean statsReconcilerStarted = false;
+    // set when the archiver is started, always the H2 messageDAO
+    private MessageDAO archivingDAO;
 
     public MessageService() {
-        messageDAO = new MessageDAO();
+        String engine = Config.getString("storage.engine", "h2");
+        if (engine.equalsIgnoreCase("mmap")) {
+            messageDAO = openMessageLog();
+        } else if (engine.equalsIgnoreCase("memory")) {
+            // accounts are in memory too, shared with AccountService
+            messageDAO = InMemoryMessageRepository.shared();
+            accountDAO = InMemoryAccountRepository.shared();
+        } else {
+            messageDAO = new MessageDAO();
+        }
+        if (messageDAO instanceof MessageDAO && Config.getBoolean("messages.group-commit.enabled", true)) {
+            groupCommit = new GroupCommitter(
+                    batch -> UnitOfWork.inTransaction(() -> messageDAO.createMessages(batch)),
+                    Config.getInt("messages.group-commit.max-batch", 64),
+                    Config.getLong("messages.group-commit.max-delay-us", 0),
+                    Config.getLong("messages.group-commit.wait-timeout-ms", 10000));
+        }
+        if (Config.getBoolean("index.posted-by.enabled", true)) {
+            rebuildPostedByIndex();
+        }
+        if (Config.getBoolean("archive.enabled", false)) {
+            if (messageDAO instanceof MessageDAO) {
+                startArchiver((MessageDAO) messageDAO);
+            } else {
+                System.out.println("archive.enabled is ignored, the archive only works with storage.engine=h2");
+            }
+        }
     }
 
     /** used for mock behavior test cases */
-    public MessageService(MessageDAO messageDAO) {
+    public MessageService(MessageRepository messageDAO) {
         this.messageDAO = messageDAO;
     }
 
+    /**
+     * Opens the message log in storage.mmap.file, seeding it from the H2 message table the first time, and compacts
+     * it every storage.mmap.compact-interval-s (600) once storage.mmap.compact-garbage-ratio (0.5) of it is garbage.
+     */
+    private MmapMessageLog openMessageLog() {
+        MmapMessageLog log = MmapMessageLog.forFile(
+                Config.getString("storage.mmap.file", "h2/messages.log"),
+                Config.getBoolean("storage.mmap.sync", false));
+        if (log.isEmpty()) {
+            log.importMessages(UnitOfWork.inTransaction(() -> new MessageDAO().getAllMessages()));
+        }
+        double garbageRatio = Config.getDouble("storage.mmap.compact-garbage-ratio", 0.5);
+        scheduleInBackground("compact message log", () -> log.compactIfWorthIt(garbageRatio),
+                Config.getLong("storage.mmap.compact-interval-s", 600));
+        return log;
+    }
+
     // -----------------------------------------------------------------------------------------------------------
     // SERVICES
 
@@ -41,34 +140,90 @@ public class MessageService {
         {
             return null;
         }
-        // check if posted_by is an existing user --> need additional SQL call 
-        // if user does not exist --> return null
-        if (!postedByExistingUser(createThisMessage.posted_by)) {
-            return null;
+        if (groupCommit != null) {
+            // the insert is committed together with whatever other creates are queued at the same time
+            Message createdMessage = postedByExistingUser(createThisMessage.posted_by) ? groupCommit.create(createThisMessage) : null;
+            return messageStored(createdMessage);
         }
-        // if we made it here, verification is complete 
-        // we now can create the message
-        Message createdMessage = messageDAO.createMessage(createThisMessage);
+        // the check and the insert share one connection and one commit
+        Message createdMessage = inUnitOfWork(() -> {
+            // check if posted_by is an existing user --> need additional SQL call 
+            // if user does not exist --> return null
+            if (!postedByExistingUser(createThisMessage.posted_by)) {
+                return null;
+            }
+            // if we made it here, verification is complete 
+            // we now can create the message
+            return messageDAO.createMessage(createThisMessage);
+        });
+        return messageStored(createdMessage);
+    }
+
+    /** Caches and publishes a message that was just stored; null, for a failed insert, passes through. */
+    private Message messageStored(Message createdMessage) {
         // not sure if this if statement is needed, but safe for now
         if (createdMessage != null) {
+            cache.put(createdMessage);
+            messageCreated(createdMessage);
             return createdMessage;
         }
         return null;
     }
 
+    /**
+     * Runs DAO calls as one UnitOfWork: one connection, one commit, closed afterwards. Only the H2 engine has
+     * transactions, MmapMessageLog and InMemoryMessageRepository calls just run.
+     */
+    private <T, E extends Exception> T inUnitOfWork(UnitOfWork.Work<T, E> work) throws E {
+        return messageDAO instanceof MessageDAO ? UnitOfWork.inTransaction(work) : work.run();
+    }
+
+    /** Everything that has to follow a stored message, for single and bulk creates alike. */
+    private void messageCreated(Message createdMessage) {
+        knownPostedBy.add(createdMessage.posted_by);
+        postedByIndex.added(createdMessage.posted_by, createdMessage.message_id);
+        stats.created(createdMessage);
+        forgetInFlightReads(createdMessage);
+        changeLog.append(MessageChange.CREATE, createdMessage);
+        feed.publish(createdMessage);
+    }
+
+    /** Reads that started before this write may return the old data, later callers must not join them. */
+    private void forgetInFlightReads(Message changedMessage) {
+        messageByIdFlight.forget(changedMessage.message_id);
+    }
+
     /** determines if a user exists.
      * @param postedBy is the foreign key posted_by of a Message object for an account_id of an Account object.
      * @return true if exists, else false.
     */
     public boolean postedByExistingUser(int postedBy) {
-        return messageDAO.postedByExistingUser(postedBy);
+        if (knownPostedBy.contains(postedBy)) {
+            return true;
+        }
+        boolean exists = inUnitOfWork(() -> messageDAO.postedByExistingUser(postedBy));
+        if (exists) {
+            knownPostedBy.add(postedBy);
+        }
+        return exists;
     }
 
     /** No verification.
      * @return a list of all messages if any exist, empty list if none exist.
      */
     public List<Message> getAllMessages() {
-        return messageDAO.getAllMessages();
+        return inUnitOfWork(() -> messageDAO.getAllMessages());
+    }
+
+    /** No verification. Streams the same JSON as getAllMessages() without materialising the list.
+     * @param generator the JSON destination.
+     * @throws IOException if the destination can not be written to.
+     */
+    public void writeAllMessages(JsonGenerator generator) throws IOException {
+        inUnitOfWork(() -> {
+            messageDAO.writeAllMessages(generator);
+            return null;
+        });
     }
 
     /** No verification.
@@ -76,7 +231,17 @@ public class MessageService {
      * @return Message object or null.
      */
     public Message getMessageById(int id) {
-        return messageDAO.getMessageById(id);
+        Message cached = cache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        return messageByIdFlight.load(id, () -> {
+            // a delete that lands between the query and the put must not leave the row cached
+            long stamp = cache.stamp();
+            Message message = inUnitOfWork(() -> messageDAO.getMessageById(id));
+            cache.putIfAbsent(message, stamp);
+            return message;
+        });
     }
 
     /** No verification.
@@ -84,7 +249,17 @@ public class MessageService {
      * @return Message object or null.
      */
     public Message deleteMessageById(int id) {
-        return messageDAO.deleteMessageById(id);
+        Message deletedMessage = inUnitOfWork(() -> messageDAO.deleteMessageById(id));
+        if (deletedMessage != null) {
+            cache.remove(id);
+            // it may have been the poster's last message, let the next check ask the database
+            knownPostedBy.remove(deletedMessage.posted_by);
+            postedByIndex.removed(deletedMessage.posted_by, deletedMessage.message_id);
+            stats.deleted(deletedMessage);
+            forgetInFlightReads(deletedMessage);
+            changeLog.append(MessageChange.DELETE, deletedMessage);
+        }
+        return deletedMessage;
     }
 
     /** verifies - checks if message_id exists and new message_text is not blank and is not over 255 characters 
@@ -98,23 +273,316 @@ public class MessageService {
             return null;
         }
         // message_id will be checked by DAO --> it will attempt to find where the id is, if it doesn't exist --> return null
-        Message updatedMessage = messageDAO.updateMessageById(newMessage);
-        if (updatedMessage != null) {
-            return getMessageById(updatedMessage.message_id);
-        } else {
-            return null;
+        // the old text is needed to adjust the poster's character count, usually a cache hit
+        Message previousMessage = getMessageById(newMessage.message_id);
+        cache.remove(newMessage.message_id);
+        // the update and the re-read share one connection and one commit
+        Message refreshedMessage = inUnitOfWork(() -> {
+            Message updatedMessage = messageDAO.updateMessageById(newMessage);
+            return updatedMessage != null ? messageDAO.getMessageById(updatedMessage.message_id) : null;
+        });
+        if (refreshedMessage != null) {
+            cache.put(refreshedMessage);
+            stats.updated(previousMessage, refreshedMessage);
+            forgetInFlightReads(refreshedMessage);
+            changeLog.append(MessageChange.UPDATE, refreshedMessage);
+        }
+        return refreshedMessage;
+    }
+
+
+    /** Preloads the caches so the first requests after startup do not all go to the database.
+     * @param recentMessages how many of the newest messages to put in the message cache.
+     * @return the most recent messages that were cached, newest first.
+     */
+    public List<Message> warmUp(int recentMessages) {
+        long stamp = cache.stamp();
+        List<Message> recent = inUnitOfWork(() -> messageDAO.getRecentMessages(recentMessages));
+        for (Message message : recent) {
+            cache.putIfAbsent(message, stamp);
+        }
+        knownPostedBy.addAll(inUnitOfWork(() -> messageDAO.getAllPostedByIds()));
+        return recent;
+    }
+
+    /** @return how many posted_by ids are currently known without asking the database. */
+    public int knownPostedByCount() {
+        return knownPostedBy.size();
+    }
+
+    /** Reads the change log after the given offset.
+     * @param since last offset the caller has seen, 0 for everything still retained.
+     * @param limit max number of changes to return.
+     * @param waitMillis if greater than 0 and there is nothing new yet, wait up to this long for the next change.
+     * @return a future page of changes, already complete unless the caller is long-polling.
+     */
+    public CompletableFuture<MessageChangeLog.Page> getChangesSince(long since, int limit, long waitMillis) {
+        return changeLog.awaitSince(since, limit, waitMillis);
+    }
+
+
+    // --------------------------------------------------------------------------------------------------------------
+    // BULK
+
+    /** verifies - same text rules as createMessage, for a batch of messages, with one query for the posters and
+     * one JDBC batch for the inserts. posted_by is checked against the account table rather than through
+     * postedByExistingUser, since an account being migrated has no messages yet.
+     * Created messages go to the change log and live feed like single creates, but not into the cache.
+     * @param newMessages messages in input order, entries may be null.
+     * @return one ImportResult per message, in the same order, with line left for the caller to fill in.
+     */
+    public List<ImportResult> createMessages(List<Message> newMessages) {
+        return inUnitOfWork(() -> createMessagesInUnitOfWork(newMessages));
+    }
+
+    private List<ImportResult> createMessagesInUnitOfWork(List<Message> newMessages) {
+        Set<Integer> posters = new HashSet<>();
+        for (Message message : newMessages) {
+            if (message != null) {
+                posters.add(message.posted_by);
+            }
+        }
+        Set<Integer> existingPosters = accountDAO.getExistingAccountIds(posters);
+
+        List<ImportResult> results = new ArrayList<>();
+        List<Message> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (Message message : newMessages) {
+            if (message == null || message.message_text == null || message.message_text.isBlank()) {
+                results.add(ImportResult.rejected("message_text is blank"));
+            } else if (message.message_text.length() > 255) {
+                results.add(ImportResult.rejected("message_text is longer than 255 characters"));
+            } else if (!existingPosters.contains(message.posted_by)) {
+                results.add(ImportResult.rejected("posted_by is not an existing account"));
+            } else {
+                results.add(null);
+                valid.add(message);
+                validIndexes.add(results.size() - 1);
+            }
         }
+        List<Message> created = messageDAO.createMessages(valid);
+        for (int i = 0; i < validIndexes.size(); i++) {
+            Message message = created.get(i);
+            if (message != null) {
+                messageCreated(message);
+                results.set(validIndexes.get(i), ImportResult.created(message.message_id));
+            } else {
+                results.set(validIndexes.get(i), ImportResult.rejected("could not be stored"));
+            }
+        }
+        return results;
     }
 
+    /** No verification. Streams every message, one JSON object per root value.
+     * @param generator the JSON destination.
+     * @throws IOException if the destination can not be written to.
+     */
+    public void exportAllMessages(JsonGenerator generator) throws IOException {
+        inUnitOfWork(() -> {
+            messageDAO.exportAllMessages(generator);
+            return null;
+        });
+    }
 
     // --------------------------------------------------------------------------------------------------------------
     // ACCOUNT 
 
-    /** No verification.
+    /** No verification. O(1) once the account's counters are loaded; the first read per account costs one query.
+     * @param id account_id.
+     * @return message count, first/last post time and total characters; zeros if the account has no messages.
+     */
+    public AccountStats getAccountStats(int id) {
+        startStatsReconciler();
+        return stats.get(id);
+    }
+
+    /** Periodically corrects the in-memory stats against the database, every stats.reconcile-interval-s (300). */
+    private synchronized void startStatsReconciler() {
+        long intervalSeconds = Config.getLong("stats.reconcile-interval-s", 300);
+        if (statsReconcilerStarted || intervalSeconds <= 0) {
+            return;
+        }
+        statsReconcilerStarted = true;
+        scheduleInBackground("reconcile account stats", () -> {
+            int drifted = stats.reconcile();
+            if (drifted > 0) {
+                System.out.println("Reconciled account stats, " + drifted + " accounts had drifted");
+            }
+        }, intervalSeconds);
+    }
+
+    /** No verification. Resolves the ids through postedByIndex once it is built, otherwise asks the database.
      * @param id account_id.
      * @return a list of all messages created by an account or an empty list.
      */
     public List<Message> getAllMessagesByAccountId(int id) {
-        return messageDAO.getAllMessagesByAccountId(id);
+        int[] ids = postedByIndex.get(id);
+        List<Message> messages = ids == null ? null : getMessagesByIds(ids, false);
+        if (messages == null) {
+            // no index yet, or the fetch by id failed
+            return inUnitOfWork(() -> messageDAO.getAllMessagesByAccountId(id));
+        }
+        return messages;
+    }
+
+    /** No verification. Streams the same JSON as getAllMessagesByAccountId(id) without materialising the list,
+     * from the ResultSet of a query by posted_by or, through postedByIndex, by message_id.
+     * @param id account_id.
+     * @param generator the JSON destination.
+     * @throws IOException if the destination can not be written to, or a query fails.
+     */
+    public void writeAllMessagesByAccountId(int id, JsonGenerator generator) throws IOException {
+        int[] ids = postedByIndex.get(id);
+        if (ids == null) {
+            inUnitOfWork(() -> {
+                messageDAO.writeAllMessagesByAccountId(id, generator);
+                return null;
+            });
+            return;
+        }
+        generator.writeStartArray();
+        inUnitOfWork(() -> {
+            messageDAO.writeMessagesByIds(ids, generator);
+            return null;
+        });
+        generator.writeEndArray();
+    }
+
+    /** No verification. Takes what it can from the message cache and fetches the rest with one batched query.
+     * @param ids message_ids in the order the caller wants them, repeats allowed.
+     * @return the messages that exist, in the requested order; missing ids are left out. null if the database
+     *         could not be read, so a failed fetch is not mistaken for ids that do not exist.
+     */
+    public List<Message> getMessagesByIds(int[] ids) {
+        return getMessagesByIds(ids, true);
+    }
+
+    /**
+     * @param cacheMisses put fetched messages into the cache; off for whole-account reads so one large account
+     *                    does not push every hot message out.
+     */
+    private List<Message> getMessagesByIds(int[] ids, boolean cacheMisses) {
+        Map<Integer, Message> found = new HashMap<>();
+        Set<Integer> missing = new LinkedHashSet<>();
+        for (int id : ids) {
+            Message cached = cache.get(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            int[] missingIds = new int[missing.size()];
+            int i = 0;
+            for (int id : missing) {
+                missingIds[i++] = id;
+            }
+            long stamp = cache.stamp();
+            List<Message> fetched = inUnitOfWork(() -> messageDAO.getMessagesByIds(missingIds));
+            if (fetched == null) {
+                return null;
+            }
+            for (Message message : fetched) {
+                found.put(message.message_id, message);
+                if (cacheMisses) {
+                    cache.putIfAbsent(message, stamp);
+                }
+            }
+        }
+        List<Message> messages = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message message = found.get(id);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /** Reloads postedByIndex from the database; until the first load succeeds, account reads query by posted_by. */
+    public void rebuildPostedByIndex() {
+        if (!postedByIndex.rebuild(() -> inUnitOfWork(messageDAO::getMessageIdsByPostedBy))) {
+            System.out.println("Could not build the posted_by index, account messages are read by query");
+        }
+    }
+
+    // --------------------------------------------------------------------------------------------------------------
+    // ARCHIVE
+
+    /**
+     * Opens the archive in archive.dir and moves messages older than archive.max-age-days into it every
+     * archive.interval-s, archive.batch-size at a time. By-id reads, updates and deletes reach archived messages
+     * through the DAO; the list endpoints and account stats only cover the message table.
+     */
+    private void startArchiver(MessageDAO archivingDAO) {
+        this.archivingDAO = archivingDAO;
+        // an update of an archived message puts it back in the table, and so back in its account's messages
+        archivingDAO.setRestoreListener(restored -> postedByIndex.added(restored.posted_by, restored.message_id));
+        archivingDAO.setArchive(MessageArchive.forDirectory(
+                Config.getString("archive.dir", "archive"),
+                Config.getLong("archive.bucket-seconds", 30L * 24 * 60 * 60)));
+        scheduleInBackground("archive old messages", this::archiveOldMessages, Config.getLong("archive.interval-s", 3600));
+    }
+
+    /**
+     * Moves every message older than archive.max-age-days (365) into the archive, in batches.
+     * @return how many messages were moved.
+     */
+    public int archiveOldMessages() {
+        if (archivingDAO == null) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() / 1000 - Config.getLong("archive.max-age-days", 365) * 24 * 60 * 60;
+        int batchSize = Config.getInt("archive.batch-size", 1000);
+        int total = 0;
+        int moved;
+        do {
+            moved = UnitOfWork.inTransaction(() -> archivingDAO.archiveMessagesBefore(cutoff, batchSize));
+            total += moved;
+        } while (moved == batchSize);
+        if (total > 0) {
+            // archived messages leave the table that account reads fetch from
+            if (postedByIndex.isBuilt()) {
+                rebuildPostedByIndex();
+            }
+            System.out.println("Archived " + total + " messages posted before " + cutoff);
+        }
+        return total;
+    }
+
+    private synchronized void scheduleInBackground(String name, Runnable task, long intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        if (background == null) {
+            background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-service-background");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        background.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error in background task " + name + ": " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /** Commits the creates still queued for group commit and stops it; later creates fail. */
+    public void flushPendingCreates() {
+        if (groupCommit != null) {
+            groupCommit.close(Config.getLong("messages.group-commit.close-timeout-ms", 5000));
+        }
+    }
+
+    /** Stops the stats reconciler, the archiver and log compaction, if they were started. */
+    public synchronized void stopBackgroundTasks() {
+        if (background != null) {
+            background.shutdownNow();
+            background = null;
+        }
     }
 }
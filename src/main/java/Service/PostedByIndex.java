@@ -0,0 +1,148 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * In-memory secondary index from posted_by to the account's message_ids, kept as a sorted int[] per account so a
+ * million messages cost about 4 MB and nothing is boxed. MessageService resolves GET /accounts/{account_id}/messages
+ * through it and then fetches the rows by id, instead of having the database scan by posted_by.
+ *
+ * rebuild() loads it from the database at startup. Creates and deletes that land while a rebuild's query runs are
+ * recorded and replayed onto the rebuilt index before it replaces the old one; adding and removing are idempotent,
+ * so it does not matter whether the query already saw them.
+ */
+public class PostedByIndex {
+
+    /** One account's ids, sorted, with spare capacity at the end so appends of new (higher) ids are cheap. */
+    private static final class Ids {
+        private int[] ids;
+        private int size;
+
+        Ids(int[] sorted) {
+            ids = sorted;
+            size = sorted.length;
+        }
+
+        synchronized void add(int id) {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if (slot >= 0) {
+                return;
+            }
+            slot = -slot - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+            }
+            System.arraycopy(ids, slot, ids, slot + 1, size - slot);
+            ids[slot] = id;
+            size++;
+        }
+
+        synchronized void remove(int id) {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if (slot >= 0) {
+                System.arraycopy(ids, slot + 1, ids, slot, size - slot - 1);
+                size--;
+            }
+        }
+
+        synchronized int[] snapshot() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+
+    private volatile ConcurrentHashMap<Integer, Ids> accounts = new ConcurrentHashMap<>();
+    private volatile boolean built = false;
+    // changes made while a rebuild is loading, as {postedBy, messageId, 1 for added / 0 for removed}
+    private List<int[]> pending;
+
+    /**
+     * Replaces the index with a fresh load from the database.
+     * @param loader message_ids per posted_by, sorted; null if the load failed.
+     * @return true if the index was rebuilt, false if the load failed and the old index was kept.
+     */
+    public boolean rebuild(Supplier<Map<Integer, int[]>> loader) {
+        synchronized (this) {
+            pending = new ArrayList<>();
+        }
+        Map<Integer, int[]> loaded = loader.get();
+        synchronized (this) {
+            List<int[]> changes = pending;
+            pending = null;
+            if (loaded == null) {
+                return false;
+            }
+            ConcurrentHashMap<Integer, Ids> rebuilt = new ConcurrentHashMap<>(loaded.size() * 2);
+            for (Map.Entry<Integer, int[]> entry : loaded.entrySet()) {
+                rebuilt.put(entry.getKey(), new Ids(entry.getValue()));
+            }
+            for (int[] change : changes) {
+                apply(rebuilt, change[0], change[1], change[2] == 1);
+            }
+            accounts = rebuilt;
+            built = true;
+            return true;
+        }
+    }
+
+    /** @return true once a rebuild has succeeded, until then callers query the database. */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /** @return the account's message_ids in ascending order, an empty array if it has none, null if not built. */
+    public int[] get(int postedBy) {
+        if (!built) {
+            return null;
+        }
+        Ids ids = accounts.get(postedBy);
+        return ids == null ? new int[0] : ids.snapshot();
+    }
+
+    public synchronized void added(int postedBy, int messageId) {
+        apply(accounts, postedBy, messageId, true);
+        if (pending != null) {
+            pending.add(new int[] {postedBy, messageId, 1});
+        }
+    }
+
+    public synchronized void removed(int postedBy, int messageId) {
+        apply(accounts, postedBy, messageId, false);
+        if (pending != null) {
+            pending.add(new int[] {postedBy, messageId, 0});
+        }
+    }
+
+    private static void apply(ConcurrentHashMap<Integer, Ids> accounts, int postedBy, int messageId, boolean added) {
+        if (added) {
+            accounts.computeIfAbsent(postedBy, p -> new Ids(new int[0])).add(messageId);
+        } else {
+            Ids ids = accounts.get(postedBy);
+            if (ids != null) {
+                ids.remove(messageId);
+            }
+        }
+    }
+
+    /** @return how many accounts have an entry. */
+    public int accountCount() {
+        return accounts.size();
+    }
+
+    /** @return how many message_ids are indexed, summed over accounts. */
+    public long messageIdCount() {
+        long count = 0;
+        for (Ids ids : accounts.values()) {
+            count += ids.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,146 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Lock-free map from non-negative int keys to values, for dense keys handed out by a counter such as message_ids.
+ * The key is the address: a three-level radix tree of AtomicReferenceArrays (2048 x 1024 x 1024 slots) whose inner
+ * arrays are created on first use with a compare-and-set, so there is no hashing, no boxing of keys and no resizing.
+ * Every write is a single CAS on the key's slot, which makes get, putIfAbsent, replace and remove linearizable.
+ *
+ * Each 1024 keys in use cost one 4 to 8 KB leaf array, so sparse keys waste memory; use a hash map for those.
+ */
+public class ConcurrentIntMap<V> {
+    private static final int LEAF_BITS = 10;
+    private static final int MID_BITS = 10;
+    private static final int LEAF_SIZE = 1 << LEAF_BITS;
+    private static final int MID_SIZE = 1 << MID_BITS;
+    private static final int TOP_SIZE = 1 << (31 - LEAF_BITS - MID_BITS);
+
+    private final AtomicReferenceArray<AtomicReferenceArray<AtomicReferenceArray<V>>> top = new AtomicReferenceArray<>(TOP_SIZE);
+    private final AtomicInteger size = new AtomicInteger();
+
+    private static void checkKey(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("ConcurrentIntMap keys must not be negative: " + key);
+        }
+    }
+
+    /** @return the leaf holding the key, or null if create is false and it does not exist yet. */
+    private AtomicReferenceArray<V> leaf(int key, boolean create) {
+        int topIndex = key >>> (LEAF_BITS + MID_BITS);
+        AtomicReferenceArray<AtomicReferenceArray<V>> mid = top.get(topIndex);
+        if (mid == null) {
+            if (!create) {
+                return null;
+            }
+            // whoever loses the race uses the winner's array
+            top.compareAndSet(topIndex, null, new AtomicReferenceArray<>(MID_SIZE));
+            mid = top.get(topIndex);
+        }
+        int midIndex = (key >>> LEAF_BITS) & (MID_SIZE - 1);
+        AtomicReferenceArray<V> leaf = mid.get(midIndex);
+        if (leaf == null) {
+            if (!create) {
+                return null;
+            }
+            mid.compareAndSet(midIndex, null, new AtomicReferenceArray<>(LEAF_SIZE));
+            leaf = mid.get(midIndex);
+        }
+        return leaf;
+    }
+
+    /** @return the value, or null if the key is not present. */
+    public V get(int key) {
+        checkKey(key);
+        AtomicReferenceArray<V> leaf = leaf(key, false);
+        return leaf == null ? null : leaf.get(key & (LEAF_SIZE - 1));
+    }
+
+    /**
+     * @param value not null.
+     * @return null if the value was stored, otherwise the value already present, which is left in place.
+     */
+    public V putIfAbsent(int key, V value) {
+        checkKey(key);
+        AtomicReferenceArray<V> leaf = leaf(key, true);
+        int slot = key & (LEAF_SIZE - 1);
+        while (true) {
+            if (leaf.compareAndSet(slot, null, value)) {
+                size.incrementAndGet();
+                return null;
+            }
+            V present = leaf.get(slot);
+            if (present != null) {
+                return present;
+            }
+        }
+    }
+
+    /**
+     * Replaces the value only if it is still expected, compared by identity.
+     * @param update not null.
+     * @return true if it was replaced.
+     */
+    public boolean replace(int key, V expected, V update) {
+        checkKey(key);
+        AtomicReferenceArray<V> leaf = leaf(key, false);
+        return leaf != null && expected != null && leaf.compareAndSet(key & (LEAF_SIZE - 1), expected, update);
+    }
+
+    /**
+     * Removes the value only if it is still expected, compared by identity.
+     * @return true if it was removed.
+     */
+    public boolean remove(int key, V expected) {
+        checkKey(key);
+        AtomicReferenceArray<V> leaf = leaf(key, false);
+        if (leaf != null && expected != null && leaf.compareAndSet(key & (LEAF_SIZE - 1), expected, null)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /** @return how many keys have a value; exact when no write is in progress. */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Visits every value in ascending key order. Weakly consistent like the java.util.concurrent iterators: it sees
+     * every value that was present for the whole walk and may or may not see the ones written during it.
+     * @param action called with the value and its key.
+     */
+    public void forEach(ObjIntConsumer<V> action) {
+        for (int topIndex = 0; topIndex < TOP_SIZE; topIndex++) {
+            AtomicReferenceArray<AtomicReferenceArray<V>> mid = top.get(topIndex);
+            if (mid == null) {
+                continue;
+            }
+            for (int midIndex = 0; midIndex < MID_SIZE; midIndex++) {
+                AtomicReferenceArray<V> leaf = mid.get(midIndex);
+                if (leaf == null) {
+                    continue;
+                }
+                int base = (topIndex << (LEAF_BITS + MID_BITS)) | (midIndex << LEAF_BITS);
+                for (int slot = 0; slot < LEAF_SIZE; slot++) {
+                    V value = leaf.get(slot);
+                    if (value != null) {
+                        action.accept(value, base | slot);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Drops every value. Not atomic: writes that run at the same time may survive it. */
+    public void clear() {
+        for (int topIndex = 0; topIndex < TOP_SIZE; topIndex++) {
+            top.set(topIndex, null);
+        }
+        size.set(0);
+    }
+}
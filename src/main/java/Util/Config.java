@@ -0,0 +1,106 @@
+package Util;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+
+/**
+ * Reads runtime settings. A setting named "ratelimit.login.burst" is looked up first as the JVM system property
+ * -Dratelimit.login.burst=..., then as the environment variable RATELIMIT_LOGIN_BURST, then in the optional
+ * properties file named by config.file / CONFIG_FILE, and otherwise the default passed by the caller is used.
+ * System properties and the environment are not cached, so tests can change a system property between app starts.
+ */
+public class Config {
+
+    // loaded once, on first use
+    private static Properties fileProperties;
+
+    private Config() {
+    }
+
+    private static synchronized Properties fileProperties() {
+        if (fileProperties == null) {
+            fileProperties = new Properties();
+            String path = System.getProperty("config.file", System.getenv("CONFIG_FILE"));
+            if (path != null && !path.isBlank()) {
+                try (Reader reader = new FileReader(path)) {
+                    fileProperties.load(reader);
+                } catch (IOException e) {
+                    System.out.println("Could not read config file " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        return fileProperties;
+    }
+
+    /**
+     * @param key dotted setting name, e.g. "ratelimit.login.burst".
+     * @return the configured value, or null if the setting is not set anywhere.
+     */
+    public static String get(String key) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(key.toUpperCase().replace('.', '_').replace('-', '_'));
+        }
+        if (value == null) {
+            value = fileProperties().getProperty(key);
+        }
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        String value = get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("yes");
+    }
+}
@@ -1,9 +1,10 @@
 package Util;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
@@ -18,18 +19,19 @@ import org.h2.tools.RunScript;
 public class ConnectionUtil {
 
 	/**
-	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * url will represent our connection string. By default a file location to store
+	 * the data, "jdbc:h2:./h2/db;"; mode and cache settings come from db.* config,
+	 * see DatabaseConfig
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = DatabaseConfig.url();
 	/**
 	 * Default username for connecting to h2
 	 */
-	private static String username = "sa";
+	private static String username = DatabaseConfig.user();
 	/**
 	 * Default password for connecting to h2
 	 */
-	private static String password = "sa";
+	private static String password = DatabaseConfig.password();
 
 	/**
 	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
@@ -45,6 +47,13 @@ public class ConnectionUtil {
 		pool.setPassword(password);
 	}
 
+	/**
+	 * @return the URL connections are made to, for diagnostics; it holds no credentials
+	 */
+	public static String getUrl() {
+		return url;
+	}
+
 	/**
 	 * @return an active connection to the database
 	 */
@@ -58,17 +67,49 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * Flushes everything H2 has buffered to disk and closes the database, which also closes every connection
+	 * that was handed out by getConnection() and never closed. Called as the last step of a graceful shutdown;
+	 * a later getConnection() simply reopens the database.
+	 */
+	public static void shutdown() {
+		Connection connection = getConnection();
+		if (connection == null) {
+			return;
+		}
+		try {
+			Statement statement = connection.createStatement();
+			statement.execute("CHECKPOINT SYNC");
+			statement.execute("SHUTDOWN");
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file from the classpath, then apply the schema migrations on top of the
+	 * recreated tables. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection = getConnection();
 		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+			RunScript.execute(connection, new InputStreamReader(
+					ConnectionUtil.class.getResourceAsStream("/SocialMedia.sql"), StandardCharsets.UTF_8));
+			// the tables are new, so none of the recorded migrations are in them any more
+			Statement statement = connection.createStatement();
+			statement.execute("DROP TABLE IF EXISTS schema_version");
+			statement.close();
+		} catch (SQLException e) {
 			e.printStackTrace();
+		} finally {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
 		}
+		SchemaMigrator.migrate(new StartupTimer());
 	}
 }
@@ -0,0 +1,81 @@
+package Util;
+
+/**
+ * Builds the H2 connection URL from Config, so storage and cache settings can come from system properties,
+ * environment variables or a config file:
+ *
+ *  db.url                       complete JDBC URL, overrides every other db.* setting below
+ *  db.mode                      file, or mem for a database that lives only as long as the JVM (file)
+ *  db.path                      database file for file mode, without the .mv.db suffix (./h2/db)
+ *  db.name                      database name for mem mode (socialmedia)
+ *  db.user / db.password        credentials (sa / sa)
+ *  db.cache-size-kb             MVStore page cache, H2's CACHE_SIZE (H2 default: 16 MB)
+ *  db.lock-timeout-ms           how long a statement waits for a row lock, LOCK_TIMEOUT
+ *  db.write-delay-ms            how long committed changes may wait before being written, WRITE_DELAY
+ *  db.retention-time-ms         how long old MVStore chunks are kept before reuse, RETENTION_TIME
+ *  db.compress                  compress MVStore pages, COMPRESS (false)
+ *  db.auto-compact-fill-rate    compact the file in the background below this fill rate %, AUTO_COMPACT_FILL_RATE
+ *  db.max-compact-time-ms       time spent compacting when the database closes, MAX_COMPACT_TIME
+ *  db.options                   anything else, appended as is, e.g. "TRACE_LEVEL_FILE=0;MAX_MEMORY_ROWS=100000"
+ *  db.migrate.enabled           apply pending schema migrations at startup, see SchemaMigrator (true)
+ *
+ * Settings left unset are left to H2, so an unconfigured database behaves as before.
+ */
+public class DatabaseConfig {
+
+    private DatabaseConfig() {
+    }
+
+    /** @return true if db.mode is mem and db.url is not set. */
+    public static boolean isInMemory() {
+        return Config.get("db.url") == null && Config.getString("db.mode", "file").equalsIgnoreCase("mem");
+    }
+
+    public static String user() {
+        return Config.getString("db.user", "sa");
+    }
+
+    public static String password() {
+        return Config.getString("db.password", "sa");
+    }
+
+    /** @return the JDBC URL for the configured mode and settings. */
+    public static String url() {
+        String url = Config.get("db.url");
+        if (url != null) {
+            return url;
+        }
+        String mode = Config.getString("db.mode", "file");
+        StringBuilder builder = new StringBuilder();
+        if (mode.equalsIgnoreCase("mem")) {
+            // kept until the JVM exits instead of being dropped with its last connection
+            builder.append("jdbc:h2:mem:").append(Config.getString("db.name", "socialmedia")).append(";DB_CLOSE_DELAY=-1;");
+        } else if (mode.equalsIgnoreCase("file")) {
+            builder.append("jdbc:h2:").append(Config.getString("db.path", "./h2/db")).append(';');
+        } else {
+            throw new IllegalArgumentException("db.mode must be file or mem, not " + mode);
+        }
+        appendSetting(builder, "CACHE_SIZE", "db.cache-size-kb");
+        appendSetting(builder, "LOCK_TIMEOUT", "db.lock-timeout-ms");
+        appendSetting(builder, "WRITE_DELAY", "db.write-delay-ms");
+        appendSetting(builder, "RETENTION_TIME", "db.retention-time-ms");
+        appendSetting(builder, "COMPRESS", "db.compress");
+        appendSetting(builder, "AUTO_COMPACT_FILL_RATE", "db.auto-compact-fill-rate");
+        appendSetting(builder, "MAX_COMPACT_TIME", "db.max-compact-time-ms");
+        String options = Config.get("db.options");
+        if (options != null && !options.isBlank()) {
+            builder.append(options.trim());
+            if (!options.trim().endsWith(";")) {
+                builder.append(';');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendSetting(StringBuilder url, String h2Name, String key) {
+        String value = Config.get(key);
+        if (value != null && !value.isBlank()) {
+            url.append(h2Name).append('=').append(value.trim()).append(';');
+        }
+    }
+}
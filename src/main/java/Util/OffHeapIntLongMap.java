@@ -0,0 +1,158 @@
+package Util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Open-addressing hash map from int keys to long values stored in a direct ByteBuffer, so millions of entries cost
+ * 12 bytes each outside the Java heap and no boxing. Linear probing; removed slots are marked and reused, and the
+ * table is rebuilt when live plus removed slots pass 70%, at twice the size unless most of them were removed.
+ *
+ * Not thread safe; callers guard it with their own lock.
+ */
+public class OffHeapIntLongMap {
+    private static final int EMPTY = Integer.MIN_VALUE;
+    private static final int REMOVED = Integer.MIN_VALUE + 1;
+    private static final int ENTRY_BYTES = 12;
+
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+    private int removed;
+
+    public OffHeapIntLongMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        table = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES);
+        for (int slot = 0; slot < capacity; slot++) {
+            table.putInt(slot * ENTRY_BYTES, EMPTY);
+        }
+        size = 0;
+        removed = 0;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the value, or missingValue if the key is not present.
+     */
+    public long get(int key, long missingValue) {
+        checkKey(key);
+        int mask = capacity - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int stored = table.getInt(slot * ENTRY_BYTES);
+            if (stored == key) {
+                return table.getLong(slot * ENTRY_BYTES + 4);
+            }
+            if (stored == EMPTY) {
+                return missingValue;
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        checkKey(key);
+        return getSlot(key) >= 0;
+    }
+
+    private int getSlot(int key) {
+        int mask = capacity - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int stored = table.getInt(slot * ENTRY_BYTES);
+            if (stored == key) {
+                return slot;
+            }
+            if (stored == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    public void put(int key, long value) {
+        checkKey(key);
+        if ((size + removed + 1) * 10 > capacity * 7) {
+            // mostly removed slots: rebuild at the same size, otherwise grow
+            rehash(size + 1 > capacity / 3 ? capacity * 2 : capacity);
+        }
+        int mask = capacity - 1;
+        int firstRemoved = -1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int stored = table.getInt(slot * ENTRY_BYTES);
+            if (stored == key) {
+                table.putLong(slot * ENTRY_BYTES + 4, value);
+                return;
+            }
+            if (stored == REMOVED && firstRemoved < 0) {
+                firstRemoved = slot;
+            }
+            if (stored == EMPTY) {
+                int target = firstRemoved >= 0 ? firstRemoved : slot;
+                if (target == firstRemoved) {
+                    removed--;
+                }
+                table.putInt(target * ENTRY_BYTES, key);
+                table.putLong(target * ENTRY_BYTES + 4, value);
+                size++;
+                return;
+            }
+        }
+    }
+
+    /** @return true if the key was present. */
+    public boolean remove(int key) {
+        checkKey(key);
+        int slot = getSlot(key);
+        if (slot < 0) {
+            return false;
+        }
+        table.putInt(slot * ENTRY_BYTES, REMOVED);
+        size--;
+        removed++;
+        return true;
+    }
+
+    private void rehash(int newCapacity) {
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int key = old.getInt(slot * ENTRY_BYTES);
+            if (key != EMPTY && key != REMOVED) {
+                put(key, old.getLong(slot * ENTRY_BYTES + 4));
+            }
+        }
+    }
+
+    public void clear() {
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Calls the visitor for every entry, in no particular order. */
+    public void forEach(IntLongConsumer visitor) {
+        for (int slot = 0; slot < capacity; slot++) {
+            int key = table.getInt(slot * ENTRY_BYTES);
+            if (key != EMPTY && key != REMOVED) {
+                visitor.accept(key, table.getLong(slot * ENTRY_BYTES + 4));
+            }
+        }
+    }
+
+    public interface IntLongConsumer {
+        void accept(int key, long value);
+    }
+
+    private static void checkKey(int key) {
+        if (key == EMPTY || key == REMOVED) {
+            throw new IllegalArgumentException("reserved key " + key);
+        }
+    }
+}
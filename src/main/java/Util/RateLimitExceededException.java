@@ -0,0 +1,21 @@
+package Util;
+
+/**
+ * Thrown by a before-handler when a client has used up its rate limit. The controller turns it into a
+ * 429 Too Many Requests response with a Retry-After header.
+ */
+public class RateLimitExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String limiter, long retryAfterSeconds) {
+        super("Rate limit exceeded for " + limiter);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /** @return whole seconds the client should wait before retrying, at least 1. */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,155 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket rate limiter keyed by client (IP address, account, ...).
+ *
+ * Each key allows `burst` requests at once and then refills at `permitsPerSecond`. A bucket is stored as a single
+ * long, its "theoretical arrival time" (the GCRA form of a token bucket), and updated with compare-and-set, so
+ * callers never block each other. Buckets live in a ConcurrentHashMap, which already spreads keys over independent
+ * bins. A bucket that has fully refilled behaves exactly like a brand new one, so such idle buckets are swept away
+ * to keep memory bounded; if more than `maxKeys` clients are active at once, the extra ones share one overflow
+ * bucket instead of growing the map.
+ */
+public class RateLimiter {
+    private static final int SWEEP_EVERY = 1024;
+
+    private final String name;
+    private final double permitsPerSecond;
+    private final int burst;
+    private final int maxKeys;
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket overflow;
+    private final AtomicLong acquiresSinceSweep = new AtomicLong();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    private static class Bucket {
+        // the time at which the bucket will be full again, in System.nanoTime() units
+        final AtomicLong fullAt;
+        final LongAdder throttled = new LongAdder();
+
+        Bucket(long now) {
+            this.fullAt = new AtomicLong(now);
+        }
+    }
+
+    /**
+     * @param name used when reporting, e.g. the route this limiter protects.
+     * @param permitsPerSecond sustained rate allowed per key.
+     * @param burst how many requests a key may make at once after being idle.
+     * @param maxKeys how many keys are tracked individually before new keys share the overflow bucket.
+     */
+    public RateLimiter(String name, double permitsPerSecond, int burst, int maxKeys) {
+        if (permitsPerSecond <= 0 || burst < 1 || maxKeys < 1) {
+            throw new IllegalArgumentException("rate limiter " + name + " needs a positive rate, burst and key limit");
+        }
+        this.name = name;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxKeys = maxKeys;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.overflow = new Bucket(System.nanoTime());
+    }
+
+    /**
+     * Builds a limiter from the settings ratelimit.{name}.per-second, ratelimit.{name}.burst and
+     * ratelimit.max-keys, falling back to the given defaults.
+     */
+    public static RateLimiter fromConfig(String name, double defaultPerSecond, int defaultBurst) {
+        return new RateLimiter(name,
+                Config.getDouble("ratelimit." + name + ".per-second", defaultPerSecond),
+                Config.getInt("ratelimit." + name + ".burst", defaultBurst),
+                Config.getInt("ratelimit.max-keys", 100_000));
+    }
+
+    /**
+     * Takes one permit for the key if one is available.
+     * @param key the client to charge, e.g. an IP address.
+     * @return 0 if the request may proceed, otherwise how many nanoseconds until a permit becomes available.
+     */
+    public long tryAcquire(String key) {
+        return tryAcquire(key, 1);
+    }
+
+    /**
+     * Takes several permits for the key at once, for requests that cost more than one, e.g. bulk imports. A charge
+     * above the burst is taken as the burst: a full bucket never holds more, so it could otherwise never proceed.
+     * @return 0 if the request may proceed, otherwise how many nanoseconds until the permits become available.
+     */
+    public long tryAcquire(String key, int permits) {
+        permits = Math.max(1, Math.min(permits, burst));
+        long now = System.nanoTime();
+        Bucket bucket = bucketFor(key, now);
+        while (true) {
+            long fullAt = bucket.fullAt.get();
+            long next = Math.max(fullAt, now) + intervalNanos * permits;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                bucket.throttled.increment();
+                throttled.increment();
+                return wait;
+            }
+            if (bucket.fullAt.compareAndSet(fullAt, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    private Bucket bucketFor(String key, long now) {
+        if (acquiresSinceSweep.incrementAndGet() % SWEEP_EVERY == 0) {
+            sweep(now);
+        }
+        Bucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys) {
+            return overflow;
+        }
+        return buckets.computeIfAbsent(key, k -> new Bucket(now));
+    }
+
+    /** Drops buckets that have fully refilled, they are indistinguishable from a new bucket. */
+    private void sweep(long now) {
+        buckets.entrySet().removeIf(entry -> entry.getValue().fullAt.get() - now <= 0);
+    }
+
+    /**
+     * @return counters for the metrics endpoint. Only counts: the keys are client IPs and usernames, and the
+     *         endpoint is not authenticated.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("name", name);
+        snapshot.put("per_second", permitsPerSecond);
+        snapshot.put("burst", burst);
+        snapshot.put("allowed", allowed.sum());
+        snapshot.put("throttled", throttled.sum());
+        snapshot.put("tracked_keys", buckets.size());
+        int throttledKeys = 0;
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.throttled.sum() > 0) {
+                throttledKeys++;
+            }
+        }
+        snapshot.put("throttled_keys", throttledKeys);
+        snapshot.put("overflow_throttled", overflow.throttled.sum());
+        return snapshot;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,179 @@
+package Util;
+
+import org.h2.tools.RunScript;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Brings the database schema up to date at startup by applying the versioned scripts under db/migration on the
+ * classpath, listed in order in db/migration/index and named V{version}__{description}.sql.
+ *
+ * Each applied version is recorded in the schema_version table with a checksum of its script, so a restart only
+ * runs the versions it has not seen and an up to date database costs one query. Scripts are never re-run or
+ * undone, so they must only add (create ... if not exists); a database created by SocialMedia.sql before this
+ * existed takes V1 as a no-op. A script that changed after it was applied stops startup, since the database no
+ * longer matches what the code expects, unless db.migrate.validate is false.
+ */
+public class SchemaMigrator {
+    private static final String DIRECTORY = "/db/migration/";
+
+    /** One script from the index. */
+    static final class Migration {
+        final int version;
+        final String description;
+        final String script;
+        final int checksum;
+
+        Migration(String fileName, String script) {
+            int separator = fileName.indexOf("__");
+            if (!fileName.startsWith("V") || separator < 0 || !fileName.endsWith(".sql")) {
+                throw new IllegalStateException("migration " + fileName + " is not named V{version}__{description}.sql");
+            }
+            this.version = Integer.parseInt(fileName.substring(1, separator));
+            this.description = fileName.substring(separator + 2, fileName.length() - 4).replace('_', ' ');
+            this.script = script;
+            CRC32 crc = new CRC32();
+            crc.update(script.getBytes(StandardCharsets.UTF_8));
+            this.checksum = (int) crc.getValue();
+        }
+    }
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies every pending migration, each as its own timed startup phase.
+     * @param timer records "migrate V{version}" phases, shown by GET /ready.
+     * @return the versions that were applied now, empty if the schema was already current.
+     */
+    public static List<Integer> migrate(StartupTimer timer) {
+        List<Migration> migrations = load();
+        List<Integer> applied = new ArrayList<>();
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                    + "version INT PRIMARY KEY, description VARCHAR(255), checksum INT, "
+                    + "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, duration_ms BIGINT)");
+            statement.close();
+            Map<Integer, Integer> checksums = appliedChecksums(connection);
+            for (Migration migration : migrations) {
+                Integer checksum = checksums.get(migration.version);
+                if (checksum != null) {
+                    if (checksum != migration.checksum && Config.getBoolean("db.migrate.validate", true)) {
+                        throw new IllegalStateException("migration V" + migration.version + " (" + migration.description
+                                + ") changed after it was applied; add a new migration instead");
+                    }
+                    continue;
+                }
+                timer.time("migrate V" + migration.version, () -> apply(connection, migration));
+                applied.add(migration.version);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("could not migrate the database schema: " + e.getMessage(), e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+        System.out.println(applied.isEmpty()
+                ? "Database schema is up to date at V" + migrations.get(migrations.size() - 1).version
+                : "Applied schema migrations " + applied);
+        return applied;
+    }
+
+    private static Map<Integer, Integer> appliedChecksums(Connection connection) throws SQLException {
+        Map<Integer, Integer> checksums = new HashMap<>();
+        PreparedStatement preparedStatement = null;
+        ResultSet rs = null;
+        try {
+            preparedStatement = connection.prepareStatement("SELECT version, checksum FROM schema_version");
+            rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                checksums.put(rs.getInt(1), rs.getInt(2));
+            }
+        } finally {
+            if (rs != null) rs.close();
+            if (preparedStatement != null) preparedStatement.close();
+        }
+        return checksums;
+    }
+
+    /** Runs the script and records it; H2 commits DDL as it goes, the record is written last. */
+    private static void apply(Connection connection, Migration migration) {
+        long begin = System.nanoTime();
+        PreparedStatement preparedStatement = null;
+        try {
+            RunScript.execute(connection, new StringReader(migration.script));
+            preparedStatement = connection.prepareStatement(
+                    "INSERT INTO schema_version (version, description, checksum, duration_ms) VALUES (?, ?, ?, ?)");
+            preparedStatement.setInt(1, migration.version);
+            preparedStatement.setString(2, migration.description);
+            preparedStatement.setInt(3, migration.checksum);
+            preparedStatement.setLong(4, (System.nanoTime() - begin) / 1_000_000);
+            preparedStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("migration V" + migration.version + " (" + migration.description + ") failed: " + e.getMessage(), e);
+        } finally {
+            try {
+                if (preparedStatement != null) preparedStatement.close();
+            } catch (SQLException e) {
+                System.out.println("Error closing resources: " + e.getMessage());
+            }
+        }
+    }
+
+    /** @return the migrations in the index, in order, checked to have increasing versions. */
+    static List<Migration> load() {
+        List<Migration> migrations = new ArrayList<>();
+        for (String line : read("index").split("\n")) {
+            String fileName = line.trim();
+            if (fileName.isEmpty() || fileName.startsWith("#")) {
+                continue;
+            }
+            Migration migration = new Migration(fileName, read(fileName));
+            if (!migrations.isEmpty() && migration.version <= migrations.get(migrations.size() - 1).version) {
+                throw new IllegalStateException("migration " + fileName + " is out of order in " + DIRECTORY + "index");
+            }
+            migrations.add(migration);
+        }
+        if (migrations.isEmpty()) {
+            throw new IllegalStateException("no migrations listed in " + DIRECTORY + "index");
+        }
+        return migrations;
+    }
+
+    private static String read(String name) {
+        InputStream in = SchemaMigrator.class.getResourceAsStream(DIRECTORY + name);
+        if (in == null) {
+            throw new IllegalStateException("missing " + DIRECTORY + name + " on the classpath");
+        }
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read " + DIRECTORY + name, e);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package Util;
+
+import io.javalin.Javalin;
+import io.javalin.config.JavalinConfig;
+
+import org.eclipse.jetty.http.UriCompliance;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.LowResourceMonitor;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Tuning for the embedded Jetty server behind Javalin, read through Config so it can come from system
+ * properties, environment variables or a config file:
+ *
+ *  server.port                    port used by Main and by app.start() without a port (8080)
+ *  server.threads.max / .min      request thread pool size (250 / 8)
+ *  server.threads.idle-timeout-ms how long an idle pool thread is kept (60000)
+ *  server.acceptors               acceptor threads, -1 lets Jetty choose from the CPU count (-1)
+ *  server.selectors               selector threads, -1 lets Jetty choose from the CPU count (-1)
+ *  server.idle-timeout-ms         how long an idle keep-alive connection is kept open (30000)
+ *  server.request-header-size     largest accepted request line + headers in bytes (8192)
+ *  server.max-request-size        largest accepted request body in bytes (1000000)
+ *  server.h2c                     also speak cleartext HTTP/2 on the same port (false)
+ *
+ * Javalin builds the server and its connector itself unless one of these settings is given: a server.threads.*
+ * setting replaces the server, one of the connector settings (server.acceptors to server.h2c) the connector. An
+ * unconfigured server therefore behaves exactly as Javalin's own, which also runs the requests on virtual threads
+ * where Loom is available. A replaced server keeps what Javalin adds to its own, the LowResourceMonitor and the
+ * StatisticsHandler, and the defaults above are Javalin's and Jetty's, so only the settings given change.
+ */
+public class ServerConfig {
+    private static final String[] THREAD_POOL_KEYS = {
+            "server.threads.max", "server.threads.min", "server.threads.idle-timeout-ms" };
+    private static final String[] CONNECTOR_KEYS = {
+            "server.acceptors", "server.selectors", "server.idle-timeout-ms", "server.request-header-size", "server.h2c" };
+
+    private ServerConfig() {
+    }
+
+    /** @return the port Main should listen on. */
+    public static int port() {
+        return Config.getInt("server.port", 8080);
+    }
+
+    /** Applies the request limits, and the thread pool if one is configured. Call from Javalin.create(config -> ...). */
+    public static void configure(JavalinConfig config) {
+        config.http.maxRequestSize = Config.getLong("server.max-request-size", 1_000_000L);
+        if (!anySet(THREAD_POOL_KEYS)) {
+            return;
+        }
+        config.jetty.server(() -> {
+            QueuedThreadPool threadPool = new QueuedThreadPool(
+                    Config.getInt("server.threads.max", 250),
+                    Config.getInt("server.threads.min", 8),
+                    Config.getInt("server.threads.idle-timeout-ms", 60_000));
+            threadPool.setName("JettyServerThreadPool");
+            // what Javalin adds to the server it creates itself
+            Server server = new Server(threadPool);
+            server.addBean(new LowResourceMonitor(server));
+            server.insertHandler(new StatisticsHandler());
+            return server;
+        });
+    }
+
+    /**
+     * Installs the tuned connector just before the server starts, if one is configured. Javalin only knows the port
+     * at that point, and it only creates its own default connector when the server has none.
+     */
+    public static void installConnector(Javalin app) {
+        if (!anySet(CONNECTOR_KEYS)) {
+            return;
+        }
+        app.events(event -> event.serverStarting(() -> {
+            Server server = app.jettyServer().server();
+            int port = app.port() >= 0 ? app.port() : port();
+            server.setConnectors(new Connector[] { createConnector(server, port) });
+        }));
+    }
+
+    private static boolean anySet(String[] keys) {
+        for (String key : keys) {
+            if (Config.get(key) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ServerConnector createConnector(Server server, int port) {
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setRequestHeaderSize(Config.getInt("server.request-header-size", 8192));
+        httpConfig.setSendServerVersion(false);
+        // as on Javalin's default connector
+        httpConfig.setUriCompliance(UriCompliance.RFC3986);
+
+        int acceptors = Config.getInt("server.acceptors", -1);
+        int selectors = Config.getInt("server.selectors", -1);
+        ServerConnector connector;
+        if (Config.getBoolean("server.h2c", false)) {
+            // HTTP/1.1 first so plain clients keep working; HTTP/2 via prior knowledge or Upgrade: h2c
+            connector = new ServerConnector(server, acceptors, selectors,
+                    new HttpConnectionFactory(httpConfig), new HTTP2CServerConnectionFactory(httpConfig));
+        } else {
+            connector = new ServerConnector(server, acceptors, selectors, new HttpConnectionFactory(httpConfig));
+        }
+        connector.setPort(port);
+        connector.setIdleTimeout(Config.getLong("server.idle-timeout-ms", 30_000));
+        return connector;
+    }
+}
@@ -0,0 +1,62 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the shutdown sequence as an ordered list of named steps, e.g. stop accepting, drain, flush, close.
+ *
+ * Steps run one after the other in the order they were registered, each is timed and printed, and a step that
+ * fails is reported without stopping the steps after it, so a problem draining requests never prevents the database
+ * from being checkpointed. The sequence runs at most once even if both a shutdown hook and the app trigger it.
+ */
+public class ShutdownCoordinator {
+    private final List<String> names = new ArrayList<>();
+    private final List<Runnable> steps = new ArrayList<>();
+    private final Map<String, Long> stepMillis = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    /** Adds a step to the end of the sequence. */
+    public synchronized ShutdownCoordinator register(String name, Runnable step) {
+        names.add(name);
+        steps.add(step);
+        return this;
+    }
+
+    /** Runs every registered step once, in order. Later calls return immediately. */
+    public void run() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        List<String> runNames;
+        List<Runnable> runSteps;
+        synchronized (this) {
+            runNames = new ArrayList<>(names);
+            runSteps = new ArrayList<>(steps);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < runSteps.size(); i++) {
+            long stepBegin = System.nanoTime();
+            try {
+                runSteps.get(i).run();
+            } catch (RuntimeException e) {
+                System.out.println("Shutdown step '" + runNames.get(i) + "' failed: " + e.getMessage());
+            }
+            long millis = (System.nanoTime() - stepBegin) / 1_000_000;
+            stepMillis.put(runNames.get(i), millis);
+            System.out.println("Shutdown step '" + runNames.get(i) + "' took " + millis + " ms");
+        }
+        System.out.println("Shutdown finished in " + (System.nanoTime() - begin) / 1_000_000 + " ms");
+    }
+
+    /** @return step name to duration in ms for the steps that have run so far. */
+    public Map<String, Long> stepTimings() {
+        synchronized (stepMillis) {
+            return new LinkedHashMap<>(stepMillis);
+        }
+    }
+}
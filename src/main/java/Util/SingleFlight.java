@@ -0,0 +1,80 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one: the first caller runs the loader, everyone who asks for the
+ * key while it is running waits for and shares its result. Nothing is kept once the call finishes, this is not a
+ * cache.
+ *
+ * A write should call forget(key) once it is done, so that callers arriving afterwards do not join a read that
+ * started before the write and could return the old value.
+ */
+public class SingleFlight<K, V> {
+    private final String name;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the loader's result, from this caller's run or from the run already in flight for the key.
+     * @throws RuntimeException whatever the loader threw, to every caller that shared the run.
+     */
+    public V load(K key, Supplier<V> loader) {
+        calls.increment();
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /** Makes the next caller for this key start a new run instead of joining the one in flight. */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /** Forgets every key, for writes that affect all of them. */
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    /** @return counters for the metrics endpoint. */
+    public Map<String, Object> snapshot() {
+        long calls = this.calls.sum();
+        long coalesced = this.coalesced.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("name", name);
+        snapshot.put("calls", calls);
+        snapshot.put("executions", calls - coalesced);
+        snapshot.put("coalesced", coalesced);
+        snapshot.put("coalesced_ratio", calls == 0 ? 0.0 : (double) coalesced / calls);
+        snapshot.put("in_flight", inFlight.size());
+        return snapshot;
+    }
+}
@@ -0,0 +1,52 @@
+package Util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Measures how long each startup phase takes so time-to-ready can be tracked between releases.
+ * Every phase is printed as it finishes and the full breakdown is reported by GET /ready.
+ */
+public class StartupTimer {
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> phaseMillis = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /** Runs one phase and records its duration. */
+    public <T> T time(String phase, Supplier<T> work) {
+        long begin = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(phase, begin);
+        }
+    }
+
+    public void time(String phase, Runnable work) {
+        long begin = System.nanoTime();
+        try {
+            work.run();
+        } finally {
+            record(phase, begin);
+        }
+    }
+
+    private void record(String phase, long beginNanos) {
+        long millis = (System.nanoTime() - beginNanos) / 1_000_000;
+        phaseMillis.put(phase, millis);
+        System.out.println("Startup phase '" + phase + "' took " + millis + " ms");
+    }
+
+    /** @return milliseconds since this timer was created, i.e. since the process began starting up. */
+    public long elapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /** @return phase name to duration in ms, in the order the phases ran. */
+    public Map<String, Long> phases() {
+        synchronized (phaseMillis) {
+            return new LinkedHashMap<>(phaseMillis);
+        }
+    }
+}
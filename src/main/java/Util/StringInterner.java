@@ -0,0 +1,108 @@
+package Util;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, lock-free pool that makes equal strings share one instance, for texts that are cached many times over
+ * (bot spam, templated posts). Unlike String.intern() it never grows past its capacity and never keeps a string
+ * alive: each slot holds a WeakReference, so a pooled string is collected once nothing else uses it.
+ *
+ * The table is direct-mapped by hash: a string that maps to an occupied slot with a different string replaces it,
+ * so the frequent strings of a skewed workload win their slots back and rare ones come and go. A lost dedup only
+ * costs memory, never correctness, since intern always returns a string equal to its argument.
+ *
+ * Counts lookups, hits and an estimate of the heap the hits saved: the duplicate String and its byte array, which
+ * become garbage because the caller keeps the pooled instance instead.
+ */
+public class StringInterner {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final AtomicReferenceArray<WeakReference<String>> table;
+    private final int mask;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /** @param capacity most strings pooled at once, rounded up to a power of two. */
+    public StringInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        table = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * @return a pool of cache.intern.capacity (65536) strings if cache.intern.enabled is set, otherwise null.
+     */
+    public static StringInterner fromConfig() {
+        if (!Config.getBoolean("cache.intern.enabled", false)) {
+            return null;
+        }
+        return new StringInterner(Config.getInt("cache.intern.capacity", DEFAULT_CAPACITY));
+    }
+
+    /** @return the pooled instance equal to text if there is one, otherwise text itself, now pooled. */
+    public String intern(String text) {
+        if (text == null) {
+            return null;
+        }
+        lookups.increment();
+        int hash = text.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        WeakReference<String> reference = table.get(slot);
+        String pooled = reference == null ? null : reference.get();
+        if (pooled != null && pooled.equals(text)) {
+            if (pooled != text) {
+                hits.increment();
+                bytesSaved.add(estimatedSize(text));
+            }
+            return pooled;
+        }
+        table.set(slot, new WeakReference<>(text));
+        return text;
+    }
+
+    /**
+     * @return roughly what the String costs on a 64-bit JVM with compressed oops and compact strings: a 24 byte
+     *         object plus a byte array of one byte per char for Latin-1 text and two otherwise.
+     */
+    public static long estimatedSize(String text) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        long array = 16 + (long) text.length() * bytesPerChar;
+        return 24 + ((array + 7) & ~7L);
+    }
+
+    public long lookups() {
+        return lookups.sum();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long estimatedBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    /** @return counters for the metrics endpoint. */
+    public Map<String, Object> snapshot() {
+        long lookups = lookups();
+        long hits = hits();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("capacity", table.length());
+        snapshot.put("lookups", lookups);
+        snapshot.put("hits", hits);
+        snapshot.put("hit_ratio", lookups == 0 ? 0.0 : (double) hits / lookups);
+        snapshot.put("estimated_bytes_saved", estimatedBytesSaved());
+        return snapshot;
+    }
+}
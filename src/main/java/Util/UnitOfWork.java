@@ -0,0 +1,167 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Binds one database connection to the current thread for the length of a service operation, so every DAO call
+ * in it shares the connection and its transaction, which is committed once at the end (one commit and one
+ * connection instead of one per statement) and closed afterwards.
+ *
+ * DAOs get their connection from connection(); outside inTransaction that is a fresh autocommit connection from
+ * ConnectionUtil, as before. A unit of work started inside another one joins it. The work is rolled back if it
+ * throws, DAO methods that catch their own SQLException do not roll anything back. Writes outside the database
+ * are deferred to the commit with afterCommit.
+ *
+ * The default isolation level is db.isolation (READ_COMMITTED); READ_UNCOMMITTED, REPEATABLE_READ and
+ * SERIALIZABLE are also accepted.
+ */
+public final class UnitOfWork {
+    private static final ThreadLocal<Connection> CURRENT = new ThreadLocal<>();
+    // actions waiting for the current unit of work to commit, see afterCommit
+    private static final ThreadLocal<List<Runnable>> AFTER_COMMIT = new ThreadLocal<>();
+    private static final int DEFAULT_ISOLATION = parseIsolation(Config.getString("db.isolation", "READ_COMMITTED"));
+    private static final LongAdder committed = new LongAdder();
+    private static final LongAdder rolledBack = new LongAdder();
+    private static final LongAdder joined = new LongAdder();
+
+    /** The work of a unit, allowed to throw one checked exception type, e.g. IOException while streaming. */
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private UnitOfWork() {
+    }
+
+    /** @return the connection bound to this thread, or a new autocommit connection if there is none. */
+    public static Connection connection() {
+        Connection connection = CURRENT.get();
+        return connection != null ? connection : ConnectionUtil.getConnection();
+    }
+
+    /**
+     * Runs the action once the current unit of work has committed, or right away outside one; it is dropped if the
+     * unit rolls back. For writes outside the database, e.g. to the message archive, that must not outlive a
+     * transaction that did not commit. An action that throws is reported and does not stop the others.
+     */
+    public static void afterCommit(Runnable action) {
+        List<Runnable> actions = AFTER_COMMIT.get();
+        if (actions == null) {
+            action.run();
+        } else {
+            actions.add(action);
+        }
+    }
+
+    /** @return true if this thread is inside inTransaction. */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /** Runs the work in a transaction at the default isolation level, see inTransaction(int, Work). */
+    public static <T, E extends Exception> T inTransaction(Work<T, E> work) throws E {
+        return inTransaction(DEFAULT_ISOLATION, work);
+    }
+
+    /**
+     * Runs the work with one connection bound to this thread and commits once when it returns.
+     * @param isolation a java.sql.Connection TRANSACTION_* level, ignored when joining an outer unit of work.
+     * @return what the work returned.
+     * @throws E whatever the work threw, unchanged, after rolling back.
+     * @throws IllegalStateException if the transaction could not be started or committed; nothing the work wrote
+     *         was kept.
+     */
+    public static <T, E extends Exception> T inTransaction(int isolation, Work<T, E> work) throws E {
+        if (CURRENT.get() != null) {
+            joined.increment();
+            return work.run();
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        if (connection == null) {
+            // ConnectionUtil already reported why; let the DAOs fail the way they always have
+            return work.run();
+        }
+        CURRENT.set(connection);
+        List<Runnable> afterCommit = new ArrayList<>();
+        AFTER_COMMIT.set(afterCommit);
+        boolean done = false;
+        T result;
+        try {
+            try {
+                connection.setAutoCommit(false);
+                connection.setTransactionIsolation(isolation);
+            } catch (SQLException e) {
+                throw new IllegalStateException("could not start unit of work: " + e.getMessage(), e);
+            }
+            result = work.run();
+            try {
+                connection.commit();
+            } catch (SQLException e) {
+                throw new IllegalStateException("could not commit unit of work: " + e.getMessage(), e);
+            }
+            committed.increment();
+            done = true;
+        } finally {
+            CURRENT.remove();
+            AFTER_COMMIT.remove();
+            if (!done) {
+                rollback(connection);
+            }
+            close(connection);
+        }
+        for (Runnable action : afterCommit) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error running an action after commit: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static void rollback(Connection connection) {
+        rolledBack.increment();
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.out.println("Error rolling back unit of work: " + e.getMessage());
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing resources: " + e.getMessage());
+        }
+    }
+
+    static int parseIsolation(String name) {
+        switch (name.trim().toUpperCase()) {
+            case "READ_UNCOMMITTED":
+                return Connection.TRANSACTION_READ_UNCOMMITTED;
+            case "READ_COMMITTED":
+                return Connection.TRANSACTION_READ_COMMITTED;
+            case "REPEATABLE_READ":
+                return Connection.TRANSACTION_REPEATABLE_READ;
+            case "SERIALIZABLE":
+                return Connection.TRANSACTION_SERIALIZABLE;
+            default:
+                throw new IllegalArgumentException("db.isolation must be READ_UNCOMMITTED, READ_COMMITTED, REPEATABLE_READ or SERIALIZABLE, not " + name);
+        }
+    }
+
+    /** @return counters for the metrics endpoint. */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("committed", committed.sum());
+        snapshot.put("rolled_back", rolledBack.sum());
+        snapshot.put("joined", joined.sum());
+        return snapshot;
+    }
+}
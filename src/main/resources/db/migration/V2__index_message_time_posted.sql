@@ -0,0 +1,2 @@
+-- newest-first reads (warm-up) and the archiver both filter or sort on time_posted_epoch
+create index if not exists message_time_posted_idx on message(time_posted_epoch);
@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.AccountStats;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccountStatsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private AccountStats getStats(int accountId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/accounts/" + accountId + "/stats"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), AccountStats.class);
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/accounts/1/stats around a create, an update and a delete
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: statistics that follow every change, and zeros for an account without messages
+     */
+    @Test
+    public void statsFollowChanges() throws IOException, InterruptedException {
+        Assert.assertEquals(new AccountStats(1, 1, 1669947792L, 1669947792L, 14), getStats(1));
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello\", " +
+                        "\"time_posted_epoch\": 1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(new AccountStats(1, 2, 1669947792L, 1669947800L, 19), getStats(1));
+
+        HttpRequest patchMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"hello world\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(new AccountStats(1, 2, 1669947792L, 1669947800L, 25), getStats(1));
+
+        HttpRequest deleteMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/1"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(new AccountStats(1, 1, 1669947800L, 1669947800L, 11), getStats(1));
+
+        Assert.assertEquals(new AccountStats(2, 0, null, null, 0), getStats(2));
+    }
+
+    /**
+     * Counters are served from memory after the first read, and reconcile() corrects a change made behind the
+     * service's back.
+     */
+    @Test
+    public void reconcileCorrectsDrift() {
+        MessageService messageService = new MessageService();
+        messageService.getAccountStats(1);
+        messageService.getAccountStats(1);
+        Assert.assertEquals(1, messageService.stats.loads());
+        Assert.assertEquals(1, messageService.stats.hits());
+
+        // written straight to the DAO, so the tracker never hears about it
+        messageService.messageDAO.createMessage(new Message(1, "behind the back", 1669947900L));
+        Assert.assertEquals(1, messageService.getAccountStats(1).message_count);
+
+        Assert.assertEquals(1, messageService.stats.reconcile());
+        Assert.assertEquals(new AccountStats(1, 2, 1669947792L, 1669947900L, 29), messageService.getAccountStats(1));
+        messageService.stopBackgroundTasks();
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BinaryFormatTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    ObjectMapper cborMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMappers
+     * for JSON and CBOR.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        cborMapper = new ObjectMapper(new CBORFactory());
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Message and Account survive a CBOR encode/decode round trip unchanged.
+     */
+    @Test
+    public void cborRoundTrip() throws IOException {
+        Message message = new Message(7, 1, "hello \u00e9\u00e8 \uD83D\uDE00", 1669947792L);
+        Assert.assertEquals(message, cborMapper.readValue(cborMapper.writeValueAsBytes(message), Message.class));
+
+        Account account = new Account(3, "testuser1", "password");
+        Assert.assertEquals(account, cborMapper.readValue(cborMapper.writeValueAsBytes(account), Account.class));
+    }
+
+    /**
+     * POST localhost:8080/messages with a CBOR body, then GET localhost:8080/messages with Accept: application/cbor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: CBOR encoding of the created message, then of the list of all messages
+     */
+    @Test
+    public void cborOverHttp() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(cborMapper.writeValueAsBytes(new Message(1, "cbor message", 1669947792))))
+                .header("Content-Type", "application/cbor")
+                .header("Accept", "application/cbor")
+                .build();
+        HttpResponse<byte[]> created = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(200, created.statusCode());
+        Assert.assertEquals("application/cbor", created.headers().firstValue("Content-Type").orElse(""));
+        Assert.assertEquals(new Message(2, 1, "cbor message", 1669947792), cborMapper.readValue(created.body(), Message.class));
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages"))
+                .header("Accept", "application/cbor")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "cbor message", 1669947792));
+        Assert.assertEquals(expectedResult, cborMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Benchmark: payload size and encode/decode time of a 10,000 message list, CBOR versus JSON.
+     * Prints the numbers; only the size is asserted since timings depend on the machine.
+     */
+    @Test
+    public void cborVersusJsonBenchmark() throws IOException {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 1; i <= 10_000; i++) {
+            messages.add(new Message(i, i % 100, "message number " + i + " from the benchmark", 1669947792L + i));
+        }
+        TypeReference<List<Message>> listType = new TypeReference<List<Message>>(){};
+
+        byte[] json = null;
+        byte[] cbor = null;
+        // warm up both codecs before measuring
+        for (int i = 0; i < 5; i++) {
+            json = objectMapper.writeValueAsBytes(messages);
+            cbor = cborMapper.writeValueAsBytes(messages);
+            objectMapper.readValue(json, listType);
+            cborMapper.readValue(cbor, listType);
+        }
+        int rounds = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) json = objectMapper.writeValueAsBytes(messages);
+        long jsonEncode = (System.nanoTime() - start) / rounds;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) cbor = cborMapper.writeValueAsBytes(messages);
+        long cborEncode = (System.nanoTime() - start) / rounds;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) objectMapper.readValue(json, listType);
+        long jsonDecode = (System.nanoTime() - start) / rounds;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) cborMapper.readValue(cbor, listType);
+        long cborDecode = (System.nanoTime() - start) / rounds;
+
+        System.out.println("10000 messages  JSON: " + json.length + " bytes, encode " + jsonEncode / 1000 + " us, decode " + jsonDecode / 1000 + " us");
+        System.out.println("10000 messages  CBOR: " + cbor.length + " bytes, encode " + cborEncode / 1000 + " us, decode " + cborDecode / 1000 + " us");
+        Assert.assertTrue(cbor.length < json.length);
+    }
+}
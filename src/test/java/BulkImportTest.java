@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BulkImportTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with a bulk batch size of 2 so imports span
+     * several batches, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("bulk.batch-size", "2");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("bulk.batch-size");
+    }
+
+    private List<String> post(String path, String ndjson) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + path))
+                .POST(HttpRequest.BodyPublishers.ofString(ndjson))
+                .header("Content-Type", "application/x-ndjson")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/x-ndjson", response.headers().firstValue("Content-Type").orElse(""));
+        return response.body().lines().toList();
+    }
+
+    /**
+     * POST localhost:8080/accounts/import with valid, invalid, duplicate and malformed lines, then
+     * GET localhost:8080/accounts/export
+     *
+     * Expected Response:
+     *  one outcome per non-blank input line in input order, a final count line,
+     *  and the export lists the seed account plus the created ones
+     */
+    @Test
+    public void importAccountsReportsEveryLine() throws IOException, InterruptedException {
+        List<String> lines = post("/accounts/import",
+                "{\"username\":\"partner1\",\"password\":\"password\"}\n" +
+                "{\"username\":\"partner2\",\"password\":\"pw\"}\n" +
+                "\n" +
+                "{\"username\":\"testuser1\",\"password\":\"password\"}\n" +
+                "not json\n" +
+                "{\"username\":\"partner1\",\"password\":\"password\"}\n" +
+                "{\"username\":\"partner3\",\"password\":\"password\"}\n");
+        Assert.assertEquals(7, lines.size());
+        JsonNode first = objectMapper.readTree(lines.get(0));
+        Assert.assertEquals(1, first.get("line").asInt());
+        Assert.assertEquals("created", first.get("status").asText());
+        Assert.assertEquals(2, first.get("id").asInt());
+        Assert.assertEquals("rejected", objectMapper.readTree(lines.get(1)).get("status").asText());
+        JsonNode existing = objectMapper.readTree(lines.get(2));
+        Assert.assertEquals(4, existing.get("line").asInt());
+        Assert.assertEquals("username already exists", existing.get("error").asText());
+        Assert.assertEquals(5, objectMapper.readTree(lines.get(3)).get("line").asInt());
+        Assert.assertEquals("rejected", objectMapper.readTree(lines.get(4)).get("status").asText());
+        Assert.assertEquals("created", objectMapper.readTree(lines.get(5)).get("status").asText());
+        JsonNode summary = objectMapper.readTree(lines.get(6));
+        Assert.assertEquals(2, summary.get("created").asInt());
+        Assert.assertEquals(4, summary.get("rejected").asInt());
+
+        HttpRequest export = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/accounts/export"))
+                .build();
+        List<String> accounts = webClient.send(export, HttpResponse.BodyHandlers.ofString()).body().lines().toList();
+        Assert.assertEquals(3, accounts.size());
+        Assert.assertEquals("partner3", objectMapper.readTree(accounts.get(2)).get("username").asText());
+        for (String account : accounts) {
+            Assert.assertFalse(objectMapper.readTree(account).has("password"));
+        }
+    }
+
+    /**
+     * With the /register limit at a burst of 3 permits and one permit per record, POST localhost:8080/accounts/import
+     * with 6 accounts, then the same again
+     *
+     * Expected Response:
+     *  the first batch of 2 is created, the second is rejected as rate limited and the import stops there;
+     *  the second request is refused with 429 and Retry-After before anything is imported
+     */
+    @Test
+    public void importsAreChargedToTheRateLimit() throws IOException, InterruptedException {
+        System.setProperty("ratelimit.import.records-per-permit", "1");
+        System.setProperty("ratelimit.register.burst", "3");
+        System.setProperty("ratelimit.register.per-second", "0.01");
+        app.stop();
+        app = new SocialMediaController().startAPI();
+        TestServer.start(app);
+        try {
+            StringBuilder body = new StringBuilder();
+            for (int i = 1; i <= 6; i++) {
+                body.append("{\"username\":\"partner").append(i).append("\",\"password\":\"password\"}\n");
+            }
+            List<String> lines = post("/accounts/import", body.toString());
+            Assert.assertEquals(5, lines.size());
+            Assert.assertEquals("created", objectMapper.readTree(lines.get(1)).get("status").asText());
+            Assert.assertTrue(objectMapper.readTree(lines.get(2)).get("error").asText().startsWith("rate limit exceeded"));
+            JsonNode summary = objectMapper.readTree(lines.get(4));
+            Assert.assertEquals(2, summary.get("created").asInt());
+            Assert.assertEquals(2, summary.get("rejected").asInt());
+            Assert.assertTrue(summary.get("retry_after_seconds").asLong() >= 1);
+
+            HttpResponse<String> refused = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:" + app.port() + "/accounts/import"))
+                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                    .header("Content-Type", "application/x-ndjson")
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(429, refused.statusCode());
+            Assert.assertTrue(refused.headers().firstValue("Retry-After").isPresent());
+        } finally {
+            System.clearProperty("ratelimit.import.records-per-permit");
+            System.clearProperty("ratelimit.register.burst");
+            System.clearProperty("ratelimit.register.per-second");
+        }
+    }
+
+    /**
+     * POST localhost:8080/messages/import with 5000 messages for a freshly imported account and one for a
+     * missing account, then GET localhost:8080/messages/export
+     *
+     * Expected Response:
+     *  the new account's messages are created even though it has no earlier message, the missing poster is
+     *  rejected, and the export holds the seed message plus every imported one in message_id order
+     */
+    @Test
+    public void importAndExportMessages() throws IOException, InterruptedException {
+        post("/accounts/import", "{\"username\":\"partner1\",\"password\":\"password\"}\n");
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            body.append("{\"posted_by\":2,\"message_text\":\"imported ").append(i).append("\",\"time_posted_epoch\":1669947792}\n");
+        }
+        body.append("{\"posted_by\":99,\"message_text\":\"nobody\",\"time_posted_epoch\":1669947792}\n");
+        List<String> lines = post("/messages/import", body.toString());
+        Assert.assertEquals(5002, lines.size());
+        Assert.assertEquals("posted_by is not an existing account", objectMapper.readTree(lines.get(5000)).get("error").asText());
+        JsonNode summary = objectMapper.readTree(lines.get(5001));
+        Assert.assertEquals(5000, summary.get("created").asInt());
+        Assert.assertEquals(1, summary.get("rejected").asInt());
+
+        HttpRequest export = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/export"))
+                .build();
+        List<String> messages = webClient.send(export, HttpResponse.BodyHandlers.ofString()).body().lines().toList();
+        Assert.assertEquals(5001, messages.size());
+        Assert.assertEquals(new Message(5001, 2, "imported 4999", 1669947792),
+                objectMapper.readValue(messages.get(5000), Message.class));
+    }
+}
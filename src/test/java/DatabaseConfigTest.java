@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.h2.tools.RunScript;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.DatabaseConfig;
+import io.javalin.Javalin;
+
+public class DatabaseConfigTest {
+    private static final String[] KEYS = {"db.mode", "db.name", "db.cache-size-kb", "db.lock-timeout-ms", "db.options"};
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Map<String, String> previous = new HashMap<>();
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        for (String key : KEYS) {
+            previous.put(key, System.getProperty(key));
+        }
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        // the test forks run on their own in-memory database through db.mode and db.name, put those back
+        for (String key : KEYS) {
+            if (previous.get(key) == null) {
+                System.clearProperty(key);
+            } else {
+                System.setProperty(key, previous.get(key));
+            }
+        }
+    }
+
+    /**
+     * GET localhost:8080/db/stats
+     *
+     * Expected Response:
+     *  Status Code: 200, the mode and url in use; in file mode also the cache hit ratio and the database file size
+     */
+    @Test
+    public void statsReportCacheAndFile() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/db/stats")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Map<String, Object> stats = objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+        Assert.assertEquals(ConnectionUtil.getUrl(), stats.get("url"));
+        if (DatabaseConfig.isInMemory()) {
+            // the surefire forks run in mem mode, which has no MVStore file counters
+            Assert.assertEquals("mem", stats.get("mode"));
+            return;
+        }
+        Assert.assertEquals("file", stats.get("mode"));
+        Assert.assertTrue(stats.get("cache_hit_ratio") instanceof Number);
+        Assert.assertTrue(((Number) stats.get("file_size_bytes")).longValue() > 0);
+        Assert.assertTrue(((Map<?, ?>) stats.get("info")).containsKey("CACHE_MAX_SIZE"));
+    }
+
+    /**
+     * db.mode=mem with cache and lock settings builds a URL H2 accepts, and the first schema migration creates the tables in it.
+     */
+    @Test
+    public void inMemoryUrlWithSettingsOpens() throws SQLException {
+        System.setProperty("db.mode", "mem");
+        System.setProperty("db.name", "config-test");
+        System.setProperty("db.cache-size-kb", "8192");
+        System.setProperty("db.lock-timeout-ms", "2000");
+        System.setProperty("db.options", "MAX_MEMORY_ROWS=5000");
+        String url = DatabaseConfig.url();
+        Assert.assertEquals("jdbc:h2:mem:config-test;DB_CLOSE_DELAY=-1;CACHE_SIZE=8192;LOCK_TIMEOUT=2000;MAX_MEMORY_ROWS=5000;", url);
+        Assert.assertTrue(DatabaseConfig.isInMemory());
+
+        Connection connection = DriverManager.getConnection(url, DatabaseConfig.user(), DatabaseConfig.password());
+        try {
+            RunScript.execute(connection, new InputStreamReader(getClass().getResourceAsStream("/db/migration/V1__create_tables.sql"), StandardCharsets.UTF_8));
+            ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM account");
+            rs.next();
+            Assert.assertEquals(0, rs.getInt(1));
+        } finally {
+            connection.close();
+        }
+    }
+}
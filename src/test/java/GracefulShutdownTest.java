@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.ShutdownCoordinator;
+import io.javalin.Javalin;
+
+public class GracefulShutdownTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Run the shutdown sequence while a long-poll on GET localhost:8080/messages/changes is parked
+     *
+     * Expected Response:
+     *  the long-poll is answered with status 200 instead of being cut off, no request is left in flight,
+     *  every step is timed, and the server no longer accepts connections afterwards
+     */
+    @Test
+    public void shutdownDrainsInFlightRequests() throws Exception {
+        HttpRequest longPoll = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/changes?since=0&wait=20000"))
+                .build();
+        CompletableFuture<HttpResponse<String>> pending = webClient.sendAsync(longPoll, HttpResponse.BodyHandlers.ofString());
+        TestServer.await(() -> socialMediaController.waitingLongPolls() == 1, "the long-poll to be parked");
+        Assert.assertEquals(1, socialMediaController.inFlightRequests());
+
+        ShutdownCoordinator shutdown = socialMediaController.shutdownSequence(app);
+        long start = System.currentTimeMillis();
+        shutdown.run();
+
+        HttpResponse<String> response = pending.get();
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+        Assert.assertEquals(0, socialMediaController.inFlightRequests());
+        Assert.assertTrue(shutdown.stepTimings().containsKey("drain in-flight requests"));
+        Assert.assertTrue(shutdown.stepTimings().containsKey("checkpoint and close database"));
+
+        HttpRequest afterShutdown = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages"))
+                .build();
+        try {
+            webClient.send(afterShutdown, HttpResponse.BodyHandlers.ofString());
+            Assert.fail("server should not accept requests after shutdown");
+        } catch (IOException expected) {
+            // connection refused
+        }
+    }
+}
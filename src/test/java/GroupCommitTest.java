@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.GroupCommitter;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class GroupCommitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with a group commit window of 20 ms so
+     * concurrent creates reliably share a batch, and create a new webClient and ObjectMapper.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("messages.group-commit.max-delay-us", "20000");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.group-commit.max-delay-us");
+    }
+
+    /**
+     * 20 concurrent POST localhost:8080/messages
+     *
+     * Expected Response:
+     *  every request gets status 200 and its own message_id, all messages are stored, and /metrics shows fewer
+     *  group commit batches than messages
+     */
+    @Test
+    public void concurrentCreatesShareCommits() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(20);
+        List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                String body = "{\"posted_by\":1,\"message_text\":\"message " + i + "\",\"time_posted_epoch\":1669947800}";
+                responses.add(pool.submit(() -> webClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .header("Content-Type", "application/json").build(), HttpResponse.BodyHandlers.ofString())));
+            }
+            Set<Integer> ids = new HashSet<>();
+            for (Future<HttpResponse<String>> response : responses) {
+                Assert.assertEquals(200, response.get(10, TimeUnit.SECONDS).statusCode());
+                ids.add(objectMapper.readValue(response.get().body(), Message.class).message_id);
+            }
+            Assert.assertEquals(20, ids.size());
+        } finally {
+            pool.shutdownNow();
+        }
+        List<Message> all = objectMapper.readValue(get("/messages"), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(21, all.size());
+
+        Map<String, Object> metrics = objectMapper.readValue(get("/metrics"), new TypeReference<Map<String, Object>>(){});
+        @SuppressWarnings("unchecked")
+        Map<String, Object> groupCommit = (Map<String, Object>) metrics.get("group_commit");
+        Assert.assertEquals(20, ((Number) groupCommit.get("messages")).intValue());
+        Assert.assertTrue(((Number) groupCommit.get("batches")).intValue() < 20);
+    }
+
+    private String get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + path)).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    /**
+     * A batch that fails reaches every caller in it, and once closed the committer refuses new creates.
+     */
+    @Test
+    public void failuresReachEveryCallerAndCloseStopsCreates() throws Exception {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        GroupCommitter committer = new GroupCommitter(batch -> {
+            batchSizes.add(batch.size());
+            if (batch.get(0).message_text.equals("fail")) {
+                throw new IllegalStateException("could not commit");
+            }
+            List<Message> created = new ArrayList<>();
+            for (Message message : batch) {
+                created.add(new Message(batchSizes.size() * 100 + created.size(), message.posted_by, message.message_text, message.time_posted_epoch));
+            }
+            return created;
+        }, 10, 0, 5000);
+        try {
+            committer.create(new Message(1, "fail", 0));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("could not commit", e.getMessage());
+        }
+        Assert.assertEquals(200, committer.create(new Message(1, "ok", 0)).message_id);
+
+        committer.close(1000);
+        try {
+            committer.create(new Message(1, "late", 0));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("group commit is closed", e.getMessage());
+        }
+        Assert.assertEquals(List.of(1, 1), batchSizes);
+    }
+
+    /**
+     * An Error from one batch reaches its caller as an IllegalStateException and does not stop the committer.
+     */
+    @Test
+    public void errorsFailTheBatchAndTheCommitterGoesOn() {
+        GroupCommitter committer = new GroupCommitter(batch -> {
+            if (batch.get(0).message_text.equals("error")) {
+                throw new AssertionError("broken insert");
+            }
+            return List.of(new Message(7, 1, batch.get(0).message_text, 0));
+        }, 10, 0, 5000);
+        try {
+            committer.create(new Message(1, "error", 0));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getCause() instanceof AssertionError);
+        }
+        Assert.assertEquals(7, committer.create(new Message(1, "ok", 0)).message_id);
+        committer.close(1000);
+    }
+
+    /**
+     * The committer is stuck in a batch for longer than the wait timeout
+     *
+     * Expected Result:
+     *  the caller in the stuck batch gets an IllegalStateException after the timeout, and a caller queued behind it
+     *  takes its message back and inserts it directly
+     */
+    @Test
+    public void stuckCommitterDoesNotBlockCallersForever() throws Exception {
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GroupCommitter committer = new GroupCommitter(batch -> {
+            if (batch.get(0).message_text.equals("stuck")) {
+                stuck.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return List.of(new Message(8, 1, batch.get(0).message_text, 0));
+        }, 1, 0, 300);
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            Future<Message> first = callers.submit(() -> committer.create(new Message(1, "stuck", 0)));
+            Assert.assertTrue(stuck.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(new Message(8, 1, "queued", 0), committer.create(new Message(1, "queued", 0)));
+            try {
+                first.get(5, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            Assert.assertEquals(1L, committer.snapshot().get("direct_inserts"));
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+            committer.close(1000);
+        }
+    }
+
+    /**
+     * insertBatch takes longer than the wait timeout but then commits
+     *
+     * Expected Result:
+     *  the caller gets an IllegalStateException although its message was stored, and /metrics counts it as an
+     *  ambiguous timeout, not as a direct insert
+     */
+    @Test
+    public void slowBatchTimesOutAmbiguously() throws Exception {
+        List<Message> committed = new CopyOnWriteArrayList<>();
+        GroupCommitter committer = new GroupCommitter(batch -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Message created = new Message(9, batch.get(0).posted_by, batch.get(0).message_text, 0);
+            committed.add(created);
+            return List.of(created);
+        }, 1, 0, 100);
+        try {
+            try {
+                committer.create(new Message(1, "slow", 0));
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("group commit did not finish within 100 ms", e.getMessage());
+            }
+            TestServer.await(() -> committed.size() == 1, "the slow batch to commit after all");
+            Map<String, Object> snapshot = committer.snapshot();
+            Assert.assertEquals(1L, snapshot.get("ambiguous_timeouts"));
+            Assert.assertEquals(0L, snapshot.get("direct_inserts"));
+        } finally {
+            committer.close(1000);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemoryMessageRepository;
+import Model.Message;
+
+/**
+ * Hammers InMemoryMessageRepository from several threads at once and checks the results against a model of what
+ * each thread did. Every thread only changes its own poster's messages, so its view of them must match its model
+ * exactly even while the other threads write; reads of anyone's messages must only ever see states that existed.
+ */
+public class InMemoryMessageStressTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 5000;
+    private static final Comparator<Message> BY_TIME_POSTED = Comparator
+            .comparingLong((Message message) -> message.time_posted_epoch)
+            .thenComparingInt(message -> message.message_id);
+
+    InMemoryMessageRepository repository;
+    ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        repository = new InMemoryMessageRepository(null);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /** Runs the same task on every thread, released together. */
+    private <T> List<T> runTogether(Callable<T> task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    /**
+     * Each thread creates, updates, deletes and reads its own messages with random times posted, and reads
+     * everyone else's, all at once
+     *
+     * Expected Response:
+     *  ids are unique, every read sees a version some thread wrote, each thread's account list always equals its
+     *  model in time posted order, and at the end the store holds exactly the union of the models
+     */
+    @Test
+    public void ownedMessagesSurviveContention() throws Exception {
+        Map<Integer, Integer> posterOfId = new ConcurrentHashMap<>();
+        int[] nextPoster = {0};
+        List<Map<Integer, Message>> models = runTogether(() -> {
+            int postedBy;
+            synchronized (nextPoster) {
+                postedBy = ++nextPoster[0];
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Map<Integer, Message> model = new LinkedHashMap<>();
+            List<Integer> ids = new ArrayList<>();
+            for (int op = 0; op < OPERATIONS_PER_THREAD; op++) {
+                int choice = random.nextInt(100);
+                if (choice < 40 || ids.isEmpty()) {
+                    Message created = repository.createMessage(new Message(postedBy, postedBy + ":" + op, random.nextLong(1_000_000)));
+                    Assert.assertNull("message_id handed out twice", posterOfId.putIfAbsent(created.message_id, postedBy));
+                    model.put(created.message_id, new Message(created.message_id, postedBy, created.message_text, created.time_posted_epoch));
+                    ids.add(created.message_id);
+                } else if (choice < 60) {
+                    int id = ids.get(random.nextInt(ids.size()));
+                    String text = postedBy + ":" + op;
+                    Assert.assertNotNull(repository.updateMessageById(new Message(id, 0, text, 0)));
+                    model.get(id).message_text = text;
+                } else if (choice < 75) {
+                    int id = ids.remove(random.nextInt(ids.size()));
+                    Assert.assertEquals(model.remove(id), repository.deleteMessageById(id));
+                    Assert.assertNull(repository.getMessageById(id));
+                } else if (choice < 90) {
+                    int id = 1 + random.nextInt(Math.max(1, posterOfId.size()));
+                    Message read = repository.getMessageById(id);
+                    if (read != null) {
+                        Assert.assertEquals(read.message_id, id);
+                        Assert.assertTrue("torn read " + read, read.message_text.startsWith(read.posted_by + ":"));
+                    }
+                } else {
+                    List<Message> expected = new ArrayList<>(model.values());
+                    expected.sort(BY_TIME_POSTED);
+                    Assert.assertEquals(expected, repository.getAllMessagesByAccountId(postedBy));
+                }
+            }
+            return model;
+        });
+
+        List<Message> expectedAll = new ArrayList<>();
+        for (Map<Integer, Message> model : models) {
+            expectedAll.addAll(model.values());
+        }
+        expectedAll.sort(Comparator.comparingInt(message -> message.message_id));
+        Assert.assertEquals(expectedAll, repository.getAllMessages());
+        Assert.assertEquals(expectedAll.size(), repository.size());
+
+        Set<Integer> posters = new HashSet<>();
+        for (Message message : expectedAll) {
+            posters.add(message.posted_by);
+        }
+        Assert.assertEquals(posters, new HashSet<>(repository.getAllPostedByIds()));
+        int indexed = 0;
+        for (int[] ids : repository.getMessageIdsByPostedBy().values()) {
+            indexed += ids.length;
+        }
+        Assert.assertEquals(expectedAll.size(), indexed);
+
+        List<Message> newestFirst = new ArrayList<>(expectedAll);
+        newestFirst.sort(Collections.reverseOrder(BY_TIME_POSTED));
+        Assert.assertEquals(newestFirst.subList(0, 50), repository.getRecentMessages(50));
+    }
+
+    /**
+     * All threads update one message at once, then all try to delete it
+     *
+     * Expected Response:
+     *  every update succeeds and every read sees one of the written texts, the final text is one of them,
+     *  exactly one delete returns the message and updates after it fail
+     */
+    @Test
+    public void contendedMessageIsLinearizable() throws Exception {
+        int id = repository.createMessage(new Message(1, "original", 1669947792)).message_id;
+        Set<String> written = ConcurrentHashMap.newKeySet();
+        written.add("original");
+        runTogether(() -> {
+            String prefix = Thread.currentThread().getName() + ":";
+            for (int i = 0; i < 2000; i++) {
+                String text = prefix + i;
+                written.add(text);
+                Assert.assertNotNull(repository.updateMessageById(new Message(id, 0, text, 0)));
+                Message read = repository.getMessageById(id);
+                Assert.assertTrue(written.contains(read.message_text));
+                Assert.assertEquals(1669947792, read.time_posted_epoch);
+            }
+            return null;
+        });
+        Message last = repository.getMessageById(id);
+        Assert.assertTrue(written.contains(last.message_text));
+        Assert.assertEquals(List.of(last), repository.getAllMessagesByAccountId(1));
+
+        List<Message> deletes = runTogether(() -> repository.deleteMessageById(id));
+        Assert.assertEquals(THREADS - 1, Collections.frequency(deletes, null));
+        Assert.assertNull(repository.updateMessageById(new Message(id, 0, "too late", 0)));
+        Assert.assertTrue(repository.getAllMessagesByAccountId(1).isEmpty());
+        Assert.assertFalse(repository.postedByExistingUser(1));
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryAccountRepository;
+import DAO.InMemoryMessageRepository;
+import Model.Account;
+import Model.Message;
+import io.javalin.Javalin;
+
+public class InMemoryRepositoryTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, empty the in-memory repositories and restart the Javalin app with storage.engine=memory.
+     * The H2 database is not reset, nothing in these tests reads it.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty("storage.engine", "memory");
+        InMemoryAccountRepository.shared().clear();
+        InMemoryMessageRepository.shared().clear();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("storage.engine");
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * With storage.engine=memory, register, log in, then POST, PATCH, GET and DELETE messages
+     *
+     * Expected Response:
+     *  the same responses as with H2, starting from an empty store, and the messages are in memory only
+     */
+    @Test
+    public void endpointsUseTheInMemoryRepositories() throws IOException, InterruptedException {
+        HttpResponse<String> registered = send("POST", "/register", "{\"username\":\"memory user\",\"password\":\"password\"}");
+        Assert.assertEquals(200, registered.statusCode());
+        Assert.assertEquals(new Account(1, "memory user", "password"), objectMapper.readValue(registered.body(), Account.class));
+        Assert.assertEquals(400, send("POST", "/register", "{\"username\":\"memory user\",\"password\":\"other\"}").statusCode());
+        Assert.assertEquals(200, send("POST", "/login", "{\"username\":\"memory user\",\"password\":\"password\"}").statusCode());
+        Assert.assertEquals(401, send("POST", "/login", "{\"username\":\"memory user\",\"password\":\"wrong\"}").statusCode());
+
+        // a registered account can post its first message, there is no seed message to find
+        HttpResponse<String> created = send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"in memory\",\"time_posted_epoch\":1669947800}");
+        Assert.assertEquals(new Message(1, 1, "in memory", 1669947800), objectMapper.readValue(created.body(), Message.class));
+        Assert.assertEquals(400, send("POST", "/messages", "{\"posted_by\":2,\"message_text\":\"nobody\",\"time_posted_epoch\":1669947800}").statusCode());
+        send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"second\",\"time_posted_epoch\":1669947801}");
+
+        Assert.assertEquals(200, send("PATCH", "/messages/1", "{\"message_text\":\"edited\"}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "/messages/2", null).statusCode());
+        List<Message> messages = objectMapper.readValue(send("GET", "/accounts/1/messages", null).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "edited", 1669947800)), messages);
+        Assert.assertEquals(1, InMemoryMessageRepository.shared().size());
+    }
+
+    /**
+     * Sixteen threads register the same username at once through the in-memory repository
+     *
+     * Expected Response:
+     *  exactly one registration succeeds
+     */
+    @Test
+    public void concurrentRegistrationsOfOneUsername() throws Exception {
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Callable<Account>> registrations = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                registrations.add(() -> accounts.createAccount(new Account("same name", "password")));
+            }
+            int created = 0;
+            for (Future<Account> result : executor.invokeAll(registrations)) {
+                if (result.get() != null) {
+                    created++;
+                }
+            }
+            Assert.assertEquals(1, created);
+            Assert.assertEquals(1, accounts.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
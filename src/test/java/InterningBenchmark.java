@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import Model.Message;
+import Service.MessageCache;
+import Util.Config;
+import Util.StringInterner;
+
+/**
+ * Measures what the message text interning pool saves on a skewed dataset: most posts reuse a text from a pool of
+ * templates picked by a Zipf distribution (a few very frequent bot and templated posts, a long tail of rarer ones),
+ * the rest are unique. Every text is a new String instance per row, as JDBC materialises them, and all rows are
+ * loaded into a MessageCache once without and once with a StringInterner; the report compares retained heap and
+ * load time, and the pool's own hit ratio and estimate.
+ *
+ * Settings, read through Config:
+ *
+ *  bench.messages          rows loaded into each cache (200000)
+ *  bench.distinct-texts    templates the repeated posts are drawn from (5000)
+ *  bench.zipf-exponent     skew of the template popularity, higher is more skewed (1.1)
+ *  bench.unique-fraction   share of posts with a text of their own (0.3)
+ *  bench.seed              random seed, so runs are comparable (42)
+ *  cache.intern.capacity   pool size (65536)
+ *
+ * Run it with: mvn -B -Pintern-benchmark test -Dbench.messages=500000
+ */
+public class InterningBenchmark {
+    private static final String[] WORDS = { "deal", "free", "today", "click", "win", "new", "post", "great", "check",
+            "this", "out", "limited", "offer", "follow", "me", "for", "more", "daily", "update", "link" };
+
+    private final int messages;
+    private final List<String> templates = new ArrayList<>();
+    private final double[] cumulativeWeights;
+    private final double uniqueFraction;
+    private final long seed;
+    private final int internCapacity;
+
+    public InterningBenchmark(int messages, int distinctTexts, double zipfExponent, double uniqueFraction, long seed, int internCapacity) {
+        this.messages = messages;
+        this.uniqueFraction = uniqueFraction;
+        this.seed = seed;
+        this.internCapacity = internCapacity;
+        Random random = new Random(seed);
+        cumulativeWeights = new double[distinctTexts];
+        double total = 0;
+        for (int rank = 0; rank < distinctTexts; rank++) {
+            templates.add(sentence(random, "template " + rank));
+            total += 1 / Math.pow(rank + 1, zipfExponent);
+            cumulativeWeights[rank] = total;
+        }
+        for (int rank = 0; rank < distinctTexts; rank++) {
+            cumulativeWeights[rank] /= total;
+        }
+    }
+
+    /** @return 4 to 24 random words after the prefix, 20 to 150 characters like real posts */
+    private static String sentence(Random random, String prefix) {
+        StringBuilder text = new StringBuilder(prefix);
+        int words = 4 + random.nextInt(21);
+        for (int i = 0; i < words; i++) {
+            text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    private String template(Random random) {
+        double pick = random.nextDouble();
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeWeights[middle] < pick) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return templates.get(low);
+    }
+
+    /** One cache's load. */
+    public static class Result {
+        public final String name;
+        public final long retainedBytes;
+        public final long loadNanos;
+
+        Result(String name, long retainedBytes, long loadNanos) {
+            this.name = name;
+            this.retainedBytes = retainedBytes;
+            this.loadNanos = loadNanos;
+        }
+    }
+
+    public static class Report {
+        public final int messages;
+        public final Result plain;
+        public final Result interned;
+        public final StringInterner interner;
+
+        Report(int messages, Result plain, Result interned, StringInterner interner) {
+            this.messages = messages;
+            this.plain = plain;
+            this.interned = interned;
+            this.interner = interner;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%d messages%n", messages));
+            for (Result result : new Result[] { plain, interned }) {
+                out.append(String.format("  %-9s retained %8.1f MB  %6.0f bytes/message  load %5.0f ns/message%n",
+                        result.name, result.retainedBytes / 1e6, (double) result.retainedBytes / messages,
+                        (double) result.loadNanos / messages));
+            }
+            out.append(String.format("  saved     %8.1f MB  (%.0f%%), pool estimate %.1f MB, hit ratio %.2f%n",
+                    (plain.retainedBytes - interned.retainedBytes) / 1e6,
+                    100.0 * (plain.retainedBytes - interned.retainedBytes) / Math.max(1, plain.retainedBytes),
+                    interner.estimatedBytesSaved() / 1e6, (double) interner.hits() / Math.max(1, interner.lookups())));
+            return out.toString();
+        }
+    }
+
+    /** Loads the same rows into a cache, with or without the pool, and measures the heap the cache retains. */
+    private Result load(String name, StringInterner interner) {
+        Random random = new Random(seed);
+        long before = usedHeap();
+        MessageCache cache = new MessageCache(messages, false, interner);
+        long start = System.nanoTime();
+        for (int id = 1; id <= messages; id++) {
+            String text = random.nextDouble() < uniqueFraction ? sentence(random, "post " + id) : template(random);
+            // a new instance per row, as a ResultSet hands them out
+            cache.putIfAbsent(new Message(id, 1 + random.nextInt(1000), new String(text.toCharArray()), 1669947792L + id));
+        }
+        long loadNanos = System.nanoTime() - start;
+        long retained = usedHeap() - before;
+        if (cache.size() != messages) {
+            throw new IllegalStateException(name + " cache holds " + cache.size() + " of " + messages + " messages");
+        }
+        return new Result(name, retained, loadNanos);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public Report run() {
+        Result plain = load("plain", null);
+        StringInterner interner = new StringInterner(internCapacity);
+        Result interned = load("interned", interner);
+        return new Report(messages, plain, interned, interner);
+    }
+
+    public static Report runFromConfig() {
+        return new InterningBenchmark(
+                Config.getInt("bench.messages", 200_000),
+                Config.getInt("bench.distinct-texts", 5000),
+                Config.getDouble("bench.zipf-exponent", 1.1),
+                Config.getDouble("bench.unique-fraction", 0.3),
+                Config.getLong("bench.seed", 42),
+                Config.getInt("cache.intern.capacity", StringInterner.DEFAULT_CAPACITY)).run();
+    }
+
+    public static void main(String[] args) {
+        System.out.print(runFromConfig());
+    }
+}
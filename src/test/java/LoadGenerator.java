@@ -0,0 +1,455 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.Config;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Open-loop load and soak generator for the API. Requests are started on a fixed schedule (load.rate per second)
+ * whether or not earlier ones have finished, and latency is measured from the time each request was due, so a
+ * stalled server shows up as latency instead of silently lowering the request rate.
+ *
+ * Settings, read through Config (system properties, environment or config file):
+ *
+ *  load.url              target an already running instance, e.g. http://localhost:8080; when unset the generator
+ *                        resets the test database and starts the API in this JVM with rate limiting disabled
+ *  load.rate             requests started per second (200)
+ *  load.duration-s       how long to run; use minutes or hours for a soak test (30)
+ *  load.mix              weighted route mix (register:1,login:2,post:3,read:10,update:2,delete:1)
+ *  load.http2            use HTTP/2; an in-process server is started with server.h2c=true (false)
+ *  load.max-in-flight    requests allowed outstanding before new ones are dropped and counted as errors (5000)
+ *  load.report-interval-s  seconds between interval reports (10)
+ *  load.max-error-rate   fail when more than this fraction of requests fail (0.01)
+ *  load.max-p99-ms       fail when any route's p99 exceeds this, -1 to disable (-1)
+ *  load.max-session-growth fail when the number of open H2 sessions grew by more than this, in-process only,
+ *                        -1 to disable (50)
+ *  load.report-file      where the final report is also written (target/load-report.txt)
+ *
+ * Run it with: mvn -B -Pload-test test -Dload.rate=500 -Dload.duration-s=60
+ */
+public class LoadGenerator {
+
+    public static final String[] ROUTES = { "register", "login", "post", "read", "update", "delete" };
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final String[] schedule;
+    private final double ratePerSecond;
+    private final long durationNanos;
+    private final long reportIntervalNanos;
+    private final Semaphore inFlight;
+    private final Map<String, RouteStats> stats = new LinkedHashMap<>();
+
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicInteger usernameSequence = new AtomicInteger();
+    private final ConcurrentLinkedQueue<String> usernames = new ConcurrentLinkedQueue<>();
+    // recently created message ids, read and updated at random; deletes take from the queue so each is deleted once
+    private final AtomicIntegerArray recentIds = new AtomicIntegerArray(1024);
+    private final AtomicLong recentCursor = new AtomicLong();
+    private final ConcurrentLinkedQueue<Integer> deletableIds = new ConcurrentLinkedQueue<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Latency and outcome counters for one route. The recorder is written by the HttpClient completion threads and
+     * read by the reporting thread without locking.
+     */
+    public static class RouteStats {
+        public final String route;
+        public final Recorder recorder = new Recorder(3);
+        public final Histogram total = new Histogram(3);
+        public final LongAdder ok = new LongAdder();
+        public final LongAdder failed = new LongAdder();
+        public final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+        RouteStats(String route) {
+            this.route = route;
+        }
+
+        void record(long intendedStartNanos, int status) {
+            recorder.recordValue(Math.max(0, (System.nanoTime() - intendedStartNanos) / 1000));
+            statusCodes.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (status == 200) {
+                ok.increment();
+            } else {
+                failed.increment();
+            }
+        }
+
+        /** Moves everything recorded since the last call into the running total and returns it. */
+        synchronized Histogram interval() {
+            Histogram interval = recorder.getIntervalHistogram();
+            total.add(interval);
+            return interval;
+        }
+    }
+
+    /**
+     * Result of one run, printable as a text report.
+     */
+    public static class Report {
+        public final Map<String, RouteStats> routes;
+        public final long sent;
+        public final long elapsedMillis;
+        public final int sessionsBefore;
+        public final int sessionsAfter;
+        public final List<String> failures = new ArrayList<>();
+
+        Report(Map<String, RouteStats> routes, long sent, long elapsedMillis, int sessionsBefore, int sessionsAfter) {
+            this.routes = routes;
+            this.sent = sent;
+            this.elapsedMillis = elapsedMillis;
+            this.sessionsBefore = sessionsBefore;
+            this.sessionsAfter = sessionsAfter;
+        }
+
+        public long totalFailed() {
+            long failed = 0;
+            for (RouteStats route : routes.values()) {
+                failed += route.failed.sum();
+            }
+            return failed;
+        }
+
+        public void print(PrintStream out) {
+            out.print(toString());
+        }
+
+        @Override
+        public String toString() {
+            StringWriter text = new StringWriter();
+            PrintWriter out = new PrintWriter(text);
+            out.printf("load test: %d requests in %.1f s (%.1f req/s)%n", sent, elapsedMillis / 1000.0,
+                    sent * 1000.0 / Math.max(1, elapsedMillis));
+            out.printf("%-9s %8s %7s %9s %9s %9s %9s %9s  %s%n",
+                    "route", "ok", "failed", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "status codes");
+            for (RouteStats route : routes.values()) {
+                Histogram h = route.total;
+                out.printf("%-9s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n", route.route, route.ok.sum(),
+                        route.failed.sum(), h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                        h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                        h.getMaxValue() / 1000.0, route.statusCodes);
+            }
+            if (sessionsBefore >= 0) {
+                out.printf("H2 sessions: %d before, %d after%n", sessionsBefore, sessionsAfter);
+            }
+            for (String failure : failures) {
+                out.println("FAILED: " + failure);
+            }
+            out.flush();
+            return text.toString();
+        }
+    }
+
+    public LoadGenerator(HttpClient client, String baseUrl, Map<String, Integer> mix, double ratePerSecond,
+            long durationMillis) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.ratePerSecond = ratePerSecond;
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        this.reportIntervalNanos = TimeUnit.SECONDS.toNanos(Config.getLong("load.report-interval-s", 10));
+        this.inFlight = new Semaphore(Config.getInt("load.max-in-flight", 5000));
+        List<String> weighted = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            stats.put(entry.getKey(), new RouteStats(entry.getKey()));
+            for (int i = 0; i < entry.getValue(); i++) {
+                weighted.add(entry.getKey());
+            }
+        }
+        this.schedule = weighted.toArray(new String[0]);
+        recentIds.set(0, 1);
+    }
+
+    /**
+     * @param mix e.g. "register:1,login:2,post:3,read:10,update:2,delete:1".
+     * @return route name to weight, in the given order.
+     */
+    public static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split(":");
+            String route = pair[0].trim();
+            if (!List.of(ROUTES).contains(route)) {
+                throw new IllegalArgumentException("unknown route in load.mix: " + route);
+            }
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            if (weight > 0) {
+                weights.put(route, weight);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Runs the schedule for the configured duration, then waits for outstanding requests to finish.
+     * @return the report, without session counts or threshold checks.
+     */
+    public Report run() throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long start = System.nanoTime();
+        long nextReport = start + reportIntervalNanos;
+        long sent = 0;
+        for (long due = start; due - start < durationNanos; due += intervalNanos) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String route = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+            send(route, due);
+            sent++;
+            if (System.nanoTime() >= nextReport) {
+                printInterval((System.nanoTime() - start) / 1_000_000_000);
+                nextReport += reportIntervalNanos;
+            }
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        int permits = Config.getInt("load.max-in-flight", 5000);
+        while (inFlight.availablePermits() < permits && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        for (RouteStats route : stats.values()) {
+            route.interval();
+        }
+        return new Report(stats, sent, elapsedMillis, -1, -1);
+    }
+
+    private void printInterval(long second) {
+        StringBuilder line = new StringBuilder("[" + second + "s]");
+        for (RouteStats route : stats.values()) {
+            Histogram interval = route.interval();
+            line.append(String.format(" %s n=%d p99=%.1fms", route.route, interval.getTotalCount(),
+                    interval.getValueAtPercentile(99) / 1000.0));
+        }
+        System.out.println(line);
+    }
+
+    private void send(String route, long due) {
+        RouteStats routeStats = stats.get(route);
+        if (!inFlight.tryAcquire()) {
+            // the client itself is saturated; count it rather than queueing without bound
+            routeStats.record(due, -1);
+            return;
+        }
+        HttpRequest request;
+        try {
+            request = buildRequest(route);
+        } catch (IOException e) {
+            inFlight.release();
+            routeStats.record(due, -1);
+            return;
+        }
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            try {
+                if (error != null) {
+                    routeStats.record(due, -1);
+                } else {
+                    routeStats.record(due, response.statusCode());
+                    if (response.statusCode() == 200) {
+                        remember(route, response.body());
+                    }
+                }
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private HttpRequest buildRequest(String route) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (route) {
+            case "register":
+                return post("/register", "{\"username\":\"load-" + runId + "-" + usernameSequence.incrementAndGet()
+                        + "\",\"password\":\"password\"}");
+            case "login":
+                String username = usernames.peek();
+                return post("/login", "{\"username\":\"" + (username != null ? username : "testuser1")
+                        + "\",\"password\":\"password\"}");
+            case "post":
+                return post("/messages", "{\"posted_by\":1,\"message_text\":\"load message " + random.nextInt()
+                        + "\",\"time_posted_epoch\":" + System.currentTimeMillis() / 1000 + "}");
+            case "read":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + randomRecentId())).build();
+            case "update":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + randomRecentId()))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString(
+                                "{\"message_text\":\"updated " + random.nextInt() + "\"}"))
+                        .header("Content-Type", "application/json")
+                        .build();
+            case "delete":
+                // only delete messages that have left the recent ring, so reads and updates never race a delete;
+                // until then delete one that does not exist rather than the seed message
+                Integer id = deletableIds.size() > recentIds.length() ? deletableIds.poll() : null;
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + (id != null ? id : 0)))
+                        .DELETE()
+                        .build();
+            default:
+                throw new IOException("unknown route " + route);
+        }
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    private int randomRecentId() {
+        long written = Math.min(recentCursor.get() + 1, recentIds.length());
+        int id = recentIds.get(ThreadLocalRandom.current().nextInt((int) written));
+        return id != 0 ? id : 1;
+    }
+
+    private void remember(String route, String body) {
+        try {
+            if (route.equals("register")) {
+                JsonNode account = mapper.readTree(body);
+                // keep a handful of accounts to log in with, rotating through them
+                usernames.add(account.get("username").asText());
+                if (usernames.size() > 100) {
+                    usernames.poll();
+                }
+            } else if (route.equals("post")) {
+                int id = mapper.readTree(body).get("message_id").asInt();
+                recentIds.set((int) (recentCursor.incrementAndGet() % recentIds.length()), id);
+                deletableIds.add(id);
+            }
+        } catch (IOException e) {
+            // a malformed body is already visible in the status counts of other routes
+        }
+    }
+
+    /**
+     * @return the number of open sessions on the embedded H2 database, or -1 if it cannot be read.
+     */
+    public static int openDatabaseSessions() {
+        try {
+            Connection connection = ConnectionUtil.getConnection();
+            try {
+                ResultSet rs = connection.createStatement().executeQuery(
+                        "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS");
+                rs.next();
+                // do not count the session we are asking from
+                return rs.getInt(1) - 1;
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Runs one load test from Config settings, in-process unless load.url is set, and checks the thresholds.
+     * @return the report; report.failures lists every threshold that was exceeded.
+     */
+    public static Report runFromConfig() throws InterruptedException {
+        boolean http2 = Config.getBoolean("load.http2", false);
+        String url = Config.getString("load.url", null);
+        Javalin app = null;
+        int sessionsBefore = -1;
+        if (url == null) {
+            System.setProperty("ratelimit.enabled", "false");
+            if (http2) {
+                System.setProperty("server.h2c", "true");
+            }
+            ConnectionUtil.resetTestDatabase();
+            app = new SocialMediaController().startAPI().start(0);
+            url = "http://localhost:" + app.port();
+            sessionsBefore = openDatabaseSessions();
+        }
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                    .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                    .build();
+            LoadGenerator generator = new LoadGenerator(client, url,
+                    parseMix(Config.getString("load.mix", "register:1,login:2,post:3,read:10,update:2,delete:1")),
+                    Config.getDouble("load.rate", 200), Config.getLong("load.duration-s", 30) * 1000);
+            System.out.println("load test against " + url + (http2 ? " over HTTP/2" : ""));
+            Report result = generator.run();
+            int sessionsAfter = -1;
+            if (sessionsBefore >= 0) {
+                // give the server a moment to release anything tied to finished requests
+                Thread.sleep(1000);
+                sessionsAfter = openDatabaseSessions();
+            }
+            Report report = new Report(result.routes, result.sent, result.elapsedMillis, sessionsBefore, sessionsAfter);
+            checkThresholds(report);
+            return report;
+        } finally {
+            if (app != null) {
+                app.stop();
+                System.clearProperty("ratelimit.enabled");
+                System.clearProperty("server.h2c");
+            }
+        }
+    }
+
+    private static void checkThresholds(Report report) {
+        double maxErrorRate = Config.getDouble("load.max-error-rate", 0.01);
+        double errorRate = report.totalFailed() / (double) Math.max(1, report.sent);
+        if (errorRate > maxErrorRate) {
+            report.failures.add(String.format("error rate %.4f above load.max-error-rate %.4f", errorRate, maxErrorRate));
+        }
+        double maxP99Millis = Config.getDouble("load.max-p99-ms", -1);
+        if (maxP99Millis >= 0) {
+            for (RouteStats route : report.routes.values()) {
+                double p99 = route.total.getValueAtPercentile(99) / 1000.0;
+                if (p99 > maxP99Millis) {
+                    report.failures.add(String.format("%s p99 %.2f ms above load.max-p99-ms %.2f", route.route, p99,
+                            maxP99Millis));
+                }
+            }
+        }
+        int maxSessionGrowth = Config.getInt("load.max-session-growth", 50);
+        if (maxSessionGrowth >= 0 && report.sessionsBefore >= 0 && report.sessionsAfter - report.sessionsBefore > maxSessionGrowth) {
+            report.failures.add("H2 sessions grew from " + report.sessionsBefore + " to " + report.sessionsAfter
+                    + ", connections are leaking");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Report report = runFromConfig();
+        report.print(System.out);
+        String reportFile = Config.getString("load.report-file", "target/load-report.txt");
+        try (FileWriter writer = new FileWriter(reportFile)) {
+            writer.write(report.toString());
+        }
+        if (!report.failures.isEmpty()) {
+            throw new IllegalStateException("load test failed: " + report.failures);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+    /**
+     * Keep the run short; the load-test profile is where real load and soak runs happen.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty("load.rate", "50");
+        System.setProperty("load.duration-s", "2");
+        System.setProperty("load.max-session-growth", "-1");
+        // equal weights so even a short run hits every route
+        System.setProperty("load.mix", "register:1,login:1,post:1,read:1,update:1,delete:1");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("load.rate");
+        System.clearProperty("load.duration-s");
+        System.clearProperty("load.max-session-growth");
+        System.clearProperty("load.mix");
+    }
+
+    /**
+     * A short in-process run of an even mix
+     *
+     * Expected Result:
+     *  every route in the mix is exercised, every request succeeds and is recorded in its latency histogram
+     */
+    @Test
+    public void shortRunExercisesEveryRoute() throws InterruptedException {
+        LoadGenerator.Report report = LoadGenerator.runFromConfig();
+        System.out.println(report);
+        Assert.assertTrue(report.sent >= 90);
+        long recorded = 0;
+        for (LoadGenerator.RouteStats route : report.routes.values()) {
+            Assert.assertTrue(route.route, route.ok.sum() > 0);
+            recorded += route.total.getTotalCount();
+        }
+        Assert.assertEquals(report.sent, recorded);
+        Assert.assertEquals(0, report.totalFailed());
+        Assert.assertTrue(report.failures.isEmpty());
+    }
+
+    /**
+     * load.mix keeps the given order and weights and rejects unknown routes.
+     */
+    @Test
+    public void parseMix() {
+        Map<String, Integer> mix = LoadGenerator.parseMix("read:10, post:3,delete");
+        Assert.assertEquals(Map.of("read", 10, "post", 3, "delete", 1), mix);
+        Assert.assertEquals("read", mix.keySet().iterator().next());
+        try {
+            LoadGenerator.parseMix("read:1,explode:2");
+            Assert.fail("unknown route should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import DAO.MessageArchive;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+import io.javalin.Javalin;
+
+public class MessageArchiveTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    File archiveDir;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with archiving enabled in a fresh directory
+     * (no background runs, the test archives explicitly), and create a new webClient and ObjectMapper.
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        archiveDir = Files.createTempDirectory("message-archive").toFile();
+        System.setProperty("archive.enabled", "true");
+        System.setProperty("archive.dir", archiveDir.getPath());
+        System.setProperty("archive.interval-s", "0");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("archive.enabled");
+        System.clearProperty("archive.dir");
+        System.clearProperty("archive.interval-s");
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Archive the seed message (posted in 2022, older than archive.max-age-days), then GET, PATCH and DELETE
+     * localhost:8080/messages/1
+     *
+     * Expected Response:
+     *  GET /messages no longer lists it, GET /messages/1 still finds it, PATCH moves it back into the table with
+     *  the new text, and DELETE removes it for good
+     */
+    @Test
+    public void archivedMessagesStayReachableById() throws IOException, InterruptedException {
+        // shares the archive with the app's service through forDirectory
+        Assert.assertEquals(1, new MessageService().archiveOldMessages());
+
+        List<Message> all = objectMapper.readValue(send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages"))).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertTrue(all.isEmpty());
+        HttpResponse<String> archived = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/1")));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(archived.body(), Message.class));
+
+        HttpResponse<String> updated = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"restored\"}"))
+                .header("Content-Type", "application/json"));
+        Assert.assertEquals(200, updated.statusCode());
+        all = objectMapper.readValue(send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages"))).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "restored", 1669947792)), all);
+
+        // archived again, then deleted from the archive
+        Assert.assertEquals(1, new MessageService().archiveOldMessages());
+        HttpResponse<String> deleted = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/1")).DELETE());
+        Assert.assertEquals(new Message(1, 1, "restored", 1669947792), objectMapper.readValue(deleted.body(), Message.class));
+        Assert.assertEquals("", send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/1"))).body());
+    }
+
+    /**
+     * Archive the seed message through a service whose posted_by index is built, then update it
+     *
+     * Expected Response:
+     *  the archived message leaves the account's messages, and the update that restores it puts it back in the
+     *  index, so the list and the streamed JSON both have it again
+     */
+    @Test
+    public void restoredMessageIsBackInItsAccountsMessages() throws IOException {
+        MessageService messageService = new MessageService();
+        Assert.assertTrue(messageService.postedByIndex.isBuilt());
+        Assert.assertEquals(1, messageService.archiveOldMessages());
+        Assert.assertTrue(messageService.getAllMessagesByAccountId(1).isEmpty());
+
+        Assert.assertNotNull(messageService.updateMessageById(new Message(1, 1, "restored", 1669947792)));
+        Message restored = new Message(1, 1, "restored", 1669947792);
+        Assert.assertEquals(List.of(restored), messageService.getAllMessagesByAccountId(1));
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(json)) {
+            messageService.writeAllMessagesByAccountId(1, generator);
+        }
+        Assert.assertEquals(objectMapper.writeValueAsString(List.of(restored)), json.toString());
+    }
+
+    /**
+     * Archive the seed message, then update it and, separately, delete it in units of work that roll back
+     *
+     * Expected Response:
+     *  the archived copy is only tombstoned once a restore or delete commits, so after both rollbacks the message
+     *  is still readable by id with its archived text
+     */
+    @Test
+    public void rolledBackRestoreAndDeleteKeepTheArchivedMessage() {
+        Assert.assertEquals(1, new MessageService().archiveOldMessages());
+        MessageDAO messageDAO = new MessageDAO();
+        messageDAO.setArchive(MessageArchive.forDirectory(archiveDir.getPath(), 30L * 24 * 60 * 60));
+        Message archived = new Message(1, 1, "test message 1", 1669947792);
+
+        Assert.assertThrows(IllegalStateException.class, () -> UnitOfWork.inTransaction(() -> {
+            Assert.assertNotNull(messageDAO.updateMessageById(new Message(1, 1, "restored", 0)));
+            throw new IllegalStateException("roll back the restore");
+        }));
+        Assert.assertEquals(archived, messageDAO.getMessageById(1));
+
+        Assert.assertThrows(IllegalStateException.class, () -> UnitOfWork.inTransaction(() -> {
+            Assert.assertNotNull(messageDAO.deleteMessageById(1));
+            throw new IllegalStateException("roll back the delete");
+        }));
+        Assert.assertEquals(archived, messageDAO.getMessageById(1));
+
+        // a restore that commits does tombstone the archived copy
+        Assert.assertNotNull(UnitOfWork.inTransaction(() -> messageDAO.updateMessageById(new Message(1, 1, "restored", 0))));
+        Assert.assertNull(messageDAO.getArchive().get(1));
+        Assert.assertEquals(new Message(1, 1, "restored", 1669947792), messageDAO.getMessageById(1));
+    }
+
+    /**
+     * A torn block at the end of a segment, as left by a crash mid-append, is cut off when the archive is reopened
+     * and everything written before it, including tombstones, is still readable.
+     */
+    @Test
+    public void reopenSurvivesTornAppend() throws IOException {
+        File dir = Files.createTempDirectory("message-archive-crash").toFile();
+        MessageArchive archive = MessageArchive.open(dir, 86400);
+        archive.append(List.of(new Message(1, 1, "first", 100), new Message(2, 1, "second", 200)));
+        archive.append(List.of(new Message(3, 2, "third", 300)));
+        archive.delete(2);
+
+        File segment = new File(dir, "segment-0.dat");
+        long goodLength = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(goodLength);
+            file.write(new byte[] { 0x4D, 0x53, 0x47, 0x42, 0, 0, 0, 9, 1, 2, 3 });
+        }
+
+        MessageArchive reopened = MessageArchive.open(dir, 86400);
+        Assert.assertEquals(goodLength, segment.length());
+        Assert.assertEquals(2, reopened.blockCount());
+        Assert.assertEquals(new Message(1, 1, "first", 100), reopened.get(1));
+        Assert.assertNull(reopened.get(2));
+        Assert.assertEquals(new Message(3, 2, "third", 300), reopened.get(3));
+        Assert.assertTrue(reopened.hasMessagesFrom(2));
+
+        // re-archiving a deleted id makes it visible again
+        reopened.append(List.of(new Message(2, 1, "second again", 200)));
+        Assert.assertEquals(new Message(2, 1, "second again", 200), reopened.get(2));
+    }
+}
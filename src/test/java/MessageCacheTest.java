@@ -0,0 +1,103 @@
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.InMemoryMessageRepository;
+import Model.Message;
+import Service.MessageService;
+
+public class MessageCacheTest {
+
+    /** Reads that stop after fetching their rows until released, so a delete can run in between. */
+    static class PausingRepository extends InMemoryMessageRepository {
+        final CountDownLatch read = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        PausingRepository() {
+            super(null);
+        }
+
+        private void pause() {
+            read.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public Message getMessageById(int id) {
+            Message message = super.getMessageById(id);
+            pause();
+            return message;
+        }
+
+        @Override
+        public List<Message> getMessagesByIds(int[] ids) {
+            List<Message> messages = super.getMessagesByIds(ids);
+            pause();
+            return messages;
+        }
+    }
+
+    /**
+     * A GET by id has read the row but not cached it yet when the message is deleted
+     *
+     * Expected Response:
+     *  the read still returns what it read, but the deleted message is not left in the cache
+     */
+    @Test
+    public void readRacingDeleteDoesNotCacheDeletedMessage() throws Exception {
+        PausingRepository repository = new PausingRepository();
+        MessageService messageService = new MessageService(repository);
+        Message created = repository.createMessage(new Message(1, "about to be deleted", 1669947792));
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Message> read = reader.submit(() -> messageService.getMessageById(created.message_id));
+            Assert.assertTrue(repository.read.await(5, TimeUnit.SECONDS));
+            Assert.assertNotNull(messageService.deleteMessageById(created.message_id));
+            repository.release.countDown();
+
+            Assert.assertEquals(created, read.get(5, TimeUnit.SECONDS));
+            Assert.assertNull(messageService.cache.get(created.message_id));
+            Assert.assertNull(messageService.getMessageById(created.message_id));
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    /**
+     * The same race through a multi-get
+     *
+     * Expected Response:
+     *  the deleted message is not cached, the other message is
+     */
+    @Test
+    public void multiGetRacingDeleteDoesNotCacheDeletedMessage() throws Exception {
+        PausingRepository repository = new PausingRepository();
+        MessageService messageService = new MessageService(repository);
+        Message deleted = repository.createMessage(new Message(1, "about to be deleted", 1669947792));
+        // another stripe of message_ids than the deleted one
+        Message kept = repository.createMessage(new Message(1, "kept", 1669947793));
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Message>> read = reader.submit(() -> messageService.getMessagesByIds(new int[] { deleted.message_id, kept.message_id }));
+            Assert.assertTrue(repository.read.await(5, TimeUnit.SECONDS));
+            Assert.assertNotNull(messageService.deleteMessageById(deleted.message_id));
+            repository.release.countDown();
+
+            Assert.assertEquals(2, read.get(5, TimeUnit.SECONDS).size());
+            Assert.assertNull(messageService.cache.get(deleted.message_id));
+            Assert.assertEquals(kept, messageService.cache.get(kept.message_id));
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageChangesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpRequest postMessageRequest(String text) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+    }
+
+    /**
+     * Create, update and delete a message, then read GET localhost:8080/messages/changes?since=0
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the three changes in order, with increasing offsets
+     */
+    @Test
+    public void getChangesReturnsMutationsInOrder() throws IOException, InterruptedException {
+        webClient.send(postMessageRequest("hello message"), HttpResponse.BodyHandlers.ofString());
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/2"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/changes?since=0"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        JsonNode page = objectMapper.readTree(response.body());
+        JsonNode changes = page.get("changes");
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals("CREATE", changes.get(0).get("type").asText());
+        Assert.assertEquals("UPDATE", changes.get(1).get("type").asText());
+        Assert.assertEquals("DELETE", changes.get(2).get("type").asText());
+        Assert.assertEquals(new Message(2, 1, "updated message", 1669947792),
+                objectMapper.treeToValue(changes.get(1).get("message"), Message.class));
+        Assert.assertEquals(3, page.get("next_offset").asLong());
+        Assert.assertFalse(page.get("truncated").asBoolean());
+
+        HttpRequest nextRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/changes?since=3"))
+                .build();
+        JsonNode nextPage = objectMapper.readTree(webClient.send(nextRequest, HttpResponse.BodyHandlers.ofString()).body());
+        Assert.assertEquals(0, nextPage.get("changes").size());
+        Assert.assertEquals(3, nextPage.get("next_offset").asLong());
+    }
+
+    /**
+     * Long-poll GET localhost:8080/messages/changes?since=0&wait=5000 and create a message while it is waiting
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the CREATE change, delivered before the wait expires
+     */
+    @Test
+    public void longPollReturnsWhenMessageIsCreated() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/changes?since=0&wait=5000"))
+                .build();
+        long start = System.currentTimeMillis();
+        CompletableFuture<HttpResponse<String>> pending = webClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        TestServer.await(() -> socialMediaController.waitingLongPolls() == 1, "the long-poll to be parked");
+        webClient.send(postMessageRequest("long poll message"), HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = pending.get();
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        JsonNode changes = objectMapper.readTree(response.body()).get("changes");
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals("long poll message", changes.get(0).get("message").get("message_text").asText());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes?since=abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getChangesInvalidOffset() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/changes?since=abc"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
@@ -0,0 +1,52 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Model.MessageRecord;
+import Service.MessageCache;
+
+public class MessageRecordTest {
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Serialise a record with plain and with compact text, and read it back
+     *
+     * Expected Response:
+     *  the same JSON as the Message it was made from, and records that are equal however the text is stored
+     */
+    @Test
+    public void jsonMatchesMessage() throws Exception {
+        Message message = new Message(7, 1, "caf\u00e9 \u2603 message", 1669947792);
+        MessageRecord plain = MessageRecord.of(message);
+        MessageRecord compact = MessageRecord.of(message, true);
+        Assert.assertFalse(plain.isCompact());
+        Assert.assertTrue(compact.isCompact());
+        Assert.assertEquals(plain, compact);
+        Assert.assertEquals(plain.hashCode(), compact.hashCode());
+
+        String json = objectMapper.writeValueAsString(compact);
+        Assert.assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(message)), objectMapper.readTree(json));
+        Assert.assertEquals(plain, objectMapper.readValue(json, MessageRecord.class));
+        Assert.assertEquals(message, compact.toMessage());
+        Assert.assertEquals(new MessageRecord(7, 1, "edited", 1669947792), compact.withMessageText("edited"));
+    }
+
+    /**
+     * Change the Message that was cached, and the one the cache handed out
+     *
+     * Expected Response:
+     *  neither changes the cached entry
+     */
+    @Test
+    public void cacheIsNotChangedThroughMessages() {
+        MessageCache cache = new MessageCache(10, true);
+        Message message = new Message(1, 1, "cached", 1669947792);
+        cache.put(message);
+        message.message_text = "changed after put";
+        Message got = cache.get(1);
+        got.message_text = "changed after get";
+        Assert.assertEquals(new Message(1, 1, "cached", 1669947792), cache.get(1));
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.MessageFeed;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageStreamTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Open GET localhost:8080/messages/stream?posted_by=1, then POST localhost:8080/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a "message" event whose data is the JSON of the created message
+     */
+    @Test
+    public void streamDeliversCreatedMessage() throws IOException, InterruptedException {
+        HttpRequest streamRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages/stream?posted_by=1"))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> stream = webClient.send(streamRequest, HttpResponse.BodyHandlers.ofLines());
+        Assert.assertEquals(200, stream.statusCode());
+        Iterator<String> lines = stream.body().iterator();
+        // wait for the "connected" comment so the subscription exists before posting
+        Assert.assertEquals(": connected", lines.next());
+
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"streamed message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+
+        String data = null;
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.startsWith("data: ")) {
+                data = line.substring("data: ".length());
+                break;
+            }
+        }
+        Assert.assertNotNull(data);
+        Assert.assertEquals(new Message(2, 1, "streamed message", 1669947792), objectMapper.readValue(data, Message.class));
+        stream.body().close();
+    }
+
+    /**
+     * A subscriber that stops reading is disconnected once its buffer is full, without blocking the publisher.
+     */
+    @Test
+    public void slowSubscriberIsDisconnected() throws InterruptedException {
+        MessageFeed feed = new MessageFeed(2, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean disconnected = new AtomicBoolean();
+        feed.subscribe(null, event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, () -> disconnected.set(true));
+
+        for (int i = 0; i < 10; i++) {
+            feed.publish(new Message(i, 1, "message " + i, 1669947792));
+        }
+        release.countDown();
+
+        Assert.assertTrue(disconnected.get());
+        Assert.assertEquals(1, feed.slowConsumerDisconnects());
+        Assert.assertEquals(0, feed.subscriberCount());
+    }
+
+    /**
+     * With a single delivery thread, one subscriber's write blocks until its connection is aborted
+     *
+     * Expected Response:
+     *  the stalled write is aborted after the write timeout, and the other subscriber still gets every message
+     */
+    @Test
+    public void stalledWriteDoesNotStarveOtherSubscribers() throws InterruptedException {
+        MessageFeed feed = new MessageFeed(8, 1, 100);
+        CountDownLatch aborted = new CountDownLatch(1);
+        feed.subscribe(1, event -> {
+            try {
+                // a blocked socket write, which fails once the connection is aborted
+                aborted.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("connection aborted");
+        }, () -> { }, aborted::countDown);
+        List<byte[]> delivered = new CopyOnWriteArrayList<>();
+        AtomicBoolean healthyDisconnected = new AtomicBoolean();
+        feed.subscribe(2, delivered::add, () -> healthyDisconnected.set(true));
+
+        feed.publish(new Message(1, 1, "to the stalled subscriber", 1669947792));
+        for (int i = 0; i < 5; i++) {
+            feed.publish(new Message(i + 2, 2, "message " + i, 1669947792));
+        }
+
+        TestServer.await(() -> delivered.size() == 5, "healthy subscriber to receive every message");
+        Assert.assertEquals(0, aborted.getCount());
+        Assert.assertFalse(healthyDisconnected.get());
+        Assert.assertEquals(1, feed.stalledWrites());
+        Assert.assertEquals(0, feed.slowConsumerDisconnects());
+        Assert.assertEquals(1, feed.subscriberCount());
+    }
+
+    /**
+     * Shut the feed down after a subscriber has received a message, so its delivery thread and watchdog are running
+     *
+     * Expected Response:
+     *  the threads finish, the subscriber is disconnected, and later messages are not delivered
+     */
+    @Test
+    public void shutdownStopsTheFeedThreads() {
+        MessageFeed feed = new MessageFeed(8, 1, 100);
+        List<byte[]> delivered = new CopyOnWriteArrayList<>();
+        feed.subscribe(null, delivered::add, () -> { });
+        feed.publish(new Message(1, 1, "before shutdown", 1669947792));
+        TestServer.await(() -> delivered.size() == 1, "subscriber to receive the message");
+
+        feed.shutdown();
+        Assert.assertTrue(feed.isTerminated());
+        Assert.assertEquals(0, feed.subscriberCount());
+        feed.publish(new Message(2, 1, "after shutdown", 1669947792));
+        Assert.assertEquals(1, delivered.size());
+    }
+}
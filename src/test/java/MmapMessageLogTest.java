@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MmapMessageLog;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MmapMessageLogTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with storage.engine=mmap and a fresh log file,
+     * and create a new webClient and ObjectMapper.
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        File dir = Files.createTempDirectory("message-log").toFile();
+        System.setProperty("storage.engine", "mmap");
+        System.setProperty("storage.mmap.file", new File(dir, "messages.log").getPath());
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("storage.engine");
+        System.clearProperty("storage.mmap.file");
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * With storage.engine=mmap, GET the seed message, POST, PATCH and DELETE through localhost:8080/messages
+     *
+     * Expected Response:
+     *  the seed message was imported from H2 with its id, new messages continue after it
+     */
+    @Test
+    public void messageEndpointsUseTheLog() throws IOException, InterruptedException {
+        HttpResponse<String> seed = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/1")));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(seed.body(), Message.class));
+
+        HttpResponse<String> created = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"from the log\",\"time_posted_epoch\":1669947800}"))
+                .header("Content-Type", "application/json"));
+        Assert.assertEquals(new Message(2, 1, "from the log", 1669947800), objectMapper.readValue(created.body(), Message.class));
+
+        HttpResponse<String> updated = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited\"}"))
+                .header("Content-Type", "application/json"));
+        Assert.assertEquals(200, updated.statusCode());
+        send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/2")).DELETE());
+
+        List<Message> byAccount = objectMapper.readValue(send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/accounts/1/messages"))).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "edited", 1669947792)), byAccount);
+    }
+
+    /**
+     * Creates, updates and deletes survive reopening the file without a clean shutdown; a torn record at the end is
+     * cut off, and compaction keeps exactly the live messages but not the ids of deleted ones.
+     */
+    @Test
+    public void reopenRecoversAndCompactionKeepsLiveMessages() throws IOException {
+        File file = new File(Files.createTempDirectory("message-log-crash").toFile(), "messages.log");
+        MmapMessageLog log = MmapMessageLog.open(file, false);
+        log.createMessage(new Message(1, "first", 100));
+        log.createMessage(new Message(1, "second", 200));
+        log.createMessage(new Message(2, "third", 300));
+        for (int i = 0; i < 10; i++) {
+            log.updateMessageById(new Message(1, 1, "first v" + i, 100));
+        }
+        log.deleteMessageById(2);
+        List<Message> expected = List.of(new Message(1, 1, "first v9", 100), new Message(3, 2, "third", 300));
+        Assert.assertEquals(expected, log.getAllMessages());
+
+        // a crash after the length was written but before the rest of the record
+        int size = log.sizeBytes();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(size);
+            raf.writeInt(40);
+            raf.write(new byte[] {1, 0, 0, 0, 9});
+        }
+        MmapMessageLog reopened = MmapMessageLog.open(file, false);
+        Assert.assertEquals(expected, reopened.getAllMessages());
+        Assert.assertEquals(size, reopened.sizeBytes());
+        Assert.assertEquals(List.of(new Message(3, 2, "third", 300)), reopened.getAllMessagesByAccountId(2));
+        Assert.assertEquals(new Message(4, 1, "after crash", 400), reopened.createMessage(new Message(1, "after crash", 400)));
+
+        // the highest id is deleted before compacting, its id must not be handed out again
+        Assert.assertEquals(new Message(5, 1, "deleted last", 500), reopened.createMessage(new Message(1, "deleted last", 500)));
+        reopened.deleteMessageById(5);
+
+        Assert.assertTrue(reopened.garbageRatio() > 0.5);
+        reopened.compact();
+        Assert.assertTrue(reopened.sizeBytes() < size);
+        List<Message> afterCompaction = List.of(new Message(1, 1, "first v9", 100), new Message(3, 2, "third", 300),
+                new Message(4, 1, "after crash", 400));
+        Assert.assertEquals(afterCompaction, reopened.getAllMessages());
+        Assert.assertEquals(List.of(new Message(1, 1, "first v9", 100), new Message(4, 1, "after crash", 400)),
+                reopened.getAllMessagesByAccountId(1));
+        MmapMessageLog afterReopen = MmapMessageLog.open(file, false);
+        Assert.assertEquals(afterCompaction, afterReopen.getAllMessages());
+        Assert.assertEquals(new Message(6, 1, "after compaction", 600), afterReopen.createMessage(new Message(1, "after compaction", 600)));
+    }
+}
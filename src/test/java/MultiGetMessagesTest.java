@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MultiGetMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"" + text + "\",\"time_posted_epoch\":1669947800}"))
+                .header("Content-Type", "application/json"));
+    }
+
+    /**
+     * Create messages 2 and 3, then GET localhost:8080/messages?ids=3,99,1,2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages 3, 1 and 2 in that order, 99 left out
+     */
+    @Test
+    public void getByIdsKeepsRequestedOrder() throws IOException, InterruptedException {
+        postMessage("second");
+        postMessage("third");
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages?ids=3,99,1,2")));
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(
+                new Message(3, 1, "third", 1669947800),
+                new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "second", 1669947800)), messages);
+
+        Assert.assertEquals(400, send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages?ids=1,abc"))).statusCode());
+    }
+
+    /**
+     * POST localhost:8080/messages/lookup with {"ids": [2, 1]}
+     *
+     * Expected Response:
+     *  Status Code: 200, messages 2 and 1; a body without an ids array is rejected with 400
+     */
+    @Test
+    public void lookupByPostBody() throws IOException, InterruptedException {
+        postMessage("second");
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/lookup"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"ids\": [2, 1]}"))
+                .header("Content-Type", "application/json"));
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(2, 1, "second", 1669947800), new Message(1, 1, "test message 1", 1669947792)), messages);
+
+        HttpResponse<String> malformed = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/lookup"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"ids\": \"1,2\"}"))
+                .header("Content-Type", "application/json"));
+        Assert.assertEquals(400, malformed.statusCode());
+    }
+
+    /**
+     * Drop the message table, so the batched query fails, then GET localhost:8080/messages?ids=5,6
+     *
+     * Expected Response:
+     *  Status Code: 500, not 200 with a list that silently leaves the ids out
+     */
+    @Test
+    public void failedFetchIsNotSentAsAShorterList() throws Exception {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("DROP TABLE message");
+            statement.close();
+        } finally {
+            connection.close();
+        }
+        Assert.assertNull(new MessageDAO().getMessagesByIds(new int[] { 5, 6 }));
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages?ids=5,6")));
+        Assert.assertEquals(500, response.statusCode());
+        ConnectionUtil.resetTestDatabase();
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.PostedByIndex;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PostedByIndexTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * POST two messages for account 1, DELETE the seed message, then GET localhost:8080/accounts/1/messages
+     *
+     * Expected Response:
+     *  the two new messages in message_id order, served through the index that /metrics reports as built
+     */
+    @Test
+    public void accountMessagesFollowCreatesAndDeletes() throws IOException, InterruptedException {
+        for (String text : List.of("second", "third")) {
+            send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"" + text + "\",\"time_posted_epoch\":1669947800}"))
+                    .header("Content-Type", "application/json"));
+        }
+        send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/messages/1")).DELETE());
+
+        List<Message> messages = objectMapper.readValue(send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/accounts/1/messages"))).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(2, 1, "second", 1669947800), new Message(3, 1, "third", 1669947800)), messages);
+
+        Map<String, Object> metrics = objectMapper.readValue(send(HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/metrics"))).body(),
+                new TypeReference<Map<String, Object>>(){});
+        Assert.assertEquals(Map.of("built", true, "accounts", 1, "message_ids", 2), metrics.get("posted_by_index"));
+    }
+
+    /**
+     * A create and a delete that land while a rebuild is loading are replayed onto the rebuilt index, whether or not
+     * the load already saw them.
+     */
+    @Test
+    public void changesDuringRebuildAreKept() {
+        PostedByIndex index = new PostedByIndex();
+        Assert.assertNull(index.get(1));
+        index.rebuild(() -> {
+            index.added(1, 5);
+            index.removed(1, 2);
+            index.added(2, 7);
+            // the load saw the delete of 2 but not the create of 5
+            return Map.of(1, new int[] {1, 3}, 2, new int[] {7});
+        });
+        Assert.assertArrayEquals(new int[] {1, 3, 5}, index.get(1));
+        Assert.assertArrayEquals(new int[] {7}, index.get(2));
+        Assert.assertArrayEquals(new int[0], index.get(3));
+    }
+}
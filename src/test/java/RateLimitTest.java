@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.RateLimiter;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with a login burst of 2, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("ratelimit.login.burst", "2");
+        System.setProperty("ratelimit.login.per-second", "0.01");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("ratelimit.login.burst");
+        System.clearProperty("ratelimit.login.per-second");
+    }
+
+    /**
+     * Sending three http requests to POST localhost:8080/login from the same client with a burst of 2
+     *
+     * Expected Response:
+     *  Status Code: 200, 200, then 429 with a Retry-After header
+     *  GET localhost:8080/metrics reports the throttled request
+     */
+    @Test
+    public void loginThrottledAfterBurst() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(200, webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> throttled = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(429, throttled.statusCode());
+        long retryAfter = Long.parseLong(throttled.headers().firstValue("Retry-After").orElse("0"));
+        Assert.assertTrue(retryAfter >= 1);
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/metrics"))
+                .build();
+        JsonNode metrics = objectMapper.readTree(webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString()).body());
+        JsonNode login = null;
+        for (JsonNode limiter : metrics.get("rate_limits")) {
+            if (limiter.get("name").asText().equals("login")) {
+                login = limiter;
+            }
+        }
+        Assert.assertNotNull(login);
+        Assert.assertEquals(1, login.get("throttled").asLong());
+        Assert.assertEquals(1, login.get("throttled_keys").asInt());
+        // the endpoint is public, so it must not name the throttled clients
+        Assert.assertFalse(metrics.toString().contains("127.0.0.1"));
+        // rejected requests must not be left counted as in flight
+        Assert.assertEquals(0, socialMediaController.inFlightRequests());
+    }
+
+    /**
+     * Keys are charged independently and new keys share the overflow bucket once maxKeys are tracked.
+     */
+    @Test
+    public void limiterTracksKeysIndependently() {
+        RateLimiter limiter = new RateLimiter("test", 0.01, 1, 2);
+        Assert.assertEquals(0, limiter.tryAcquire("a"));
+        Assert.assertTrue(limiter.tryAcquire("a") > 0);
+        Assert.assertEquals(0, limiter.tryAcquire("b"));
+        // "c" and "d" do not fit in the map and share one overflow bucket
+        Assert.assertEquals(0, limiter.tryAcquire("c"));
+        Assert.assertTrue(limiter.tryAcquire("d") > 0);
+    }
+
+    /**
+     * A charge larger than the burst, e.g. an import batch with more records than the burst allows
+     *
+     * Expected Result:
+     *  it is taken as the whole burst, so it succeeds on a full bucket and empties it, instead of waiting forever
+     */
+    @Test
+    public void chargeAboveBurstTakesTheWholeBurst() {
+        RateLimiter limiter = new RateLimiter("test", 0.01, 5, 10);
+        Assert.assertEquals(0, limiter.tryAcquire("a", 50));
+        Assert.assertTrue(limiter.tryAcquire("a") > 0);
+        long wait = limiter.tryAcquire("b", 3) == 0 ? limiter.tryAcquire("b", 50) : -1;
+        // 3 of 5 taken, the clamped charge of 5 waits for 3 more permits, not 48
+        Assert.assertTrue(wait > 0 && wait <= TimeUnit.SECONDS.toNanos(301));
+    }
+}
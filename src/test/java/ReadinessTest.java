@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.StartupTimer;
+import io.javalin.Javalin;
+
+public class ReadinessTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("warmup.iterations", "2");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("warmup.iterations");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/ready before and after the warm-up
+     *
+     * Expected Response:
+     *  Status Code: 503 before the warm-up, 200 after it
+     *  Response Body: JSON with ready = true and the timing of each warm-up phase
+     */
+    @Test
+    public void readyAfterWarmUp() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/ready"))
+                .build();
+        HttpResponse<String> before = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, before.statusCode());
+
+        socialMediaController.warmUp(app.port(), new StartupTimer());
+
+        HttpResponse<String> after = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, after.statusCode());
+        JsonNode body = objectMapper.readTree(after.body());
+        Assert.assertTrue(body.get("ready").asBoolean());
+        Assert.assertTrue(body.get("startup_phases_ms").has("warm caches"));
+        Assert.assertTrue(body.get("startup_phases_ms").has("warm handlers"));
+    }
+}
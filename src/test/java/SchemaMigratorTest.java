@@ -0,0 +1,89 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+import Util.StartupTimer;
+
+public class SchemaMigratorTest {
+
+    /** resetTestDatabase recreates the tables and applies every migration */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("db.migrate.validate");
+    }
+
+    /**
+     * A database that is missing only the latest migration.
+     *
+     * Expected: only that migration runs, it is recorded with its timing, and a second run applies nothing and
+     * leaves the data alone.
+     */
+    @Test
+    public void appliesOnlyPendingMigrations() throws SQLException {
+        execute("DROP INDEX message_time_posted_idx");
+        execute("DELETE FROM schema_version WHERE version = 2");
+
+        StartupTimer timer = new StartupTimer();
+        Assert.assertEquals(List.of(2), SchemaMigrator.migrate(timer));
+        Assert.assertTrue(timer.phases().containsKey("migrate V2"));
+        Assert.assertEquals(2, count("SELECT COUNT(*) FROM schema_version WHERE duration_ms >= 0"));
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'MESSAGE_TIME_POSTED_IDX'"));
+
+        Assert.assertEquals(List.of(), SchemaMigrator.migrate(new StartupTimer()));
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM message"));
+    }
+
+    /**
+     * A recorded migration whose script no longer matches its checksum.
+     *
+     * Expected: startup is refused, unless db.migrate.validate is false.
+     */
+    @Test
+    public void changedMigrationStopsStartup() throws SQLException {
+        execute("UPDATE schema_version SET checksum = checksum + 1 WHERE version = 1");
+        try {
+            SchemaMigrator.migrate(new StartupTimer());
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().startsWith("migration V1 (create tables) changed after it was applied"));
+        }
+        System.setProperty("db.migrate.validate", "false");
+        Assert.assertEquals(List.of(), SchemaMigrator.migrate(new StartupTimer()));
+    }
+
+    private static void execute(String sql) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute(sql);
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static int count(String sql) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            ResultSet rs = connection.createStatement().executeQuery(sql);
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.eclipse.jetty.server.LowResourceMonitor;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ServerConfigTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and restart the Javalin app with h2c enabled and a tuned thread pool and
+     * connector, and create a webClient that prefers HTTP/2.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("server.h2c", "true");
+        System.setProperty("server.threads.max", "64");
+        System.setProperty("server.idle-timeout-ms", "5000");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("server.h2c");
+        System.clearProperty("server.threads.max");
+        System.clearProperty("server.idle-timeout-ms");
+    }
+
+    /**
+     * The configured thread pool and connector are the ones Jetty runs with.
+     */
+    @Test
+    public void serverUsesConfiguredPoolAndConnector() {
+        QueuedThreadPool threadPool = (QueuedThreadPool) app.jettyServer().server().getThreadPool();
+        Assert.assertEquals(64, threadPool.getMaxThreads());
+        ServerConnector connector = (ServerConnector) app.jettyServer().server().getConnectors()[0];
+        Assert.assertEquals(app.port(), connector.getLocalPort());
+        Assert.assertEquals(5000, connector.getIdleTimeout());
+        Assert.assertTrue(connector.getProtocols().contains("h2c"));
+        // what Javalin adds to its own server is kept
+        Assert.assertNotNull(app.jettyServer().server().getBean(LowResourceMonitor.class));
+        Assert.assertNotNull(app.jettyServer().server().getChildHandlerByClass(StatisticsHandler.class));
+    }
+
+    /**
+     * Without any server.* setting, Javalin builds the server and connector itself.
+     */
+    @Test
+    public void unconfiguredServerIsJavalinsOwn() {
+        tearDown();
+        Javalin plain = new SocialMediaController().startAPI();
+        TestServer.start(plain);
+        try {
+            Server server = plain.jettyServer().server();
+            Assert.assertEquals(Boolean.TRUE, server.getAttribute("is-default-server"));
+            Assert.assertNotNull(server.getChildHandlerByClass(StatisticsHandler.class));
+            Assert.assertEquals(plain.port(), ((ServerConnector) server.getConnectors()[0]).getLocalPort());
+        } finally {
+            plain.stop();
+        }
+    }
+
+    /**
+     * Sending several http requests to GET localhost:8080/messages over one HTTP/2 connection
+     *
+     * Expected Response:
+     *  Status Code: 200, negotiated protocol HTTP/2
+     */
+    @Test
+    public void getMessagesOverH2c() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages"))
+                .build();
+        for (int i = 0; i < 5; i++) {
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(HttpClient.Version.HTTP_2, response.version());
+        }
+    }
+}
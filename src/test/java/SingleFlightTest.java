@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.SingleFlight;
+
+public class SingleFlightTest {
+
+    /**
+     * Twenty threads ask for the same key while the first call is blocked.
+     *
+     * Expected: the loader runs once, every thread gets its result, and the metrics count 19 coalesced calls.
+     */
+    @Test
+    public void concurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>("test");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(20);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(pool.submit(() -> flight.load(1, () -> {
+                started.countDown();
+                await(release);
+                return "message " + loads.incrementAndGet();
+            })));
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 19; i++) {
+                results.add(pool.submit(() -> flight.load(1, () -> "message " + loads.incrementAndGet())));
+            }
+            // let the waiters reach the in-flight call before it completes
+            while ((long) flight.snapshot().get("coalesced") < 19) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                Assert.assertEquals("message 1", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(19L, flight.snapshot().get("coalesced"));
+        Assert.assertEquals(1L, flight.snapshot().get("executions"));
+        Assert.assertEquals(0, flight.snapshot().get("in_flight"));
+    }
+
+    /**
+     * A failed load is not remembered, and forget() makes the next caller start a new load.
+     */
+    @Test
+    public void failuresAndForgottenKeysLoadAgain() {
+        SingleFlight<Integer, String> flight = new SingleFlight<>("test");
+        try {
+            flight.load(1, () -> {
+                throw new IllegalStateException("database down");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("database down", e.getMessage());
+        }
+        Assert.assertEquals("loaded", flight.load(1, () -> "loaded"));
+
+        flight.forget(2);
+        Assert.assertEquals("again", flight.load(2, () -> "again"));
+        Assert.assertEquals(0L, flight.snapshot().get("coalesced"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
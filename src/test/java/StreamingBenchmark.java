@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.Config;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+/**
+ * Measures what streaming GET /messages from the ResultSet saves over the path it replaced, which built a
+ * List<Message> with getAllMessages() and then serialised the list. Both write the same JSON to a discarding
+ * stream from the same table, and the report compares heap bytes allocated per row, counted by the JVM for the
+ * measuring thread, and time per row. The H2 query runs on that thread too, so its allocation is in both figures.
+ * The same comparison is made for the by-id fetch behind GET /accounts/{account_id}/messages when postedByIndex
+ * is built: writeMessagesByIds against serialising getMessagesByIds, for every id in the table.
+ *
+ * Settings, read through Config:
+ *
+ *  bench.rows      messages in the table (100000)
+ *  bench.rounds    measured passes over the table per path, after as many warm-up passes (5)
+ *
+ * Run it with: mvn -B -Pstreaming-benchmark test -Dbench.rows=500000
+ * It uses an in-memory database unless db.* settings say otherwise, and replaces the tables in it.
+ */
+public class StreamingBenchmark {
+    private final int rows;
+    private final int rounds;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public StreamingBenchmark(int rows, int rounds) {
+        this.rows = rows;
+        this.rounds = rounds;
+    }
+
+    /** One path's passes over the table. */
+    public static class Result {
+        public final String name;
+        public final double bytesPerRow;
+        public final double nanosPerRow;
+
+        Result(String name, double bytesPerRow, double nanosPerRow) {
+            this.name = name;
+            this.bytesPerRow = bytesPerRow;
+            this.nanosPerRow = nanosPerRow;
+        }
+    }
+
+    public static class Report {
+        public final int rows;
+        public final Result list;
+        public final Result streamed;
+        public final Result idsList;
+        public final Result idsStreamed;
+
+        Report(int rows, Result list, Result streamed, Result idsList, Result idsStreamed) {
+            this.rows = rows;
+            this.list = list;
+            this.streamed = streamed;
+            this.idsList = idsList;
+            this.idsStreamed = idsStreamed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%d rows%n", rows));
+            append(out, list, streamed);
+            append(out, idsList, idsStreamed);
+            return out.toString();
+        }
+
+        private static void append(StringBuilder out, Result list, Result streamed) {
+            for (Result result : new Result[] { list, streamed }) {
+                out.append(String.format("  %-12s allocated %7.0f bytes/row  %6.0f ns/row%n",
+                        result.name, result.bytesPerRow, result.nanosPerRow));
+            }
+            out.append(String.format("  saved        %7.0f bytes/row  (%.0f%%)%n", list.bytesPerRow - streamed.bytesPerRow,
+                    100.0 * (list.bytesPerRow - streamed.bytesPerRow) / Math.max(1, list.bytesPerRow)));
+        }
+    }
+
+    /** A way of writing the whole table as a JSON array. */
+    private interface Path {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    /** Recreates the tables and fills the message table, 1000 rows per JDBC batch. */
+    private void load() {
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO();
+        List<Message> batch = new ArrayList<>();
+        for (int i = 1; i <= rows; i++) {
+            // posted_by 1 is the account the schema script creates
+            batch.add(new Message(1, "message number " + i + " written for the streaming benchmark", 1669947792L + i));
+            if (batch.size() == 1000 || i == rows) {
+                UnitOfWork.inTransaction(() -> messageDAO.createMessages(batch));
+                batch.clear();
+            }
+        }
+    }
+
+    private Result measure(String name, Path path) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < rounds; i++) {
+            pass(path);
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            pass(path);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        double passes = (double) rounds * rows;
+        return new Result(name, allocated / passes, nanos / passes);
+    }
+
+    private void pass(Path path) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(OutputStream.nullOutputStream());
+        UnitOfWork.inTransaction(() -> {
+            path.write(generator);
+            return null;
+        });
+        generator.close();
+    }
+
+    public Report run() throws IOException {
+        load();
+        MessageDAO messageDAO = new MessageDAO();
+        Result list = measure("list", generator -> mapper.writeValue(generator, messageDAO.getAllMessages()));
+        Result streamed = measure("streamed", messageDAO::writeAllMessages);
+        int[] ids = IntStream.rangeClosed(1, rows).toArray();
+        Result idsList = measure("ids list", generator -> mapper.writeValue(generator, messageDAO.getMessagesByIds(ids)));
+        Result idsStreamed = measure("ids streamed", generator -> {
+            generator.writeStartArray();
+            messageDAO.writeMessagesByIds(ids, generator);
+            generator.writeEndArray();
+        });
+        return new Report(rows, list, streamed, idsList, idsStreamed);
+    }
+
+    public static Report runFromConfig() throws IOException {
+        return new StreamingBenchmark(Config.getInt("bench.rows", 100_000), Config.getInt("bench.rounds", 5)).run();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (Config.get("db.url") == null && Config.get("db.mode") == null) {
+            System.setProperty("db.mode", "mem");
+            System.setProperty("db.name", "streaming-benchmark");
+        }
+        System.out.print(runFromConfig());
+    }
+}
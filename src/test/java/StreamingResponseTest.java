@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+import io.javalin.Javalin;
+
+public class StreamingResponseTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        TestServer.start(app);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Drop the message table, so the query behind GET localhost:8080/messages fails, then call it
+     *
+     * Expected Response:
+     *  the DAO throws instead of writing an empty list, and the client gets status 500, not 200 with "[]"
+     */
+    @Test
+    public void failedQueryIsNotSentAsAList() throws Exception {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("DROP TABLE message");
+            statement.close();
+        } finally {
+            connection.close();
+        }
+        JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(OutputStream.nullOutputStream());
+        Assert.assertThrows(IOException.class, () -> UnitOfWork.inTransaction(() -> {
+            new MessageDAO().writeAllMessages(generator);
+            return null;
+        }));
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + app.port() + "/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(500, response.statusCode());
+        Assert.assertFalse(response.body().startsWith("["));
+    }
+
+    /**
+     * A short run of StreamingBenchmark
+     *
+     * Expected Result:
+     *  streaming from the ResultSet allocates fewer bytes per row than building the List<Message> and serialising
+     *  it, for the whole table and for the by-id fetch; the timings are only printed, a small run is too noisy to assert on
+     */
+    @Test
+    public void streamingAllocatesLessPerRow() throws IOException {
+        StreamingBenchmark.Report report = new StreamingBenchmark(5000, 3).run();
+        System.out.print(report);
+        Assert.assertTrue(report.streamed.bytesPerRow < report.list.bytesPerRow);
+        Assert.assertTrue(report.idsStreamed.bytesPerRow < report.idsList.bytesPerRow);
+    }
+}
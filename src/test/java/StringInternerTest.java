@@ -0,0 +1,47 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Service.MessageCache;
+import Util.StringInterner;
+
+public class StringInternerTest {
+
+    /**
+     * Cache two messages whose equal texts are separate String instances, through an interner
+     *
+     * Expected Response:
+     *  both cached messages share the first instance, and the interner counts one hit and the bytes it saved
+     */
+    @Test
+    public void cacheSharesEqualTexts() {
+        StringInterner interner = new StringInterner(1024);
+        MessageCache cache = new MessageCache(10, false, interner);
+        String first = new String("buy now, limited offer".toCharArray());
+        cache.put(new Message(1, 1, first, 1669947792));
+        cache.putIfAbsent(new Message(2, 2, new String("buy now, limited offer".toCharArray()), 1669947793));
+
+        Assert.assertSame(first, cache.get(2).message_text);
+        Assert.assertSame(cache.get(1).message_text, cache.get(2).message_text);
+        Assert.assertEquals(2, interner.lookups());
+        Assert.assertEquals(1, interner.hits());
+        Assert.assertEquals(StringInterner.estimatedSize(first), interner.estimatedBytesSaved());
+        Assert.assertEquals(0.5, (double) interner.snapshot().get("hit_ratio"), 0.0);
+    }
+
+    /**
+     * A short run of InterningBenchmark over a skewed dataset
+     *
+     * Expected Result:
+     *  most repeated texts are deduplicated and every message is cached; the heap figures are only printed, a
+     *  small run is too noisy to assert on
+     */
+    @Test
+    public void benchmarkDeduplicatesSkewedTexts() {
+        InterningBenchmark.Report report = new InterningBenchmark(20_000, 500, 1.1, 0.3, 42, 4096).run();
+        System.out.print(report);
+        Assert.assertEquals(20_000, report.interner.lookups());
+        Assert.assertTrue((double) report.interner.hits() / report.interner.lookups() > 0.5);
+        Assert.assertTrue(report.interner.estimatedBytesSaved() > 0);
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.function.BooleanSupplier;
+
+import io.javalin.Javalin;
+
+/**
+ * Starts the API for a test on an ephemeral port and waits for it by polling instead of sleeping, so test classes
+ * can run side by side in parallel Surefire forks. Each fork gets its own in-memory database through the db.mode
+ * and db.name system properties set in the pom, and ConnectionUtil.resetTestDatabase still resets it before every
+ * test, so what a test sees does not depend on what runs next to it.
+ */
+public class TestServer {
+    /** how long start and await wait before failing the test */
+    static final long TIMEOUT_MS = 5000;
+
+    private TestServer() {
+    }
+
+    /**
+     * Starts the app on a free port and returns once it accepts connections.
+     * @return the app, its port is app.port().
+     */
+    public static Javalin start(Javalin app) {
+        app.start(0);
+        int port = app.port();
+        await(() -> accepts(port), "the server to accept connections on port " + port);
+        return app;
+    }
+
+    /**
+     * Polls the condition every few milliseconds until it holds.
+     * @throws AssertionError if it does not hold within TIMEOUT_MS.
+     */
+    public static void await(BooleanSupplier condition, String description) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("timed out after " + TIMEOUT_MS + " ms waiting for " + description);
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError("interrupted waiting for " + description);
+            }
+        }
+    }
+
+    private static boolean accepts(int port) {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress("localhost", port), 200);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing to release
+            }
+        }
+    }
+}
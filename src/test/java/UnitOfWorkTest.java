@@ -0,0 +1,98 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+public class UnitOfWorkTest {
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Two DAO writes in one unit of work that then fails.
+     *
+     * Expected: both used the same connection and neither was kept.
+     */
+    @Test
+    public void failedWorkRollsBackEveryDaoCall() {
+        AccountDAO accountDAO = new AccountDAO();
+        MessageDAO messageDAO = new MessageDAO();
+        Connection[] used = new Connection[2];
+        try {
+            UnitOfWork.inTransaction(() -> {
+                used[0] = UnitOfWork.connection();
+                accountDAO.createAccount(new Account("rolled back", "password"));
+                messageDAO.createMessage(new Message(1, "rolled back", 1669947800));
+                used[1] = UnitOfWork.connection();
+                throw new IllegalStateException("fail after both writes");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("fail after both writes", e.getMessage());
+        }
+        Assert.assertSame(used[0], used[1]);
+        Assert.assertFalse(accountDAO.getAccountByUsername("rolled back"));
+        Assert.assertNull(messageDAO.getMessageById(2));
+    }
+
+    /**
+     * A unit of work whose own statement fails with an SQLException.
+     *
+     * Expected: the caller gets that SQLException unchanged, not a commit failure, and the work is rolled back.
+     */
+    @Test
+    public void sqlExceptionFromTheWorkIsNotReportedAsACommitFailure() {
+        AccountDAO accountDAO = new AccountDAO();
+        SQLException thrown = Assert.assertThrows(SQLException.class, () -> UnitOfWork.inTransaction(() -> {
+            accountDAO.createAccount(new Account("rolled back", "password"));
+            return UnitOfWork.connection().createStatement().executeQuery("SELECT * FROM no_such_table");
+        }));
+        Assert.assertTrue(thrown.getMessage(), thrown.getMessage().toUpperCase().contains("NO_SUCH_TABLE"));
+        Assert.assertFalse(accountDAO.getAccountByUsername("rolled back"));
+    }
+
+    /**
+     * Many service calls, reads and writes.
+     *
+     * Expected: each closes its connection, so the number of open database sessions does not grow.
+     */
+    @Test
+    public void serviceCallsDoNotLeakConnections() throws SQLException {
+        AccountService accountService = new AccountService();
+        MessageService messageService = new MessageService();
+        int before = openSessions();
+        for (int i = 0; i < 50; i++) {
+            accountService.createAccount(new Account("user" + i, "password"));
+            Message created = messageService.createMessage(new Message(1, "message " + i, 1669947800 + i));
+            messageService.updateMessageById(new Message(created.message_id, 1, "edited " + i, 0));
+            messageService.cache.remove(created.message_id);
+            messageService.getMessageById(created.message_id);
+        }
+        Assert.assertTrue(openSessions() <= before + 1);
+    }
+
+    private static int openSessions() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS");
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            connection.close();
+        }
+    }
+}